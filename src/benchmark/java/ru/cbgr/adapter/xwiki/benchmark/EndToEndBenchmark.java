@@ -0,0 +1,264 @@
+package ru.cbgr.adapter.xwiki.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import ru.cbgr.adapter.xwiki.XwikiApplication;
+import ru.cbgr.adapter.xwiki.benchmark.stub.OllamaStubServer;
+import ru.cbgr.adapter.xwiki.benchmark.stub.XWikiStubServer;
+import ru.cbgr.adapter.xwiki.dto.job.CrawlJobState;
+
+/**
+ * Сквозной нагрузочный сценарий: адаптер запускается целиком против заглушек XWiki и Ollama
+ * и PostgreSQL с pgvector (Testcontainers или внешняя БД), затем выполняются три фазы:
+ * полный обход, семантический поиск и генерация ответа с RAG.
+ * По каждой фазе печатается пропускная способность, p50/p99 задержки и скорость выделения памяти;
+ * итог записывается в target/e2e-result.json.
+ * <p>
+ * Параметры передаются аргументами вида имя=значение, например
+ * {@code mvn -Pbenchmark test-compile exec:exec@e2e -De2e.args="spaces=50 pages=200 xwikiLatencyMs=30"}.
+ * Если заданы minPagesPerSecond, maxSearchP99Ms или maxGenerateP99Ms, при их нарушении
+ * сценарий завершается с кодом 1 – так регрессия заметна в CI.
+ * Память выделяют и заглушки, работающие в том же процессе, поэтому скорость выделения
+ * сравнима только между запусками с одинаковыми параметрами.
+ */
+public class EndToEndBenchmark {
+
+    private static final String[] QUERIES = {"как настроить интеграцию", "регламент доступа к данным",
+            "версия договора с клиентом", "процесс подготовки отчёта", "таблица настроек сервиса"};
+
+    private final Map<String, String> options;
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Object> report = new LinkedHashMap<>();
+    private final List<String> violations = new ArrayList<>();
+    private String baseUrl;
+
+    EndToEndBenchmark(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                options.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        System.exit(new EndToEndBenchmark(options).run() ? 0 : 1);
+    }
+
+    boolean run() throws Exception {
+        XWikiStubServer.Settings xwiki = new XWikiStubServer.Settings(intOption("wikis", 1), intOption("spaces", 20),
+                intOption("pages", 50), intOption("pageChars", 4000), intOption("modifications", 100),
+                intOption("xwikiLatencyMs", 20));
+        OllamaStubServer.Settings ollama = new OllamaStubServer.Settings(intOption("answerTokens", 64),
+                intOption("tokenDelayMs", 5), intOption("dimension", 768), intOption("embeddingDelayMs", 2));
+        report.put("xwiki", xwiki.toString());
+        report.put("ollama", ollama.toString());
+
+        PostgreSQLContainer<?> postgres = null;
+        try (XWikiStubServer xwikiStub = new XWikiStubServer(xwiki).start();
+             OllamaStubServer ollamaStub = new OllamaStubServer(ollama).start()) {
+            Map<String, Object> properties = properties(xwikiStub, ollamaStub);
+            if (!options.containsKey("dbHost")) {
+                postgres = new PostgreSQLContainer<>(DockerImageName.parse("pgvector/pgvector:pg16")
+                        .asCompatibleSubstituteFor("postgres"));
+                postgres.start();
+                properties.put("DB_HOST", postgres.getHost());
+                properties.put("DB_PORT", postgres.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT));
+                properties.put("DB_NAME", postgres.getDatabaseName());
+                properties.put("DB_USERNAME", postgres.getUsername());
+                properties.put("DB_PASSWORD", postgres.getPassword());
+            }
+            try (ConfigurableApplicationContext app = new SpringApplicationBuilder(XwikiApplication.class)
+                    .properties(properties)
+                    .run()) {
+                baseUrl = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+                crawl(app.getBean(MeterRegistry.class), xwikiStub);
+                search();
+                generate();
+                report.put("xwikiRequests", xwikiStub.getRequests());
+                report.put("embeddedTexts", ollamaStub.getEmbeddedTexts());
+            }
+        } finally {
+            if (postgres != null) {
+                postgres.stop();
+            }
+        }
+
+        Path result = Path.of("target", "e2e-result.json");
+        Files.createDirectories(result.getParent());
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(result.toFile(), report);
+        System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(report));
+        violations.forEach(violation -> System.out.println("РЕГРЕССИЯ: " + violation));
+        return violations.isEmpty();
+    }
+
+    private Map<String, Object> properties(XWikiStubServer xwikiStub, OllamaStubServer ollamaStub) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("SERVER_PORT", 0);
+        properties.put("DB_HOST", options.getOrDefault("dbHost", "localhost"));
+        properties.put("DB_PORT", options.getOrDefault("dbPort", "5432"));
+        properties.put("DB_NAME", options.getOrDefault("dbName", "xwiki_benchmark"));
+        properties.put("DB_SCHEMA", options.getOrDefault("dbSchema", "public"));
+        properties.put("DB_USERNAME", options.getOrDefault("dbUser", "postgres"));
+        properties.put("DB_PASSWORD", options.getOrDefault("dbPassword", "postgres"));
+        properties.put("AI_OLLAMA_BASE_URL", ollamaStub.getBaseUrl());
+        properties.put("AI_EMBEDDING_ENABLED", true);
+        properties.put("AI_MODEL_WARM_UP", false);
+        properties.put("XWIKI_BASE_URL", xwikiStub.getBaseUrl());
+        properties.put("XWIKI_USERNAME", "benchmark");
+        properties.put("XWIKI_PASSWORD", "benchmark");
+        properties.put("XWIKI_MODIFICATIONS_ENABLED", false);
+        properties.put("LOG_LEVEL_ROOT", "WARN");
+        properties.put("LOG_LEVEL_SERVICE_LAYER", "WARN");
+        properties.put("MANAGEMENT_TRACING_SAMPLING_PROBABILITY", 0);
+        properties.put("management.metrics.distribution.percentiles.crawl.page", "0.5,0.99");
+        return properties;
+    }
+
+    private void crawl(MeterRegistry meterRegistry, XWikiStubServer xwikiStub) throws Exception {
+        long allocatedBefore = allocatedBytes();
+        long startedAt = System.nanoTime();
+        String jobId = get("/api/wiki/processAll").path("id").asText();
+        JsonNode status;
+        do {
+            Thread.sleep(200);
+            status = get("/api/wiki/jobs/" + jobId);
+        } while (!CrawlJobState.valueOf(status.path("state").asText()).isFinished());
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+        long pages = status.path("pagesDone").asLong();
+
+        Map<String, Object> phase = new LinkedHashMap<>();
+        phase.put("state", status.path("state").asText());
+        phase.put("pages", pages);
+        phase.put("pagesFailed", status.path("pagesFailed").asLong());
+        phase.put("expectedPages", xwikiStub.getTotalPages());
+        phase.put("pagesPerSecond", round(pages / seconds));
+        Timer pageTimer = meterRegistry.find("crawl.page").timer();
+        if (pageTimer != null) {
+            for (ValueAtPercentile percentile : pageTimer.takeSnapshot().percentileValues()) {
+                phase.put("pageP" + Math.round(percentile.percentile() * 100) + "Ms",
+                        round(percentile.value(TimeUnit.MILLISECONDS)));
+            }
+        }
+        phase.put("allocationMbPerSecond", round((allocatedBytes() - allocatedBefore) / seconds / (1 << 20)));
+        report.put("crawl", phase);
+        check("minPagesPerSecond", pages / seconds, true);
+    }
+
+    private void search() throws Exception {
+        Map<String, Object> phase = load(intOption("searchRequests", 500), i ->
+                "/api/wiki/search?limit=10&query=" + encode(QUERIES[i % QUERIES.length]));
+        report.put("search", phase);
+        check("maxSearchP99Ms", (double) phase.get("p99Ms"), false);
+    }
+
+    private void generate() throws Exception {
+        Map<String, Object> phase = load(intOption("generateRequests", 50), i ->
+                "/api/ai/generate?rag=true&message=" + encode(QUERIES[i % QUERIES.length]));
+        report.put("generate", phase);
+        check("maxGenerateP99Ms", (double) phase.get("p99Ms"), false);
+    }
+
+    /**
+     * Выполняет requests запросов с concurrency параллельными клиентами
+     */
+    private Map<String, Object> load(int requests, IntFunction<String> path) throws Exception {
+        LatencyRecorder latencies = new LatencyRecorder(requests);
+        int concurrency = intOption("concurrency", 8);
+        long allocatedBefore = allocatedBytes();
+        long startedAt = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int client = 0; client < concurrency; client++) {
+                int first = client;
+                executor.submit(() -> {
+                    for (int i = first; i < requests; i += concurrency) {
+                        long requestStartedAt = System.nanoTime();
+                        get(path.apply(i));
+                        latencies.record(System.nanoTime() - requestStartedAt);
+                    }
+                    return null;
+                });
+            }
+        }
+        double seconds = (System.nanoTime() - startedAt) / 1e9;
+        Map<String, Object> phase = new LinkedHashMap<>();
+        phase.put("requests", latencies.count());
+        phase.put("requestsPerSecond", round(latencies.count() / seconds));
+        phase.put("p50Ms", round(latencies.percentileMs(0.5)));
+        phase.put("p99Ms", round(latencies.percentileMs(0.99)));
+        phase.put("allocationMbPerSecond", round((allocatedBytes() - allocatedBefore) / seconds / (1 << 20)));
+        return phase;
+    }
+
+    private JsonNode get(String path) throws Exception {
+        HttpResponse<byte[]> response = httpClient.send(
+                HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofMinutes(5)).GET().build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() >= 400) {
+            throw new IllegalStateException(path + " → HTTP " + response.statusCode());
+        }
+        return objectMapper.readTree(response.body());
+    }
+
+    private void check(String option, double value, boolean minimum) {
+        String limit = options.get(option);
+        if (limit == null) {
+            return;
+        }
+        double bound = Double.parseDouble(limit);
+        if (minimum ? value < bound : value > bound) {
+            violations.add(option + " = " + bound + ", получено " + round(value));
+        }
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return Integer.parseInt(options.getOrDefault(name, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Память, выделенная всеми потоками JVM с момента запуска, включая завершившиеся
+     */
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getTotalThreadAllocatedBytes();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+}
@@ -0,0 +1,73 @@
+package ru.cbgr.adapter.xwiki.benchmark;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.cbgr.adapter.xwiki.index.HnswIndex;
+
+/**
+ * Поиск ближайших фрагментов в HNSW-индексе
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HnswIndexBenchmark {
+
+    private static final int QUERIES = 256;
+
+    @Param({"10000"})
+    public int size;
+
+    @Param({"384", "768"})
+    public int dimension;
+
+    @Param({"100"})
+    public int ef;
+
+    private HnswIndex index;
+    private float[][] queries;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        index = new HnswIndex(16, 100);
+        for (int i = 0; i < size; i++) {
+            index.put("chunk-" + i, vector(random));
+        }
+        queries = new float[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = vector(random);
+        }
+    }
+
+    @Benchmark
+    public List<HnswIndex.Hit> search() {
+        next = (next + 1) % QUERIES;
+        return index.search(queries[next], 10, ef);
+    }
+
+    private float[] vector(Random random) {
+        float[] vector = new float[dimension];
+        for (int d = 0; d < dimension; d++) {
+            vector[d] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
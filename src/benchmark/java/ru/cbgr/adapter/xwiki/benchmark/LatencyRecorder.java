@@ -0,0 +1,43 @@
+package ru.cbgr.adapter.xwiki.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Задержки запросов фазы нагрузочного сценария и их перцентили
+ */
+public class LatencyRecorder {
+
+    private final long[] nanos;
+    private final AtomicInteger count = new AtomicInteger();
+
+    public LatencyRecorder(int capacity) {
+        this.nanos = new long[capacity];
+    }
+
+    public void record(long elapsedNanos) {
+        int index = count.getAndIncrement();
+        if (index < nanos.length) {
+            nanos[index] = elapsedNanos;
+        }
+    }
+
+    public int count() {
+        return Math.min(count.get(), nanos.length);
+    }
+
+    /**
+     * @param quantile от 0 до 1
+     * @return задержка в миллисекундах
+     */
+    public double percentileMs(double quantile) {
+        int n = count();
+        if (n == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(nanos, n);
+        Arrays.sort(sorted);
+        int index = (int) Math.min(n - 1, Math.max(0, Math.ceil(quantile * n) - 1));
+        return sorted[index] / 1e6;
+    }
+}
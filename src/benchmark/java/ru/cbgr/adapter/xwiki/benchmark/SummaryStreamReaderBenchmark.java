@@ -0,0 +1,77 @@
+package ru.cbgr.adapter.xwiki.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ru.cbgr.adapter.xwiki.deserializer.SummaryStreamReader;
+import ru.cbgr.adapter.xwiki.dto.xwiki.PagesResponse;
+
+/**
+ * Разбор списка страниц пространства: потоково и целиком в {@link PagesResponse}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SummaryStreamReaderBenchmark {
+
+    @Param({"500"})
+    public int pages;
+
+    private ObjectMapper objectMapper;
+    private SummaryStreamReader reader;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper();
+        reader = new SummaryStreamReader(objectMapper);
+        List<Map<String, Object>> summaries = new ArrayList<>();
+        String spaceUrl = "http://localhost:8080/rest/wikis/xwiki/spaces/Space";
+        for (int i = 0; i < pages; i++) {
+            summaries.add(Map.of(
+                    "id", "xwiki:Space.Page" + i,
+                    "fullName", "Space.Page" + i,
+                    "wiki", "xwiki",
+                    "space", "Space",
+                    "name", "Page" + i,
+                    "title", "Страница " + i,
+                    "version", "1.1",
+                    "links", List.of(
+                            Map.of("href", spaceUrl, "rel", "http://www.xwiki.org/rel/space"),
+                            Map.of("href", spaceUrl + "/pages/Page" + i, "rel", "http://www.xwiki.org/rel/page"))));
+        }
+        json = objectMapper.writeValueAsBytes(Map.of("pageSummaries", summaries));
+    }
+
+    @Benchmark
+    public int streaming(Blackhole blackhole) throws IOException {
+        return reader.readPageSummaries(new ByteArrayInputStream(json), blackhole::consume);
+    }
+
+    @Benchmark
+    public PagesResponse full() throws IOException {
+        return objectMapper.readValue(json, PagesResponse.class);
+    }
+}
@@ -0,0 +1,49 @@
+package ru.cbgr.adapter.xwiki.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ru.cbgr.adapter.xwiki.benchmark.stub.XWikiStubServer;
+import ru.cbgr.adapter.xwiki.configuration.ChunkingProperties;
+import ru.cbgr.adapter.xwiki.service.TextPreprocessingService;
+
+/**
+ * Очистка разметки XWiki и нарезка страницы на фрагменты
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextPreprocessingBenchmark {
+
+    @Param({"4000", "40000"})
+    public int pageChars;
+
+    private TextPreprocessingService service;
+    private String page;
+
+    @Setup
+    public void setUp() {
+        service = new TextPreprocessingService(new ChunkingProperties());
+        page = XWikiStubServer.content(42, pageChars);
+    }
+
+    @Benchmark
+    public List<String> preprocess() {
+        return service.preprocess(page);
+    }
+}
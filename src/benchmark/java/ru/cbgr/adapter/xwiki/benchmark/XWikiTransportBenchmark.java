@@ -0,0 +1,113 @@
+package ru.cbgr.adapter.xwiki.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import ru.cbgr.adapter.xwiki.client.GzipResponseInterceptor;
+import ru.cbgr.adapter.xwiki.client.XWikiRequestFactories;
+import ru.cbgr.adapter.xwiki.configuration.XWikiTransportProperties;
+
+/**
+ * Сравнение транспортов XWiki на локальной заглушке: ответы в gzip с задержкой 2 мс,
+ * 16 одновременных запросов, как при обходе одного хоста. SampleTime даёт p50/p99 по запросам.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class XWikiTransportBenchmark {
+
+    private static final String BODY = "{\"pageSummaries\":[" + "{\"id\":\"xwiki:Main.WebHome\"},".repeat(200) + "{}]}";
+
+    @Param({"SIMPLE", "POOLED", "HTTP2"})
+    public XWikiTransportProperties.Type type;
+
+    private HttpServer server;
+    private ClientHttpRequestFactory factory;
+    private RestTemplate restTemplate;
+    private String url;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] gzipped = gzip(BODY.getBytes(StandardCharsets.UTF_8));
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 256);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/rest/wikis/xwiki/spaces", exchange -> {
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            boolean gzip = String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Encoding")).contains("gzip");
+            byte[] response = gzip ? gzipped : BODY.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            if (gzip) {
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/rest/wikis/xwiki/spaces";
+
+        XWikiTransportProperties properties = new XWikiTransportProperties();
+        properties.setType(type);
+        factory = XWikiRequestFactories.create(properties, new SimpleMeterRegistry());
+        restTemplate = new RestTemplate(factory);
+        if (type != XWikiTransportProperties.Type.POOLED) {
+            restTemplate.getInterceptors().add(new GzipResponseInterceptor());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (factory instanceof DisposableBean disposable) {
+            disposable.destroy();
+        }
+        server.stop(0);
+    }
+
+    @Benchmark
+    public String request() {
+        return restTemplate.getForObject(url, String.class);
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,169 @@
+package ru.cbgr.adapter.xwiki.benchmark.stub;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Заглушка API Ollama для нагрузочных тестов.
+ * /api/chat отвечает answerTokens токенами, генерируя каждый за tokenDelayMs, целиком или потоком NDJSON;
+ * /api/embed и /api/embeddings возвращают детерминированные нормированные векторы размерности dimension,
+ * затрачивая embeddingDelayMs на каждый текст.
+ */
+public class OllamaStubServer implements AutoCloseable {
+
+    private final Settings settings;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong chatRequests = new AtomicLong();
+    private final AtomicLong embeddedTexts = new AtomicLong();
+    private final HttpServer server;
+
+    /**
+     * @param answerTokens количество токенов в ответе чата
+     * @param tokenDelayMs время генерации одного токена
+     * @param dimension размерность embedding`ов
+     * @param embeddingDelayMs время построения embedding`а одного текста
+     */
+    public record Settings(int answerTokens, long tokenDelayMs, int dimension, long embeddingDelayMs) {
+    }
+
+    public OllamaStubServer(Settings settings) throws IOException {
+        this.settings = settings;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/api/chat", this::chat);
+        server.createContext("/api/embed", this::embed);
+        server.createContext("/api/embeddings", this::embed);
+    }
+
+    public OllamaStubServer start() {
+        server.start();
+        return this;
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public long getChatRequests() {
+        return chatRequests.get();
+    }
+
+    public long getEmbeddedTexts() {
+        return embeddedTexts.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void chat(HttpExchange exchange) throws IOException {
+        chatRequests.incrementAndGet();
+        try (exchange) {
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            String model = request.path("model").asText("stub");
+            OutputStream out = exchange.getResponseBody();
+            if (request.path("stream").asBoolean(false)) {
+                exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+                exchange.sendResponseHeaders(200, 0);
+                for (int i = 0; i < settings.answerTokens(); i++) {
+                    XWikiStubServer.sleep(settings.tokenDelayMs());
+                    out.write(objectMapper.writeValueAsBytes(chatResponse(model, token(i), false, 0)));
+                    out.write('\n');
+                    out.flush();
+                }
+                out.write(objectMapper.writeValueAsBytes(chatResponse(model, "", true, settings.answerTokens())));
+                out.write('\n');
+            } else {
+                XWikiStubServer.sleep(settings.tokenDelayMs() * settings.answerTokens());
+                StringBuilder answer = new StringBuilder();
+                for (int i = 0; i < settings.answerTokens(); i++) {
+                    answer.append(token(i));
+                }
+                send(exchange, chatResponse(model, answer.toString(), true, settings.answerTokens()));
+            }
+        }
+    }
+
+    /**
+     * /api/embed принимает input – строку или массив строк, /api/embeddings – одну строку prompt
+     */
+    private void embed(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            String model = request.path("model").asText("stub");
+            if (exchange.getRequestURI().getPath().equals("/api/embeddings")) {
+                String prompt = request.path("prompt").asText();
+                embeddedTexts.incrementAndGet();
+                XWikiStubServer.sleep(settings.embeddingDelayMs());
+                send(exchange, Map.of("embedding", vector(prompt)));
+                return;
+            }
+            List<String> inputs = new ArrayList<>();
+            JsonNode input = request.path("input");
+            if (input.isArray()) {
+                input.forEach(text -> inputs.add(text.asText()));
+            } else {
+                inputs.add(input.asText());
+            }
+            embeddedTexts.addAndGet(inputs.size());
+            XWikiStubServer.sleep(settings.embeddingDelayMs() * inputs.size());
+            List<float[]> embeddings = inputs.stream().map(this::vector).toList();
+            send(exchange, Map.of("model", model, "embeddings", embeddings));
+        }
+    }
+
+    private Map<String, Object> chatResponse(String model, String content, boolean done, int evalCount) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("model", model);
+        response.put("created_at", Instant.now().toString());
+        response.put("message", Map.of("role", "assistant", "content", content));
+        response.put("done", done);
+        if (done) {
+            response.put("prompt_eval_count", 100);
+            response.put("eval_count", evalCount);
+            response.put("eval_duration", settings.tokenDelayMs() * evalCount * 1_000_000);
+        }
+        return response;
+    }
+
+    private float[] vector(String text) {
+        Random random = new Random(text.hashCode());
+        float[] vector = new float[settings.dimension()];
+        double norm = 0;
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private void send(HttpExchange exchange, Object body) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, json.length);
+        exchange.getResponseBody().write(json);
+    }
+
+    private static String token(int index) {
+        return index == 0 ? "Ответ" : " слово" + index;
+    }
+}
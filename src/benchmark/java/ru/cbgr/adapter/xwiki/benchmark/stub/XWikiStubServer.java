@@ -0,0 +1,237 @@
+package ru.cbgr.adapter.xwiki.benchmark.stub;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Заглушка REST API XWiki для нагрузочных тестов: синтетическая ферма из wikis вики,
+ * в каждой spaces пространств по pages страниц, содержимое страниц – разметка XWiki 2.1
+ * длиной около pageChars символов. Каждый ответ задерживается на latencyMs.
+ * Отвечает на те же адреса и в том же формате, что и XWiki: /rest/wikis, /spaces, /pages,
+ * страница и /modifications.
+ */
+public class XWikiStubServer implements AutoCloseable {
+
+    private static final String[] WORDS = {"интеграция", "система", "договор", "регламент", "сервис", "клиент",
+            "отчёт", "процесс", "настройка", "доступ", "данные", "запрос", "ответ", "таблица", "раздел", "версия"};
+
+    private final Settings settings;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong requests = new AtomicLong();
+    private final HttpServer server;
+
+    /**
+     * @param wikis количество вики
+     * @param spaces количество пространств в вики
+     * @param pages количество страниц в пространстве
+     * @param pageChars примерная длина содержимого страницы
+     * @param modifications количество записей в истории изменений вики
+     * @param latencyMs задержка каждого ответа
+     */
+    public record Settings(int wikis, int spaces, int pages, int pageChars, int modifications, long latencyMs) {
+    }
+
+    public XWikiStubServer(Settings settings) throws IOException {
+        this.settings = settings;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/rest/wikis", this::handle);
+    }
+
+    public XWikiStubServer start() {
+        server.start();
+        return this;
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Количество страниц во всей ферме
+     */
+    public long getTotalPages() {
+        return (long) settings.wikis() * settings.spaces() * settings.pages();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            sleep(settings.latencyMs());
+            String[] path = exchange.getRequestURI().getPath().substring("/rest/".length()).split("/");
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            int start = Integer.parseInt(query.getOrDefault("start", "0"));
+            int number = Integer.parseInt(query.getOrDefault("number", String.valueOf(Integer.MAX_VALUE)));
+            Object body = switch (path.length) {
+                case 1 -> Map.of("wikis", wikis());
+                case 3 -> path[2].equals("spaces") ? Map.of("spaces", spaces(path[1]))
+                        : Map.of("historySummaries", modifications(path[1], start, number));
+                case 5 -> Map.of("pageSummaries", pageSummaries(path[1], path[3], start, number));
+                case 6 -> pageDetails(path[1], path[3], path[5]);
+                default -> null;
+            };
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] json = objectMapper.writeValueAsBytes(body);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, json.length);
+            exchange.getResponseBody().write(json);
+        }
+    }
+
+    private List<Map<String, Object>> wikis() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (int w = 0; w < settings.wikis(); w++) {
+            result.add(Map.of("id", wikiId(w), "name", wikiId(w)));
+        }
+        return result;
+    }
+
+    private List<Map<String, Object>> spaces(String wiki) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (int s = 0; s < settings.spaces(); s++) {
+            String space = "Space" + s;
+            result.add(Map.of(
+                    "id", wiki + ":" + space,
+                    "wiki", wiki,
+                    "name", space,
+                    "links", List.of(link(spaceUrl(wiki, space) + "/pages", "pages"))));
+        }
+        return result;
+    }
+
+    private List<Map<String, Object>> pageSummaries(String wiki, String space, int start, int number) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (int p = start; p < Math.min(settings.pages(), (long) start + number); p++) {
+            String page = "Page" + p;
+            result.add(Map.of(
+                    "id", wiki + ":" + space + "." + page,
+                    "fullName", space + "." + page,
+                    "wiki", wiki,
+                    "space", space,
+                    "name", page,
+                    "title", page,
+                    "version", "1.1",
+                    "links", List.of(link(spaceUrl(wiki, space) + "/pages/" + page, "page"))));
+        }
+        return result;
+    }
+
+    private Map<String, Object> pageDetails(String wiki, String space, String page) {
+        String id = wiki + ":" + space + "." + page;
+        return Map.of(
+                "id", id,
+                "title", page,
+                "version", "1.1",
+                "xwikiAbsoluteUrl", getBaseUrl() + "/bin/view/" + space + "/" + page,
+                "content", content(id.hashCode(), settings.pageChars()));
+    }
+
+    private List<Map<String, Object>> modifications(String wiki, int start, int number) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int m = start; m < Math.min(settings.modifications(), (long) start + number); m++) {
+            int s = m % settings.spaces();
+            int p = m / settings.spaces() % settings.pages();
+            result.add(Map.of(
+                    "pageId", wiki + ":Space" + s + ".Page" + p,
+                    "wiki", wiki,
+                    "space", "Space" + s,
+                    "name", "Page" + p,
+                    "version", "1.1",
+                    "modified", now - m * 1000L));
+        }
+        return result;
+    }
+
+    private String spaceUrl(String wiki, String space) {
+        return getBaseUrl() + "/rest/wikis/" + wiki + "/spaces/" + space;
+    }
+
+    private static Map<String, String> link(String href, String rel) {
+        return Map.of("href", href, "rel", "http://www.xwiki.org/rel/" + rel);
+    }
+
+    private static String wikiId(int index) {
+        return index == 0 ? "xwiki" : "wiki" + index;
+    }
+
+    /**
+     * Детерминированное содержимое страницы в разметке XWiki 2.1: заголовки, абзацы, списки, ссылки и макросы
+     *
+     * @param seed зерно генератора, одинаковое для одной и той же страницы
+     * @param chars примерная длина текста
+     */
+    public static String content(long seed, int chars) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(chars + 256);
+        int section = 0;
+        while (text.length() < chars) {
+            text.append("= Раздел ").append(++section).append(" =\n\n");
+            for (int paragraph = 0; paragraph < 3 && text.length() < chars; paragraph++) {
+                for (int word = 0; word < 40; word++) {
+                    String value = WORDS[random.nextInt(WORDS.length)];
+                    switch (random.nextInt(20)) {
+                        case 0 -> text.append("**").append(value).append("**");
+                        case 1 -> text.append("[[").append(value).append(">>Main.").append(value).append("]]");
+                        default -> text.append(value);
+                    }
+                    text.append(word == 39 ? ".\n\n" : " ");
+                }
+            }
+            text.append("* пункт ").append(WORDS[random.nextInt(WORDS.length)]).append('\n')
+                    .append("* пункт ").append(WORDS[random.nextInt(WORDS.length)]).append("\n\n")
+                    .append("{{info}}Примечание к разделу ").append(section).append("{{/info}}\n\n");
+        }
+        return text.toString();
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> result = new HashMap<>();
+        if (rawQuery == null) {
+            return result;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                result.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+
+    static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
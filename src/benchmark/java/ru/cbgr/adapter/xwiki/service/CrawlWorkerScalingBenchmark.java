@@ -0,0 +1,87 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import ru.cbgr.adapter.xwiki.configuration.ClusterProperties;
+import ru.cbgr.adapter.xwiki.configuration.CrawlProperties;
+import ru.cbgr.adapter.xwiki.dto.job.WorkItem;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Время обработки общей очереди обхода одним и несколькими экземплярами {@link CrawlWorker}.
+ * Индексация страницы заменена задержкой, очередь – {@link InMemoryWorkQueue}; в пакете service,
+ * потому что жизненный цикл обработчика не публичный.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CrawlWorkerScalingBenchmark {
+
+    private static final int PAGES = 200;
+
+    @Param({"1", "4"})
+    public int instances;
+
+    @Param({"20"})
+    public long pageMillis;
+
+    private InMemoryWorkQueue queue;
+    private EmbeddingsProcessorService processor;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        queue = new InMemoryWorkQueue();
+        List<WorkItem> pages = new ArrayList<>(PAGES);
+        for (int i = 0; i < PAGES; i++) {
+            pages.add(WorkItem.of("crawl", WorkItem.PAGE, "page-" + i, "url-" + i, "1.1"));
+        }
+        queue.enqueue(pages);
+        processor = mock(EmbeddingsProcessorService.class);
+        doAnswer(invocation -> {
+            Thread.sleep(pageMillis);
+            return true;
+        }).when(processor).indexPage(anyString(), any(), any());
+    }
+
+    @Benchmark
+    public int drainQueue() throws InterruptedException {
+        List<CrawlWorker> workers = new ArrayList<>(instances);
+        for (int i = 0; i < instances; i++) {
+            ClusterProperties properties = new ClusterProperties();
+            properties.setInstanceId("instance-" + i);
+            properties.setWorkerConcurrency(4);
+            properties.setPollIntervalMs(5);
+            CrawlWorker worker = new CrawlWorker(queue, properties, new CrawlProperties(), null, processor,
+                    new SimpleMeterRegistry());
+            worker.start();
+            workers.add(worker);
+        }
+        queue.awaitDone(PAGES);
+        workers.forEach(CrawlWorker::stop);
+        return queue.getDone();
+    }
+}
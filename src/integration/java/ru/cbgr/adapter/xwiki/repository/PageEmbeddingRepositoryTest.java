@@ -0,0 +1,127 @@
+package ru.cbgr.adapter.xwiki.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import ru.cbgr.adapter.xwiki.dto.embedding.PageChunkEmbedding;
+import ru.cbgr.adapter.xwiki.dto.embedding.StoredChunk;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@link PageEmbeddingRepository} на PostgreSQL с pgvector и схемой из schema.sql.
+ * Запускается в профиле integration (mvn -Pintegration test), нужен Docker.
+ */
+public class PageEmbeddingRepositoryTest {
+
+    private static final String MODEL = "nomic-embed-text";
+
+    private static PostgreSQLContainer<?> postgres;
+    private static JdbcTemplate jdbcTemplate;
+    private PageEmbeddingRepository repository;
+
+    @BeforeAll
+    static void startDatabase() {
+        postgres = new PostgreSQLContainer<>(DockerImageName.parse("pgvector/pgvector:pg16")
+                .asCompatibleSubstituteFor("postgres"));
+        postgres.start();
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(postgres.getJdbcUrl(),
+                postgres.getUsername(), postgres.getPassword());
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @AfterAll
+    static void stopDatabase() {
+        postgres.stop();
+    }
+
+    @BeforeEach
+    void clean() {
+        jdbcTemplate.update("DELETE FROM page_embedding");
+        repository = new PageEmbeddingRepository(jdbcTemplate);
+    }
+
+    @Test
+    void testBatchUpsertReplacesChunks() {
+        repository.replacePage("xwiki:Main.Page", "1.1", "url", "hash-1", MODEL, chunks(3, 0));
+        repository.replacePage("xwiki:Main.Page", "1.2", "url", "hash-2", MODEL, chunks(3, 1));
+
+        List<StoredChunk> stored = embeddings();
+        assertEquals(3, stored.size());
+        for (StoredChunk chunk : stored) {
+            assertArrayEquals(vector(chunk.chunkIndex(), 1), chunk.embedding());
+        }
+        assertEquals(Map.of("xwiki:Main.Page", "1.2"), repository.findVersions("xwiki"));
+        List<StoredChunk> texts = repository.findChunks(List.of("xwiki:Main.Page"), List.of(2));
+        assertEquals("фрагмент 2 версии 1", texts.get(0).content());
+    }
+
+    @Test
+    void testDeletesStaleChunksOfShorterVersion() {
+        repository.replacePage("xwiki:Main.Page", "1.1", "url", "hash-1", MODEL, chunks(5, 0));
+        repository.replacePage("xwiki:Main.Page", "1.2", "url", "hash-2", MODEL, chunks(2, 1));
+
+        assertEquals(List.of(0, 1), embeddings().stream().map(StoredChunk::chunkIndex).sorted().toList());
+        assertTrue(repository.findChunks(List.of("xwiki:Main.Page"), List.of(4)).isEmpty());
+    }
+
+    @Test
+    void testFindsVersionsOfOneWiki() {
+        repository.replacePage("xwiki:Main.A", "1.1", "url", "hash", MODEL, chunks(2, 0));
+        repository.replacePage("xwiki2:Main.A", "2.1", "url", "hash", MODEL, chunks(1, 0));
+        repository.replacePage("xwiki_x:Main.A", "3.1", "url", "hash", MODEL, chunks(1, 0));
+
+        assertEquals(Map.of("xwiki:Main.A", "1.1"), repository.findVersions("xwiki"));
+        assertEquals(Map.of("xwiki_x:Main.A", "3.1"), repository.findVersions("xwiki_x"));
+    }
+
+    @Test
+    void testFindsContentHashes() {
+        repository.replacePage("xwiki:Main.A", "1.1", "url-a", "a".repeat(64), MODEL, chunks(2, 0));
+        repository.replacePage("xwiki:Main.B", "1.1", "url-b", "b".repeat(64), MODEL, chunks(1, 0));
+        // Фрагменты, записанные до учёта модели, считаются непроиндексированными
+        jdbcTemplate.update("INSERT INTO page_embedding (page_id, chunk_index, content_hash, content, embedding, updated_at) "
+                + "VALUES ('xwiki:Main.Legacy', 0, ?, 'текст', '[1,0,0]', now())", "c".repeat(64));
+
+        assertEquals(Optional.of("a".repeat(64)), repository.findContentHash("xwiki:Main.A"));
+        assertEquals(Optional.empty(), repository.findContentHash("xwiki:Main.Legacy"));
+        assertEquals(Map.of("xwiki:Main.A", "a".repeat(64), "xwiki:Main.B", "b".repeat(64)),
+                repository.findContentHashes(List.of("xwiki:Main.A", "xwiki:Main.B", "xwiki:Main.Legacy", "xwiki:Main.Нет")));
+        assertEquals(1, repository.countOtherModels(MODEL));
+    }
+
+    private List<StoredChunk> embeddings() {
+        List<StoredChunk> result = new ArrayList<>();
+        repository.forEachEmbedding(MODEL, result::add);
+        return result;
+    }
+
+    private static List<PageChunkEmbedding> chunks(int count, int version) {
+        List<PageChunkEmbedding> chunks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            chunks.add(new PageChunkEmbedding(i, "фрагмент " + i + " версии " + version, vector(i, version)));
+        }
+        return chunks;
+    }
+
+    private static float[] vector(int chunkIndex, int version) {
+        return new float[]{chunkIndex, version, 1};
+    }
+}
@@ -0,0 +1,12 @@
+package ru.cbgr.adapter.xwiki.client;
+
+import ru.cbgr.adapter.xwiki.dto.xwiki.page.PageDetails;
+
+/**
+ * Страница в локальном кеше вместе с валидаторами для условного запроса
+ *
+ * @param etag значение ETag из ответа XWiki или null
+ * @param lastModified значение Last-Modified из ответа XWiki или null
+ */
+public record CachedPage(String etag, String lastModified, PageDetails page) {
+}
@@ -0,0 +1,72 @@
+package ru.cbgr.adapter.xwiki.client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import ru.cbgr.adapter.xwiki.configuration.CrawlProperties;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Ограничивает количество одновременных запросов к одному хосту.
+ * Запросы из виртуальных потоков обхода блокируются на семафоре своего хоста,
+ * поэтому параллельный обход не создаёт на XWiki нагрузку выше заданной.
+ * Публикует по каждому хосту количество выполняемых и ожидающих разрешения запросов.
+ */
+@Component
+@RequiredArgsConstructor
+public class HostConcurrencyLimiter {
+
+    private final CrawlProperties crawlProperties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Semaphore> permitsByHost = new ConcurrentHashMap<>();
+
+    /**
+     * Выполняет запрос, удерживая разрешение хоста, к которому обращается url.
+     *
+     * @param url адрес запроса
+     * @param call сам запрос
+     * @return результат запроса
+     */
+    public <T> T call(String url, Supplier<T> call) {
+        Semaphore permits = permitsByHost.computeIfAbsent(hostOf(url), this::createPermits);
+        permits.acquireUninterruptibly();
+        try {
+            return call.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Semaphore createPermits(String host) {
+        int maxConcurrency = crawlProperties.getMaxConcurrencyPerHost();
+        Semaphore permits = new Semaphore(maxConcurrency, true);
+        Gauge.builder("xwiki.host.requests.in.flight", permits, p -> maxConcurrency - p.availablePermits())
+                .description("Запросы к хосту, выполняемые сейчас")
+                .tag("host", host)
+                .register(meterRegistry);
+        Gauge.builder("xwiki.host.requests.queued", permits, Semaphore::getQueueLength)
+                .description("Запросы к хосту, ожидающие разрешения")
+                .tag("host", host)
+                .register(meterRegistry);
+        return permits;
+    }
+
+    /**
+     * Выделяет host[:port] без разбора через URI: url после URLDecoder
+     * может содержать пробелы и кириллицу.
+     */
+    private static String hostOf(String url) {
+        int schemeEnd = url.indexOf("://");
+        int hostStart = schemeEnd < 0 ? 0 : schemeEnd + 3;
+        int hostEnd = url.indexOf('/', hostStart);
+        return hostEnd < 0 ? url.substring(hostStart) : url.substring(hostStart, hostEnd);
+    }
+}
@@ -0,0 +1,50 @@
+package ru.cbgr.adapter.xwiki.client;
+
+import java.util.List;
+
+import org.springframework.ai.autoconfigure.ollama.OllamaConnectionProperties;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Пакетный запрос embedding`ов к Ollama /api/embed: все тексты пакета отправляются одним запросом.
+ * OllamaEmbeddingModel из Spring AI ходит в /api/embeddings и отправляет тексты по одному,
+ * поэтому пакеты {@link ru.cbgr.adapter.xwiki.service.EmbeddingBatcher} через неё не укрупняют запросы к модели.
+ */
+@Component
+public class OllamaEmbedClient {
+
+    private final RestClient restClient;
+
+    public OllamaEmbedClient(RestClient.Builder builder, OllamaConnectionProperties connectionProperties) {
+        this.restClient = builder.baseUrl(connectionProperties.getBaseUrl()).build();
+    }
+
+    /**
+     * @param model модель embedding`ов
+     * @param texts входные тексты
+     * @param keepAlive сколько Ollama держит модель в памяти после запроса
+     * @return векторы в порядке входных текстов
+     */
+    public List<float[]> embed(String model, List<String> texts, String keepAlive) {
+        EmbedResponse response = restClient.post()
+                .uri("/api/embed")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(new EmbedRequest(model, texts, keepAlive))
+                .retrieve()
+                .body(EmbedResponse.class);
+        if (response == null || response.embeddings() == null || response.embeddings().size() != texts.size()) {
+            throw new IllegalStateException("Ollama вернула не все embedding`и: ожидалось " + texts.size());
+        }
+        return response.embeddings();
+    }
+
+    record EmbedRequest(String model, List<String> input, @JsonProperty("keep_alive") String keepAlive) {
+    }
+
+    record EmbedResponse(String model, List<float[]> embeddings) {
+    }
+}
@@ -0,0 +1,254 @@
+package ru.cbgr.adapter.xwiki.client;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import ru.cbgr.adapter.xwiki.configuration.PageCacheProperties;
+import ru.cbgr.adapter.xwiki.util.Hashing;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Локальный кеш содержимого страниц XWiki по URL.
+ * В памяти – Caffeine (W-TinyLFU) с ограничением по объёму содержимого; вытесненные из памяти
+ * страницы остаются на диске, если задан xwiki.pagecache.diskPath, и поднимаются обратно при обращении.
+ * Объём диска ограничен xwiki.pagecache.maxDiskSizeMb: при превышении удаляются записи,
+ * к которым дольше всего не обращались (время изменения файла обновляется при чтении).
+ */
+@Component
+@Slf4j
+public class PageDetailsCache {
+
+    private final PageCacheProperties properties;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, CachedPage> memory;
+    private final Path diskPath;
+    /**
+     * Оценка объёма дискового уровня; пересчитывается по каталогу при каждой очистке
+     */
+    private final AtomicLong diskBytes = new AtomicLong();
+    private final Counter versionHits;
+    private final Counter notModified;
+    private final Counter downloads;
+
+    public PageDetailsCache(PageCacheProperties properties, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.memory = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxSizeMb() * 1024 * 1024)
+                .weigher((String url, CachedPage page) -> weight(url, page))
+                .recordStats()
+                .build();
+        this.diskPath = properties.getDiskPath().isBlank() ? null : Path.of(properties.getDiskPath());
+        CaffeineCacheMetrics.monitor(meterRegistry, memory, "xwiki.page.details");
+        if (diskPath != null) {
+            trimDisk();
+            Gauge.builder("xwiki.page.details.disk.size", diskBytes, AtomicLong::get)
+                    .description("Объём дискового уровня кеша содержимого страниц")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+        }
+        this.versionHits = requests(meterRegistry, "version");
+        this.notModified = requests(meterRegistry, "not_modified");
+        this.downloads = requests(meterRegistry, "downloaded");
+    }
+
+    /**
+     * @return страница из памяти или с диска, null если её нет в кеше
+     */
+    public CachedPage find(String url) {
+        if (!properties.isEnabled()) {
+            return null;
+        }
+        CachedPage page = memory.getIfPresent(url);
+        if (page == null && diskPath != null) {
+            page = readDisk(url);
+            if (page != null) {
+                memory.put(url, page);
+            }
+        }
+        return page;
+    }
+
+    public void put(String url, CachedPage page) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        memory.put(url, page);
+        if (diskPath != null) {
+            writeDisk(url, page);
+        }
+    }
+
+    public void invalidate(String url) {
+        memory.invalidate(url);
+        if (diskPath != null) {
+            try {
+                deleteDisk(file(url));
+            } catch (IOException e) {
+                log.warn("Не удалось удалить страницу {} из дискового кеша: {}", url, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Страница отдана из кеша без запроса: версия совпала с известной из списка страниц или истории изменений
+     */
+    void recordVersionHit() {
+        versionHits.increment();
+    }
+
+    /**
+     * XWiki ответил 304 на условный запрос
+     */
+    void recordNotModified() {
+        notModified.increment();
+    }
+
+    void recordDownload() {
+        downloads.increment();
+    }
+
+    private CachedPage readDisk(String url) {
+        Path file = file(url);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            CachedPage page = objectMapper.readValue(file.toFile(), CachedPage.class);
+            Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+            return page;
+        } catch (IOException e) {
+            log.warn("Повреждённая запись дискового кеша {}: {}", file, e.toString());
+            return null;
+        }
+    }
+
+    private void writeDisk(String url, CachedPage page) {
+        Path temp = null;
+        try {
+            Files.createDirectories(diskPath);
+            temp = Files.createTempFile(diskPath, "page", ".tmp");
+            objectMapper.writeValue(temp.toFile(), page);
+            long size = Files.size(temp);
+            Path file = file(url);
+            long replaced = Files.exists(file) ? Files.size(file) : 0;
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (diskBytes.addAndGet(size - replaced) > maxDiskBytes()) {
+                trimDisk();
+            }
+        } catch (IOException e) {
+            log.warn("Не удалось записать страницу {} в дисковый кеш: {}", url, e.toString());
+            try {
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException ignored) {
+                // Временный файл останется до следующей очистки каталога
+            }
+        }
+    }
+
+    private void deleteDisk(Path file) throws IOException {
+        long size = Files.exists(file) ? Files.size(file) : 0;
+        if (Files.deleteIfExists(file)) {
+            diskBytes.addAndGet(-size);
+        }
+    }
+
+    /**
+     * Пересчитывает объём каталога и удаляет самые давно использованные записи,
+     * пока объём не опустится до 90% предела; заодно удаляет брошенные временные файлы.
+     */
+    private synchronized void trimDisk() {
+        if (!Files.isDirectory(diskPath)) {
+            return;
+        }
+        List<DiskEntry> entries = new ArrayList<>();
+        try (Stream<Path> files = Files.list(diskPath)) {
+            files.forEach(file -> {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    if (file.getFileName().toString().endsWith(".tmp")) {
+                        // Временные файлы моложе минуты могут принадлежать записи, которая ещё идёт
+                        if (attributes.lastModifiedTime().toInstant().isBefore(Instant.now().minusSeconds(60))) {
+                            Files.deleteIfExists(file);
+                        }
+                        return;
+                    }
+                    entries.add(new DiskEntry(file, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                } catch (IOException e) {
+                    // Файл удалён параллельно
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("Не удалось прочитать каталог дискового кеша {}: {}", diskPath, e.toString());
+            return;
+        }
+        long total = entries.stream().mapToLong(DiskEntry::size).sum();
+        long target = maxDiskBytes() / 10 * 9;
+        if (total > maxDiskBytes()) {
+            entries.sort(Comparator.comparingLong(DiskEntry::lastUsed));
+            int removed = 0;
+            for (DiskEntry entry : entries) {
+                if (total <= target) {
+                    break;
+                }
+                try {
+                    Files.deleteIfExists(entry.file());
+                    total -= entry.size();
+                    removed++;
+                } catch (IOException e) {
+                    log.warn("Не удалось удалить запись дискового кеша {}: {}", entry.file(), e.toString());
+                }
+            }
+            log.info("Дисковый кеш страниц превысил предел, удалено записей: {}", removed);
+        }
+        diskBytes.set(total);
+    }
+
+    private long maxDiskBytes() {
+        return properties.getMaxDiskSizeMb() * 1024 * 1024;
+    }
+
+    private Path file(String url) {
+        return diskPath.resolve(Hashing.sha256Hex(url) + ".json");
+    }
+
+    private static int weight(String url, CachedPage page) {
+        String content = page.page().getContent();
+        long chars = url.length() + (content == null ? 0 : content.length());
+        return (int) Math.min(Integer.MAX_VALUE, chars * 2);
+    }
+
+    private record DiskEntry(Path file, long size, long lastUsed) {
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("xwiki.page.details.requests")
+                .description("Получение содержимого страниц: из кеша по версии, по ответу 304 или загрузкой")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -2,17 +2,32 @@ package ru.cbgr.adapter.xwiki.client;
 
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
 
 import ru.cbgr.adapter.xwiki.configuration.XWikiProperties;
+import ru.cbgr.adapter.xwiki.deserializer.SummaryStreamReader;
 import ru.cbgr.adapter.xwiki.dto.xwiki.ModificationsResponse;
 import ru.cbgr.adapter.xwiki.dto.xwiki.PagesResponse;
 import ru.cbgr.adapter.xwiki.dto.xwiki.SpacesResponse;
+import ru.cbgr.adapter.xwiki.dto.xwiki.WikisResponse;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.HistorySummary;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.LinkRelation;
 import ru.cbgr.adapter.xwiki.dto.xwiki.page.PageDetails;
+import ru.cbgr.adapter.xwiki.dto.xwiki.page.PageSummary;
+import ru.cbgr.adapter.xwiki.resilience.ResilientExecutor;
 
 import lombok.RequiredArgsConstructor;
 
@@ -22,37 +37,70 @@ public class XWikiClient {
 
     private final XWikiProperties xWikiProperties;
     private final RestTemplate xWikiRestTemplate;
+    private final HostConcurrencyLimiter hostConcurrencyLimiter;
+    private final PageDetailsCache pageDetailsCache;
+    private final SummaryStreamReader summaryStreamReader;
+    private final ResilientExecutor xWikiResilience;
 
     /**
-     * Получает агрегированную историю изменений из XWiki без параметров пагинации.
+     * Получает список вики фермы: главную и все подвики.
      */
-    public ModificationsResponse getModifications() {
-        String url = xWikiProperties.getBaseUrl() + "/rest/wikis/xwiki/modifications";
-        ResponseEntity<ModificationsResponse> response = xWikiRestTemplate.getForEntity(url, ModificationsResponse.class);
+    public WikisResponse getWikis() {
+        String url = xWikiProperties.getBaseUrl() + "/rest/wikis";
+        return get(url, () -> xWikiRestTemplate.getForObject(url, WikisResponse.class));
+    }
+
+    /**
+     * Получает агрегированную историю изменений вики без параметров пагинации.
+     */
+    public ModificationsResponse getModifications(String wiki) {
+        String url = xWikiProperties.getBaseUrl() + "/rest/wikis/" + wiki + "/modifications";
+        ResponseEntity<ModificationsResponse> response = get(url,
+                () -> xWikiRestTemplate.getForEntity(url, ModificationsResponse.class));
         return response.getBody();
     }
 
     /**
-     * Получает агрегированную историю изменений с поддержкой пагинации.
+     * Получает агрегированную историю изменений вики с поддержкой пагинации.
      * Параметры start и number позволяют получать историю порциями.
      *
+     * @param wiki идентификатор вики
      * @param start номер первого изменения (например, 1)
      * @param number количество изменений в порции (например, 2)
      * @return объект ModificationsResponse, содержащий список изменений
      */
-    public ModificationsResponse getModifications(int start, int number) {
-        String url = String.format("%s/rest/wikis/xwiki/modifications?start=%d&number=%d",
-                xWikiProperties.getBaseUrl(), start, number);
-        ResponseEntity<ModificationsResponse> response = xWikiRestTemplate.getForEntity(url, ModificationsResponse.class);
+    public ModificationsResponse getModifications(String wiki, int start, int number) {
+        String url = String.format("%s/rest/wikis/%s/modifications?start=%d&number=%d",
+                xWikiProperties.getBaseUrl(), wiki, start, number);
+        ResponseEntity<ModificationsResponse> response = get(url,
+                () -> xWikiRestTemplate.getForEntity(url, ModificationsResponse.class));
         return response.getBody();
     }
 
     /**
-     * Получает список пространств.
+     * Читает порцию истории изменений вики потоково, передавая изменения потребителю по одному, от новых к старым.
+     *
+     * @return количество прочитанных изменений
+     */
+    public int streamModifications(String wiki, int start, int number, Consumer<? super HistorySummary> consumer) {
+        String url = String.format("%s/rest/wikis/%s/modifications?start=%d&number=%d",
+                xWikiProperties.getBaseUrl(), wiki, start, number);
+        AtomicInteger delivered = new AtomicInteger();
+        Integer count = stream(url, delivered, () -> xWikiRestTemplate.execute(url, HttpMethod.GET, null,
+                response -> summaryStreamReader.readHistorySummaries(response.getBody(), summary -> {
+                    delivered.incrementAndGet();
+                    consumer.accept(summary);
+                })));
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Получает список пространств вики.
      */
-    public SpacesResponse getSpaces() {
-        String url = xWikiProperties.getBaseUrl() + "/rest/wikis/xwiki/spaces";
-        ResponseEntity<SpacesResponse> response = xWikiRestTemplate.getForEntity(url, SpacesResponse.class);
+    public SpacesResponse getSpaces(String wiki) {
+        String url = xWikiProperties.getBaseUrl() + "/rest/wikis/" + wiki + "/spaces";
+        ResponseEntity<SpacesResponse> response = get(url,
+                () -> xWikiRestTemplate.getForEntity(url, SpacesResponse.class));
         return response.getBody();
     }
 
@@ -67,7 +115,90 @@ public class XWikiClient {
                 .build(true)
                 .toUriString();
         String decodedUrl = URLDecoder.decode(modifiedUrl, StandardCharsets.UTF_8);
-        return xWikiRestTemplate.getForObject(decodedUrl, PagesResponse.class);
+        return get(decodedUrl,
+                () -> xWikiRestTemplate.getForObject(decodedUrl, PagesResponse.class));
+    }
+
+    /**
+     * Получает порцию списка страниц пространства.
+     *
+     * @param start номер первой страницы в списке, с 0
+     * @param number количество страниц в порции
+     */
+    public PagesResponse getPages(String pagesUrl, int start, int number) {
+        String decodedUrl = pagesUrl(pagesUrl, start, number);
+        return get(decodedUrl,
+                () -> xWikiRestTemplate.getForObject(decodedUrl, PagesResponse.class));
+    }
+
+    /**
+     * Читает порцию списка страниц потоково: страницы передаются потребителю по мере разбора ответа.
+     * Потребитель вызывается, пока соединение открыто, поэтому тяжёлую обработку он должен
+     * передавать в другие потоки.
+     *
+     * @param start номер первой страницы в списке, с 0
+     * @param number количество страниц в порции
+     * @return количество прочитанных страниц
+     */
+    public int streamPages(String pagesUrl, int start, int number, Consumer<? super PageSummary> consumer) {
+        String decodedUrl = pagesUrl(pagesUrl, start, number);
+        AtomicInteger delivered = new AtomicInteger();
+        Integer count = stream(decodedUrl, delivered, () -> xWikiRestTemplate.execute(decodedUrl, HttpMethod.GET, null,
+                response -> summaryStreamReader.readPageSummaries(response.getBody(), page -> {
+                    delivered.incrementAndGet();
+                    consumer.accept(page);
+                })));
+        return count == null ? 0 : count;
+    }
+
+    private static String pagesUrl(String pagesUrl, int start, int number) {
+        String modifiedUrl = UriComponentsBuilder
+                .fromUriString(pagesUrl)
+                .queryParam("media", "json")
+                .queryParam("start", start)
+                .queryParam("number", number)
+                .build(true)
+                .toUriString();
+        return URLDecoder.decode(modifiedUrl, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Формирует URL страницы в REST API по её вики, пространству и имени.
+     * Вложенные пространства XWiki разделены точкой ("A.B" → /spaces/A/spaces/B),
+     * экранированная точка ("\.") остаётся частью имени пространства.
+     * Сегменты кодируются так же, как в ссылках XWiki, поэтому пробелы и кириллица допустимы.
+     *
+     * @return закодированный URL, пригодный для {@link #getPageDetails(String)}
+     */
+    public String getPageUrl(String wiki, String space, String name) {
+        StringBuilder url = new StringBuilder(xWikiProperties.getBaseUrl())
+                .append("/rest/wikis/").append(encode(wiki));
+        StringBuilder spaceName = new StringBuilder();
+        for (int i = 0; i < space.length(); i++) {
+            char c = space.charAt(i);
+            if (c == '\\' && i + 1 < space.length()) {
+                spaceName.append(space.charAt(++i));
+            } else if (c == '.') {
+                url.append("/spaces/").append(encode(spaceName.toString()));
+                spaceName.setLength(0);
+            } else {
+                spaceName.append(c);
+            }
+        }
+        url.append("/spaces/").append(encode(spaceName.toString()));
+        return url.append("/pages/").append(encode(name)).toString();
+    }
+
+    /**
+     * URL страницы из истории изменений: ссылка page, как при обходе, а если её нет – собранный по имени
+     */
+    public String getPageUrl(HistorySummary modification) {
+        String href = modification.getLinks() == null ? null : modification.getLinks().href(LinkRelation.PAGE);
+        return href != null ? href : getPageUrl(modification.getWiki(), modification.getSpace(), modification.getName());
+    }
+
+    private static String encode(String segment) {
+        return UriUtils.encodePathSegment(segment, StandardCharsets.UTF_8);
     }
 
     /**
@@ -77,12 +208,71 @@ public class XWikiClient {
      * @return объект PageDetails с данными страницы
      */
     public PageDetails getPageDetails(String pageUrl) {
+        return getPageDetails(pageUrl, null);
+    }
+
+    /**
+     * Получает страницу с учётом локального кеша.
+     * Если в кеше страница известной версии, запрос не выполняется; иначе запрос условный
+     * (If-None-Match / If-Modified-Since), и на ответ 304 страница отдаётся из кеша.
+     *
+     * @param pageUrl URL, по которому возвращается JSON с полем content
+     * @param version версия страницы из списка страниц или истории изменений, если известна
+     * @return объект PageDetails с данными страницы
+     */
+    public PageDetails getPageDetails(String pageUrl, String version) {
         String modifiedUrl = UriComponentsBuilder
                 .fromUriString(pageUrl)
                 .queryParam("media", "json")
                 .build(true)
                 .toUriString();
         String decodedUrl = URLDecoder.decode(modifiedUrl, StandardCharsets.UTF_8);
-        return xWikiRestTemplate.getForObject(decodedUrl, PageDetails.class);
+        CachedPage cached = pageDetailsCache.find(decodedUrl);
+        if (cached != null && version != null && version.equals(cached.page().getVersion())) {
+            pageDetailsCache.recordVersionHit();
+            return cached.page();
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        if (cached != null && cached.etag() != null) {
+            headers.setIfNoneMatch(cached.etag());
+        }
+        if (cached != null && cached.lastModified() != null) {
+            headers.set(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified());
+        }
+        ResponseEntity<PageDetails> response;
+        try {
+            response = get(decodedUrl, () -> xWikiRestTemplate.exchange(
+                    decodedUrl, HttpMethod.GET, new HttpEntity<>(headers), PageDetails.class));
+        } catch (HttpClientErrorException.NotFound e) {
+            pageDetailsCache.invalidate(decodedUrl);
+            throw e;
+        }
+        if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED) && cached != null) {
+            pageDetailsCache.recordNotModified();
+            return cached.page();
+        }
+        pageDetailsCache.recordDownload();
+        PageDetails page = response.getBody();
+        if (page != null) {
+            pageDetailsCache.put(decodedUrl, new CachedPage(response.getHeaders().getETag(),
+                    response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED), page));
+        }
+        return page;
+    }
+
+    /**
+     * Выполняет GET-запрос через ограничения XWiki: предохранитель, частота, адаптивная и жёсткая
+     * (на хост) параллельность; временные ошибки повторяются.
+     */
+    private <T> T get(String url, Supplier<T> call) {
+        return xWikiResilience.call(() -> hostConcurrencyLimiter.call(url, call));
+    }
+
+    /**
+     * Как {@link #get(String, Supplier)}, но повтор возможен, только пока потребителю не передано ни одного элемента
+     */
+    private <T> T stream(String url, AtomicInteger delivered, Supplier<T> call) {
+        return xWikiResilience.call(() -> hostConcurrencyLimiter.call(url, call), () -> delivered.get() == 0);
     }
 }
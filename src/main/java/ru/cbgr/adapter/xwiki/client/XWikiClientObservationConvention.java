@@ -0,0 +1,66 @@
+package ru.cbgr.adapter.xwiki.client;
+
+import java.util.Set;
+
+import org.springframework.http.client.observation.ClientHttpObservationDocumentation;
+import org.springframework.http.client.observation.ClientRequestObservationContext;
+import org.springframework.http.client.observation.DefaultClientRequestObservationConvention;
+
+import io.micrometer.common.KeyValue;
+
+/**
+ * Метрики и спаны исходящих HTTP-запросов с шаблоном пути XWiki вместо полного URL.
+ * XWikiClient передаёт в RestTemplate готовые URL из ссылок XWiki, поэтому стандартный тег uri
+ * содержал бы имя каждого пространства и страницы. Здесь имена в пути REST API заменяются
+ * на {name}: /rest/wikis/{name}/spaces/{name}/pages/{name}. Полный URL остаётся в спане.
+ */
+public class XWikiClientObservationConvention extends DefaultClientRequestObservationConvention {
+
+    /**
+     * Сегменты пути REST API XWiki, которые остаются в шаблоне как есть
+     */
+    private static final Set<String> RESOURCES = Set.of(
+            "wikis", "spaces", "pages", "modifications", "history", "children", "attachments", "objects",
+            "properties", "classes", "translations", "tags", "comments", "search", "query");
+
+    public XWikiClientObservationConvention() {
+        super("http.client.requests");
+    }
+
+    @Override
+    protected KeyValue uri(ClientRequestObservationContext context) {
+        String uriTemplate = context.getUriTemplate();
+        if (uriTemplate == null || !uriTemplate.contains("/rest/")) {
+            return super.uri(context);
+        }
+        return ClientHttpObservationDocumentation.LowCardinalityKeyNames.URI.withValue(template(uriTemplate));
+    }
+
+    /**
+     * Шаблон пути запроса к REST API XWiki: без хоста и параметров, имена заменены на {name}
+     */
+    static String template(String url) {
+        int schemeEnd = url.indexOf("://");
+        int pathStart = url.indexOf('/', schemeEnd < 0 ? 0 : schemeEnd + 3);
+        if (pathStart < 0) {
+            return "/";
+        }
+        int queryStart = url.indexOf('?', pathStart);
+        String path = queryStart < 0 ? url.substring(pathStart) : url.substring(pathStart, queryStart);
+        StringBuilder template = new StringBuilder(path.length());
+        boolean inRest = false;
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            template.append('/');
+            if (!inRest) {
+                template.append(segment);
+                inRest = segment.equals("rest");
+            } else {
+                template.append(RESOURCES.contains(segment) ? segment : "{name}");
+            }
+        }
+        return template.isEmpty() ? "/" : template.toString();
+    }
+}
@@ -0,0 +1,95 @@
+package ru.cbgr.adapter.xwiki.client;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import ru.cbgr.adapter.xwiki.configuration.XWikiTransportProperties;
+
+/**
+ * Создаёт фабрику HTTP-запросов для клиента XWiki по выбранному типу транспорта.
+ */
+public final class XWikiRequestFactories {
+
+    private XWikiRequestFactories() {
+    }
+
+    /**
+     * @param meterRegistry реестр, в котором публикуются метрики пула соединений
+     */
+    public static ClientHttpRequestFactory create(XWikiTransportProperties properties, MeterRegistry meterRegistry) {
+        return switch (properties.getType()) {
+            case SIMPLE -> simple(properties);
+            case POOLED -> pooled(properties, meterRegistry);
+            case HTTP2 -> http2(properties);
+        };
+    }
+
+    private static ClientHttpRequestFactory simple(XWikiTransportProperties properties) {
+        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+        factory.setConnectTimeout(Duration.ofMillis(properties.getConnectTimeoutMs()));
+        factory.setReadTimeout(Duration.ofMillis(properties.getReadTimeoutMs()));
+        return factory;
+    }
+
+    /**
+     * Пул соединений Apache HttpClient 5. Ответы в gzip/deflate клиент распаковывает сам,
+     * просроченные и простаивающие соединения закрывает фоновый поток.
+     * Метрики пула: httpcomponents.httpclient.pool.* с тегом httpclient=xwiki.
+     */
+    private static ClientHttpRequestFactory pooled(XWikiTransportProperties properties, MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(properties.getMaxConnections())
+                .setMaxConnPerRoute(properties.getMaxConnectionsPerRoute())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(properties.getConnectTimeoutMs()))
+                        .setSocketTimeout(Timeout.ofMilliseconds(properties.getReadTimeoutMs()))
+                        .setTimeToLive(TimeValue.ofMilliseconds(properties.getConnectionTtlMs()))
+                        .setValidateAfterInactivity(TimeValue.ofMilliseconds(properties.getValidateAfterInactivityMs()))
+                        .build())
+                .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "xwiki").bindTo(meterRegistry);
+
+        HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        // Сколько ждать свободного соединения из пула
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(properties.getConnectTimeoutMs()))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(properties.getIdleEvictMs()));
+        if (!properties.isCompression()) {
+            builder.disableContentCompression();
+        }
+        return new HttpComponentsClientHttpRequestFactory(builder.build());
+    }
+
+    /**
+     * java.net.http.HttpClient: по https версия согласуется через ALPN, по http – через upgrade h2c;
+     * если сервер не поддерживает HTTP/2, используется HTTP/1.1 со своим пулом соединений.
+     */
+    private static ClientHttpRequestFactory http2(XWikiTransportProperties properties) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(properties.getConnectTimeoutMs()))
+                .build();
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+        factory.setReadTimeout(Duration.ofMillis(properties.getReadTimeoutMs()));
+        return factory;
+    }
+}
@@ -0,0 +1,43 @@
+package ru.cbgr.adapter.xwiki.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Конфигурация моделей Ollama: отдельная модель embedding`ов, быстрая и качественная модели чата
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "ai.models")
+public class AiModelProperties {
+    /**
+     * Модель embedding`ов. Смена модели (в том числе прежнего значения по умолчанию llama3.2:3b)
+     * требует полного обхода: поиск использует только векторы текущей модели, поэтому до конца обхода
+     * в нём видны лишь уже переиндексированные страницы
+     */
+    private String embedding = "nomic-embed-text";
+    /**
+     * Модель чата для коротких запросов
+     */
+    private String chatFast = "llama3.2:1b";
+    /**
+     * Модель чата для длинных запросов и ответов по содержимому XWiki
+     */
+    private String chatQuality = "llama3.2:3b";
+    /**
+     * Запросы длиннее этого количества символов без явного профиля отправляются в качественную модель
+     */
+    private int qualityPromptChars = 1500;
+    /**
+     * Сколько Ollama держит модель в памяти после запроса (keep_alive), например 30m; -1 – бессрочно
+     */
+    private String keepAlive = "30m";
+    /**
+     * Загрузить модели в Ollama при старте, чтобы первый запрос не ждал загрузки модели
+     */
+    private boolean warmUp = true;
+}
@@ -0,0 +1,29 @@
+package ru.cbgr.adapter.xwiki.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Конфигурация разбиения страниц на фрагменты перед получением embedding`ов
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "ai.chunking")
+public class ChunkingProperties {
+    /**
+     * Максимальная длина фрагмента в токенах
+     */
+    private int maxChunkTokens = 256;
+    /**
+     * Перекрытие соседних фрагментов одного раздела в токенах
+     */
+    private int overlapTokens = 32;
+    /**
+     * Среднее количество символов на токен для оценки длины текста без токенизатора
+     */
+    private double charsPerToken = 4.0;
+}
@@ -0,0 +1,84 @@
+package ru.cbgr.adapter.xwiki.configuration;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.UUID;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import jakarta.annotation.PostConstruct;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Конфигурация совместной работы нескольких экземпляров адаптера через общую БД:
+ * очередь обхода с арендой элементов и выбор единственного ведущего для опроса изменений
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "cluster")
+public class ClusterProperties {
+    /**
+     * Обход через общую очередь в БД; выключено – экземпляр работает самостоятельно
+     */
+    private boolean enabled = false;
+    /**
+     * Идентификатор экземпляра; пусто – имя хоста и случайный суффикс.
+     * Под ним берутся и продлеваются аренды, поэтому он вычисляется один раз на всё время работы
+     */
+    private volatile String instanceId = "";
+    /**
+     * Срок аренды элемента очереди: не продлённый вовремя элемент забирает другой экземпляр
+     */
+    private long leaseMs = 60000;
+    /**
+     * Как часто экземпляр продлевает аренду своих элементов
+     */
+    private long heartbeatMs = 15000;
+    /**
+     * Срок аренды роли ведущего (опрос изменений, координация обхода)
+     */
+    private long leaderLeaseMs = 30000;
+    /**
+     * Сколько элементов очереди экземпляр обрабатывает одновременно
+     */
+    private int workerConcurrency = 16;
+    /**
+     * Попыток на элемент очереди, включая первую
+     */
+    private int maxAttempts = 3;
+    /**
+     * Пауза опроса очереди, когда в ней нет работы
+     */
+    private long pollIntervalMs = 1000;
+
+    @PostConstruct
+    void resolveInstanceId() {
+        getInstanceId();
+    }
+
+    public String getInstanceId() {
+        String id = instanceId;
+        if (id == null || id.isBlank()) {
+            synchronized (this) {
+                id = instanceId;
+                if (id == null || id.isBlank()) {
+                    id = hostName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+                    instanceId = id;
+                }
+            }
+        }
+        return id;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "adapter";
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package ru.cbgr.adapter.xwiki.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Конфигурация параллельного обхода пространств и страниц XWiki
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "xwiki.crawl")
+public class CrawlProperties {
+    /**
+     * Максимальное количество одновременных запросов к одному хосту XWiki
+     */
+    private int maxConcurrencyPerHost = 16;
+    /**
+     * Сколько страниц одной вики обрабатывается одновременно; 0 – как maxConcurrencyPerHost.
+     * В ферме из нескольких вики значение меньше maxConcurrencyPerHost не даёт большой вики занять
+     * все запросы к хосту, и небольшие вики обходятся параллельно с ней
+     */
+    private int maxConcurrencyPerWiki = 0;
+    /**
+     * Сколько страниц запрашивать в одной порции списка страниц пространства
+     */
+    private int pageListSize = 500;
+    /**
+     * Сколько завершённых задач обхода хранить для запросов состояния
+     */
+    private int jobHistorySize = 20;
+    /**
+     * Контрольная точка обхода записывается каждые checkpointEveryPages обработанных страниц
+     */
+    private int checkpointEveryPages = 500;
+    /**
+     * …или не реже, чем раз в checkpointIntervalMs
+     */
+    private long checkpointIntervalMs = 10000;
+
+    public int getMaxConcurrencyPerWiki() {
+        return maxConcurrencyPerWiki > 0 ? maxConcurrencyPerWiki : maxConcurrencyPerHost;
+    }
+}
@@ -0,0 +1,25 @@
+package ru.cbgr.adapter.xwiki.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Конфигурация объединения одиночных запросов embedding`ов в пакеты
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "ai.embedding.batch")
+public class EmbeddingBatchProperties {
+    /**
+     * Максимальное количество текстов в одном запросе к модели
+     */
+    private int maxBatchSize = 32;
+    /**
+     * Сколько миллисекунд первый запрос пакета ждёт попутчиков
+     */
+    private long maxWaitMs = 10;
+}
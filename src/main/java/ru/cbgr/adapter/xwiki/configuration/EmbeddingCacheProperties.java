@@ -0,0 +1,42 @@
+package ru.cbgr.adapter.xwiki.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Конфигурация кеша embedding`ов по хешу нормализованного текста
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "ai.embedding.cache")
+public class EmbeddingCacheProperties {
+    private boolean enabled = true;
+    /**
+     * Объём кеша в памяти, МБ (по размеру хранимых векторов)
+     */
+    private long maxSizeMb = 128;
+    /**
+     * Представление векторов в памяти
+     */
+    private Storage storage = Storage.FLOAT32;
+    /**
+     * Хранить embedding`и также в таблице embedding_cache, чтобы кеш переживал перезапуск
+     */
+    private boolean persistent = false;
+
+    public enum Storage {
+        /**
+         * float[] – вектор отдаётся без потерь
+         */
+        FLOAT32,
+        /**
+         * Байт на компоненту с общим масштабом вектора: в 4 раза меньше памяти,
+         * косинусная близость меняется в третьем-четвёртом знаке
+         */
+        INT8
+    }
+}
@@ -15,4 +15,20 @@ import lombok.Setter;
 @ConfigurationProperties(prefix = "xwiki.modifications")
 public class ModificationCheckerProperties {
     private boolean enabled;
+    /**
+     * Окно в миллисекундах, за которое несколько правок одной страницы схлопываются в одну переиндексацию
+     */
+    private long reindexWindowMs = 10000;
+    /**
+     * Количество изменений, запрашиваемых за один вызов /modifications
+     */
+    private int pageSize = 50;
+    /**
+     * Интервал опроса при потоке правок
+     */
+    private long minPollIntervalMs = 5000;
+    /**
+     * Интервал опроса, до которого он растёт при отсутствии изменений
+     */
+    private long maxPollIntervalMs = 300000;
 }
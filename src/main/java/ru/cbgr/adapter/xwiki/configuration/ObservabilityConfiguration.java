@@ -0,0 +1,20 @@
+package ru.cbgr.adapter.xwiki.configuration;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.observation.ClientRequestObservationConvention;
+
+import ru.cbgr.adapter.xwiki.client.XWikiClientObservationConvention;
+
+@Configuration
+public class ObservabilityConfiguration {
+
+    /**
+     * Подхватывается автоконфигурацией RestTemplateBuilder: теги http.client.requests
+     * для запросов к XWiki получают шаблон пути вместо полного URL
+     */
+    @Bean
+    public ClientRequestObservationConvention xWikiClientObservationConvention() {
+        return new XWikiClientObservationConvention();
+    }
+}
@@ -0,0 +1,30 @@
+package ru.cbgr.adapter.xwiki.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Конфигурация локального кеша содержимого страниц XWiki
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "xwiki.pagecache")
+public class PageCacheProperties {
+    private boolean enabled = true;
+    /**
+     * Объём кеша в памяти, МБ (оценка по длине содержимого страниц)
+     */
+    private long maxSizeMb = 256;
+    /**
+     * Каталог дискового уровня кеша; пусто – дисковый уровень отключён
+     */
+    private String diskPath = "";
+    /**
+     * Объём дискового уровня кеша, МБ; при превышении удаляются давно не использованные страницы
+     */
+    private long maxDiskSizeMb = 2048;
+}
@@ -0,0 +1,29 @@
+package ru.cbgr.adapter.xwiki.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Конфигурация генерации ответов с опорой на содержимое XWiki
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "ai.rag")
+public class RagProperties {
+    /**
+     * Сколько ближайших фрагментов запрашивать из индекса
+     */
+    private int topK = 5;
+    /**
+     * Бюджет контекста в токенах, в который должны уместиться фрагменты
+     */
+    private int maxContextTokens = 2048;
+    /**
+     * Среднее количество символов на токен для оценки длины текста без токенизатора
+     */
+    private double charsPerToken = 4.0;
+}
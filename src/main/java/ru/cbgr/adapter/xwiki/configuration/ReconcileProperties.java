@@ -0,0 +1,25 @@
+package ru.cbgr.adapter.xwiki.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Конфигурация сверки индекса с XWiki по отпечаткам пространств
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "xwiki.reconcile")
+public class ReconcileProperties {
+    /**
+     * Сверка по расписанию
+     */
+    private boolean enabled;
+    /**
+     * Расписание сверки (cron Spring)
+     */
+    private String cron = "0 0 3 * * *";
+}
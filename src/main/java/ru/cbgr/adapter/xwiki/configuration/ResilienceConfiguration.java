@@ -0,0 +1,22 @@
+package ru.cbgr.adapter.xwiki.configuration;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+import ru.cbgr.adapter.xwiki.resilience.ResilientExecutor;
+
+@Configuration
+public class ResilienceConfiguration {
+
+    @Bean
+    public ResilientExecutor xWikiResilience(ResilienceProperties properties, MeterRegistry meterRegistry) {
+        return new ResilientExecutor("xwiki", properties.getXwiki(), meterRegistry);
+    }
+
+    @Bean
+    public ResilientExecutor ollamaResilience(ResilienceProperties properties, MeterRegistry meterRegistry) {
+        return new ResilientExecutor("ollama", properties.getOllama(), meterRegistry);
+    }
+}
@@ -0,0 +1,77 @@
+package ru.cbgr.adapter.xwiki.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Конфигурация ограничения нагрузки, повторов и предохранителей для XWiki и Ollama
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "resilience")
+public class ResilienceProperties {
+    private Backend xwiki = new Backend();
+    private Backend ollama = ollamaDefaults();
+
+    @Getter
+    @Setter
+    public static class Backend {
+        /**
+         * Запросов в секунду; 0 – без ограничения
+         */
+        private double ratePerSecond = 100;
+        /**
+         * Сколько запросов можно выполнить подряд без ожидания
+         */
+        private int burst = 50;
+        /**
+         * Нижняя граница адаптивного количества одновременных запросов
+         */
+        private int minConcurrency = 2;
+        /**
+         * Верхняя граница адаптивного количества одновременных запросов
+         */
+        private int maxConcurrency = 16;
+        /**
+         * Ответ медленнее порога считается признаком перегрузки и уменьшает количество одновременных запросов
+         */
+        private long latencyThresholdMs = 2000;
+        /**
+         * Попыток на запрос, включая первую; повторяются только идемпотентные запросы
+         */
+        private int maxAttempts = 3;
+        /**
+         * Базовая задержка перед повтором; растёт вдвое с каждой попыткой, фактическая – случайная до этой величины
+         */
+        private long retryBaseDelayMs = 200;
+        private long retryMaxDelayMs = 5000;
+        /**
+         * Ошибок подряд до размыкания предохранителя
+         */
+        private int failureThreshold = 5;
+        /**
+         * Сколько предохранитель остаётся разомкнутым перед пробным запросом
+         */
+        private long openMs = 30000;
+    }
+
+    /**
+     * Запросы к модели долгие и ограничены числом параллельных слотов Ollama,
+     * поэтому частота не ограничивается, а порог задержки и паузы между повторами больше
+     */
+    private static Backend ollamaDefaults() {
+        Backend backend = new Backend();
+        backend.setRatePerSecond(0);
+        backend.setMinConcurrency(1);
+        backend.setMaxConcurrency(4);
+        backend.setLatencyThresholdMs(60000);
+        backend.setRetryBaseDelayMs(1000);
+        backend.setRetryMaxDelayMs(10000);
+        backend.setFailureThreshold(3);
+        return backend;
+    }
+}
@@ -0,0 +1,31 @@
+package ru.cbgr.adapter.xwiki.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Конфигурация кеша ответов модели на /api/ai/generate
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "ai.response.cache")
+public class ResponseCacheProperties {
+    private boolean enabled = true;
+    /**
+     * Максимальное количество ответов в кеше
+     */
+    private long maxEntries = 1000;
+    /**
+     * Время жизни ответа с момента генерации
+     */
+    private long ttlMs = 3600000;
+    /**
+     * Косинусная близость запроса к закешированному, начиная с которой отдаётся его ответ;
+     * больше 1 – только точное совпадение запроса
+     */
+    private double similarityThreshold = 0.95;
+}
@@ -4,19 +4,36 @@ import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
-import java.time.Duration;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import ru.cbgr.adapter.xwiki.client.GzipResponseInterceptor;
+import ru.cbgr.adapter.xwiki.client.XWikiRequestFactories;
 
 @Configuration
 public class RestTemplateConfiguration {
 
+    /**
+     * Фабрика запросов объявлена бином, чтобы пул соединений закрывался вместе с контекстом
+     */
+    @Bean
+    public ClientHttpRequestFactory xWikiRequestFactory(XWikiTransportProperties properties,
+                                                        MeterRegistry meterRegistry) {
+        return XWikiRequestFactories.create(properties, meterRegistry);
+    }
+
     @Bean
-    public RestTemplate xWikiRestTemplate(RestTemplateBuilder builder) {
-        return builder
+    public RestTemplate xWikiRestTemplate(RestTemplateBuilder builder, XWikiTransportProperties properties,
+                                          ClientHttpRequestFactory xWikiRequestFactory) {
+        // Таймауты заданы в самой фабрике
+        builder = builder
                 .defaultHeader("Accept", MediaType.APPLICATION_JSON_VALUE)
-                .setConnectTimeout(Duration.ofSeconds(5))
-                .setReadTimeout(Duration.ofSeconds(5))
-                .build();
+                .requestFactory(() -> xWikiRequestFactory);
+        if (properties.isCompression() && properties.getType() != XWikiTransportProperties.Type.POOLED) {
+            builder = builder.additionalInterceptors(new GzipResponseInterceptor());
+        }
+        return builder.build();
     }
 }
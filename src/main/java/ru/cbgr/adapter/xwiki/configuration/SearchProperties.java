@@ -0,0 +1,29 @@
+package ru.cbgr.adapter.xwiki.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Конфигурация семантического поиска по фрагментам страниц
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "xwiki.search")
+public class SearchProperties {
+    /**
+     * Количество связей узла в графе HNSW (M)
+     */
+    private int maxConnections = 16;
+    /**
+     * Ширина поиска соседей при добавлении вектора
+     */
+    private int efConstruction = 100;
+    /**
+     * Ширина поиска при запросе: больше – выше полнота и медленнее
+     */
+    private int efSearch = 100;
+}
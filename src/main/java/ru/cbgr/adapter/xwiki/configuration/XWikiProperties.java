@@ -1,5 +1,7 @@
 package ru.cbgr.adapter.xwiki.configuration;
 
+import java.util.List;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
@@ -17,4 +19,8 @@ public class XWikiProperties {
     private String baseUrl;
     private String username;
     private String password;
+    /**
+     * Вики фермы для обхода и опроса изменений; пусто – все вики, которые отдаёт /rest/wikis
+     */
+    private List<String> wikis = List.of();
 }
@@ -0,0 +1,63 @@
+package ru.cbgr.adapter.xwiki.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Конфигурация HTTP-транспорта клиента XWiki
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "xwiki.transport")
+public class XWikiTransportProperties {
+    /**
+     * Реализация транспорта
+     */
+    private Type type = Type.POOLED;
+    private long connectTimeoutMs = 5000;
+    private long readTimeoutMs = 5000;
+    /**
+     * Размер пула соединений на все хосты (только POOLED)
+     */
+    private int maxConnections = 64;
+    /**
+     * Размер пула соединений на один хост (только POOLED); не меньше xwiki.crawl.maxConcurrencyPerHost,
+     * иначе запросы, пропущенные ограничителем, будут ждать соединения
+     */
+    private int maxConnectionsPerRoute = 16;
+    /**
+     * Через сколько простоя соединение закрывается фоновой очисткой пула (только POOLED)
+     */
+    private long idleEvictMs = 30000;
+    /**
+     * Предельное время жизни соединения (только POOLED)
+     */
+    private long connectionTtlMs = 300000;
+    /**
+     * Через сколько простоя соединение проверяется перед повторным использованием (только POOLED)
+     */
+    private long validateAfterInactivityMs = 2000;
+    /**
+     * Запрашивать ответы в gzip
+     */
+    private boolean compression = true;
+
+    public enum Type {
+        /**
+         * HttpURLConnection из JDK: keep-alive не больше http.maxConnections (5) соединений на хост
+         */
+        SIMPLE,
+        /**
+         * Apache HttpClient 5 с пулом соединений и метриками пула
+         */
+        POOLED,
+        /**
+         * java.net.http.HttpClient с HTTP/2: запросы мультиплексируются в одном соединении
+         */
+        HTTP2
+    }
+}
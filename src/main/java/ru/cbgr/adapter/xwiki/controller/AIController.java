@@ -1,23 +1,23 @@
 package ru.cbgr.adapter.xwiki.controller;
 
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 
-import org.springframework.ai.chat.model.ChatResponse;
-import org.springframework.ai.embedding.EmbeddingModel;
-import org.springframework.ai.embedding.EmbeddingRequest;
 import org.springframework.ai.embedding.EmbeddingResponse;
-import org.springframework.ai.ollama.OllamaEmbeddingModel;
-import org.springframework.ai.ollama.api.OllamaApi;
-import org.springframework.ai.ollama.api.OllamaModel;
-import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import reactor.core.publisher.Flux;
+
+import ru.cbgr.adapter.xwiki.service.ChatProfile;
+import ru.cbgr.adapter.xwiki.service.EmbeddingBatcher;
 import ru.cbgr.adapter.xwiki.service.LlamaAiService;
+import ru.cbgr.adapter.xwiki.service.RagService;
+import ru.cbgr.adapter.xwiki.service.ResponseCache;
 
 import lombok.RequiredArgsConstructor;
 
@@ -27,14 +27,52 @@ import lombok.RequiredArgsConstructor;
 public class AIController {
 
     private final LlamaAiService llamaAiService;
+    private final EmbeddingBatcher embeddingBatcher;
+    private final RagService ragService;
+    private final ResponseCache responseCache;
 
+    /**
+     * Ответ модели на запрос. С rag=true запрос дополняется найденными фрагментами XWiki,
+     * а в ответе возвращаются страницы-источники.
+     * profile выбирает модель: FAST, QUALITY или AUTO – по длине запроса; ответы с rag=true
+     * по умолчанию строит качественная модель.
+     * Повторные и близкие по смыслу запросы отдаются из {@link ResponseCache}.
+     */
     @GetMapping("/generate")
-    public ResponseEntity<ChatResponse> generate(@RequestParam(value = "message") String promptMessage) {
-        return ResponseEntity.ok(llamaAiService.generateResult(promptMessage));
+    public ResponseEntity<?> generate(@RequestParam(value = "message") String promptMessage,
+                                      @RequestParam(value = "rag", defaultValue = "false") boolean rag,
+                                      @RequestParam(value = "profile", defaultValue = "AUTO") ChatProfile profile) {
+        if (rag) {
+            ChatProfile ragProfile = ragProfile(profile);
+            return ResponseEntity.ok(responseCache.get("rag:" + ragProfile, promptMessage,
+                    () -> ragService.generate(promptMessage, ragProfile),
+                    response -> ResponseCache.Dependencies.of(response.getSources())));
+        }
+        return ResponseEntity.ok(responseCache.get("chat:" + profile, promptMessage,
+                () -> llamaAiService.generateResult(promptMessage, profile),
+                response -> ResponseCache.Dependencies.NONE));
+    }
+
+    /**
+     * Потоковый ответ модели (Server-Sent Events): части ответа отправляются клиенту по мере генерации.
+     * Если клиент закрывает соединение, генерация в Ollama прекращается.
+     */
+    @GetMapping(value = "/generate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> generateStream(@RequestParam(value = "message") String promptMessage,
+                                       @RequestParam(value = "rag", defaultValue = "false") boolean rag,
+                                       @RequestParam(value = "profile", defaultValue = "AUTO") ChatProfile profile) {
+        String prompt = rag ? ragService.buildPrompt(promptMessage, new LinkedHashMap<>()) : promptMessage;
+        return llamaAiService.streamResult(prompt, rag ? ragProfile(profile) : profile)
+                .filter(response -> response.getResult() != null && response.getResult().getOutput().getContent() != null)
+                .map(response -> response.getResult().getOutput().getContent());
     }
 
     @GetMapping("/embed")
     public ResponseEntity<EmbeddingResponse> embed(@RequestParam(value = "message") String message) {
-        return ResponseEntity.ok(llamaAiService.getEmbeddings(message));
+        return ResponseEntity.ok(new EmbeddingResponse(List.of(embeddingBatcher.embed(message).join())));
+    }
+
+    private static ChatProfile ragProfile(ChatProfile profile) {
+        return profile == ChatProfile.AUTO ? ChatProfile.QUALITY : profile;
     }
 }
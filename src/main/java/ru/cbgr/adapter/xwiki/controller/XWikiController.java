@@ -1,12 +1,27 @@
 package ru.cbgr.adapter.xwiki.controller;
 
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import ru.cbgr.adapter.xwiki.dto.job.CrawlJobStatus;
+import ru.cbgr.adapter.xwiki.dto.job.ReconcileJobStatus;
+import ru.cbgr.adapter.xwiki.dto.job.SpaceCrawlResult;
+import ru.cbgr.adapter.xwiki.dto.search.SearchResult;
 import ru.cbgr.adapter.xwiki.dto.xwiki.ModificationsResponse;
-import ru.cbgr.adapter.xwiki.service.EmbeddingsProcessorService;
+import ru.cbgr.adapter.xwiki.service.CrawlJob;
+import ru.cbgr.adapter.xwiki.service.CrawlJobService;
+import ru.cbgr.adapter.xwiki.service.ReconcileJob;
+import ru.cbgr.adapter.xwiki.service.ReconciliationService;
+import ru.cbgr.adapter.xwiki.service.SemanticSearchService;
 import ru.cbgr.adapter.xwiki.service.XWikiModificationsService;
 
 import lombok.RequiredArgsConstructor;
@@ -17,23 +32,80 @@ import lombok.RequiredArgsConstructor;
 public class XWikiController {
 
     private final XWikiModificationsService xWikiModificationsService;
-    private final EmbeddingsProcessorService embeddingsProcessorService;
+    private final CrawlJobService crawlJobService;
+    private final SemanticSearchService semanticSearchService;
+    private final ReconciliationService reconciliationService;
 
     /**
-     * Эндпоинт для получения агрегированной истории изменений из XWiki.
-     * Пример запроса: GET http://localhost:8080/api/wiki/modifications
+     * Эндпоинт для получения агрегированной истории изменений вики.
+     * Пример запроса: GET http://localhost:8080/api/wiki/modifications?wiki=sales
      *
      * @return JSON-ответ с полями links и historySummaries.
      */
     @GetMapping("/modifications")
-    public ResponseEntity<ModificationsResponse> getModifications() {
-        ModificationsResponse modifications = xWikiModificationsService.getModifications();
+    public ResponseEntity<ModificationsResponse> getModifications(
+            @RequestParam(value = "wiki", defaultValue = "xwiki") String wiki) {
+        ModificationsResponse modifications = xWikiModificationsService.getModifications(wiki);
         return ResponseEntity.ok(modifications);
     }
 
+    /**
+     * Запускает полный обход в фоне и сразу возвращает состояние задачи.
+     * Если обход уже выполняется, возвращается активная задача.
+     * Пример запроса: GET http://localhost:8080/api/wiki/processAll
+     */
     @GetMapping("/processAll")
-    public ResponseEntity<String> processAllSpacesAndPages() {
-        embeddingsProcessorService.processAllSpacesAndPages();
-        return ResponseEntity.ok("Обработка пространств и страниц запущена.");
+    public ResponseEntity<CrawlJobStatus> processAllSpacesAndPages() {
+        CrawlJob job = crawlJobService.submit();
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(job.toStatus());
+    }
+
+    /**
+     * Прогресс задачи обхода: пространства и страницы, скорость, оценка оставшегося времени.
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<CrawlJobStatus> getJob(@PathVariable String jobId) {
+        return ResponseEntity.of(crawlJobService.find(jobId).map(CrawlJob::toStatus));
+    }
+
+    /**
+     * Итоги задачи обхода по пространствам верхнего уровня.
+     */
+    @GetMapping("/jobs/{jobId}/results")
+    public ResponseEntity<List<SpaceCrawlResult>> getJobResults(@PathVariable String jobId) {
+        return ResponseEntity.of(crawlJobService.find(jobId).map(job -> job.getProgress().getSpaceResults()));
+    }
+
+    @DeleteMapping("/jobs/{jobId}")
+    public ResponseEntity<CrawlJobStatus> cancelJob(@PathVariable String jobId) {
+        return ResponseEntity.of(crawlJobService.cancel(jobId).map(CrawlJob::toStatus));
+    }
+
+    /**
+     * Запускает в фоне сверку индекса с XWiki по отпечаткам пространств: новые и изменённые страницы
+     * переиндексируются, удалённые исключаются. Если сверка уже выполняется, возвращается её задача.
+     * Пример запроса: POST http://localhost:8080/api/wiki/reconcile
+     */
+    @PostMapping("/reconcile")
+    public ResponseEntity<ReconcileJobStatus> reconcile() {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(reconciliationService.submit().toStatus());
+    }
+
+    /**
+     * Состояние задачи сверки и её итог после завершения.
+     */
+    @GetMapping("/reconcile/{jobId}")
+    public ResponseEntity<ReconcileJobStatus> getReconcileJob(@PathVariable String jobId) {
+        return ResponseEntity.of(reconciliationService.find(jobId).map(ReconcileJob::toStatus));
+    }
+
+    /**
+     * Поиск фрагментов страниц по смыслу запроса.
+     * Пример запроса: GET http://localhost:8080/api/wiki/search?query=как настроить интеграцию&limit=5
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<SearchResult>> search(@RequestParam(value = "query") String query,
+                                                     @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return ResponseEntity.ok(semanticSearchService.search(query, limit));
     }
 }
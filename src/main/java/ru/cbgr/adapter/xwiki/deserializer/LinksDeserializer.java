@@ -0,0 +1,57 @@
+package ru.cbgr.adapter.xwiki.deserializer;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Links;
+
+/**
+ * Читает массив ссылок XWiki сразу в {@link Links}, не создавая промежуточных объектов Link
+ * для известных отношений.
+ */
+public class LinksDeserializer extends StdDeserializer<Links> {
+
+    public LinksDeserializer() {
+        super(Links.class);
+    }
+
+    @Override
+    public Links deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            return (Links) context.handleUnexpectedToken(Links.class, parser);
+        }
+        Links.Builder builder = Links.builder();
+        for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String href = null;
+            String rel = null;
+            String type = null;
+            String hrefLang = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                switch (name) {
+                    case "href" -> href = parser.getValueAsString();
+                    case "rel" -> rel = parser.getValueAsString();
+                    case "type" -> type = parser.getValueAsString();
+                    case "hrefLang" -> hrefLang = parser.getValueAsString();
+                    default -> parser.skipChildren();
+                }
+            }
+            builder.add(href, rel, type, hrefLang);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Links getEmptyValue(DeserializationContext context) {
+        return Links.EMPTY;
+    }
+}
@@ -0,0 +1,78 @@
+package ru.cbgr.adapter.xwiki.deserializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.HistorySummary;
+import ru.cbgr.adapter.xwiki.dto.xwiki.page.PageSummary;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Потоковое чтение списков из ответов XWiki.
+ * Элементы массива (pageSummaries, historySummaries) разбираются по одному и сразу передаются потребителю,
+ * поэтому ответ не собирается в память целиком, а обработка начинается с первого элемента.
+ */
+@Component
+@RequiredArgsConstructor
+public class SummaryStreamReader {
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @return количество прочитанных страниц
+     */
+    public int readPageSummaries(InputStream in, Consumer<? super PageSummary> consumer) throws IOException {
+        return readArray(in, "pageSummaries", PageSummary.class, consumer);
+    }
+
+    /**
+     * @return количество прочитанных изменений
+     */
+    public int readHistorySummaries(InputStream in, Consumer<? super HistorySummary> consumer) throws IOException {
+        return readArray(in, "historySummaries", HistorySummary.class, consumer);
+    }
+
+    /**
+     * Проходит по полям корневого объекта; поле field разбирается поэлементно, остальные пропускаются.
+     */
+    private <T> int readArray(InputStream in, String field, Class<T> type, Consumer<? super T> consumer)
+            throws IOException {
+        ObjectReader reader = objectMapper.readerFor(type);
+        int count = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Ожидался объект JSON с полем " + field);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (!field.equals(name) || value != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                    if (token == null) {
+                        throw new JsonParseException(parser, "Неожиданный конец массива " + field);
+                    }
+                    if (token == JsonToken.START_OBJECT) {
+                        consumer.accept(reader.readValue(parser));
+                        count++;
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,28 @@
+package ru.cbgr.adapter.xwiki.dto.ai;
+
+import java.util.List;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Ответ модели, построенный по найденным фрагментам XWiki
+ */
+@Data
+@Builder(toBuilder = true)
+public class RagResponse {
+    private String answer;
+    private List<RagSource> sources;
+    /**
+     * Время поиска фрагментов и сборки запроса, мс
+     */
+    private long retrievalMs;
+    /**
+     * Время ответа модели, мс
+     */
+    private long generationMs;
+    /**
+     * Ответ взят из кеша ответов; время поиска и генерации в этом случае нулевое
+     */
+    private boolean cached;
+}
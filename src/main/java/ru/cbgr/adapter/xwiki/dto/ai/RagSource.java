@@ -0,0 +1,11 @@
+package ru.cbgr.adapter.xwiki.dto.ai;
+
+/**
+ * Страница XWiki, фрагменты которой вошли в контекст ответа
+ *
+ * @param pageId идентификатор страницы
+ * @param pageUrl адрес страницы в XWiki
+ * @param score близость лучшего фрагмента страницы к запросу
+ */
+public record RagSource(String pageId, String pageUrl, float score) {
+}
@@ -0,0 +1,11 @@
+package ru.cbgr.adapter.xwiki.dto.embedding;
+
+/**
+ * Фрагмент страницы вместе с его embedding`ом
+ *
+ * @param chunkIndex порядковый номер фрагмента на странице
+ * @param content текст фрагмента
+ * @param embedding вектор фрагмента
+ */
+public record PageChunkEmbedding(int chunkIndex, String content, float[] embedding) {
+}
@@ -0,0 +1,13 @@
+package ru.cbgr.adapter.xwiki.dto.embedding;
+
+/**
+ * Сохранённый фрагмент страницы
+ *
+ * @param pageId идентификатор страницы
+ * @param chunkIndex номер фрагмента на странице
+ * @param pageUrl адрес страницы в XWiki
+ * @param content текст фрагмента, null если не запрашивался
+ * @param embedding вектор фрагмента, null если не запрашивался
+ */
+public record StoredChunk(String pageId, int chunkIndex, String pageUrl, String content, float[] embedding) {
+}
@@ -0,0 +1,13 @@
+package ru.cbgr.adapter.xwiki.dto.job;
+
+public enum CrawlJobState {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    CANCELLED;
+
+    public boolean isFinished() {
+        return this == COMPLETED || this == FAILED || this == CANCELLED;
+    }
+}
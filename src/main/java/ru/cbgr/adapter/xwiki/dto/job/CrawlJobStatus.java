@@ -0,0 +1,30 @@
+package ru.cbgr.adapter.xwiki.dto.job;
+
+import java.time.Instant;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Состояние задачи полного обхода XWiki
+ */
+@Data
+@Builder
+public class CrawlJobStatus {
+    private String id;
+    private CrawlJobState state;
+    private int spacesDone;
+    private int spacesTotal;
+    private long pagesDone;
+    private long pagesFailed;
+    private long pagesTotal;
+    private double pagesPerSecond;
+    /**
+     * Оценка оставшегося времени в секундах по уже найденным страницам, null пока скорость неизвестна
+     */
+    private Long etaSeconds;
+    private Instant submittedAt;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+}
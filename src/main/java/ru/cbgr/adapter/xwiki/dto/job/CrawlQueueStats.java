@@ -0,0 +1,10 @@
+package ru.cbgr.adapter.xwiki.dto.job;
+
+/**
+ * Состояние распределённого обхода по элементам общей очереди
+ *
+ * @param remaining элементы в очереди и в работе, любого вида
+ */
+public record CrawlQueueStats(int spacesTotal, int spacesDone, long pagesTotal, long pagesDone, long pagesFailed,
+                              long remaining) {
+}
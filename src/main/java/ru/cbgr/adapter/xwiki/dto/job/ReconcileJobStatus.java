@@ -0,0 +1,24 @@
+package ru.cbgr.adapter.xwiki.dto.job;
+
+import java.time.Instant;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Состояние задачи сверки индекса с XWiki
+ */
+@Data
+@Builder
+public class ReconcileJobStatus {
+    private String id;
+    private CrawlJobState state;
+    private Instant submittedAt;
+    private Instant startedAt;
+    private Instant finishedAt;
+    /**
+     * Итог сверки, null пока она не завершилась
+     */
+    private ReconcileResult result;
+    private String error;
+}
@@ -0,0 +1,15 @@
+package ru.cbgr.adapter.xwiki.dto.job;
+
+/**
+ * Итог сверки индекса с XWiki
+ *
+ * @param spacesChecked количество пространств в XWiki, для которых посчитан отпечаток
+ * @param spacesChanged количество пространств, отпечаток которых разошёлся с сохранённым
+ * @param spacesRemoved количество пространств, которых больше нет в XWiki
+ * @param pagesIndexed количество новых и изменённых страниц, отправленных на индексацию
+ * @param pagesRemoved количество страниц, исключённых из индекса
+ * @param failed количество пространств и страниц, сверка которых завершилась ошибкой
+ */
+public record ReconcileResult(int spacesChecked, int spacesChanged, int spacesRemoved,
+                              int pagesIndexed, int pagesRemoved, int failed) {
+}
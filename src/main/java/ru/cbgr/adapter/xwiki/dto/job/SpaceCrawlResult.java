@@ -0,0 +1,12 @@
+package ru.cbgr.adapter.xwiki.dto.job;
+
+/**
+ * Итог обхода пространства верхнего уровня (вместе с вложенными пространствами)
+ *
+ * @param spaceId идентификатор пространства
+ * @param pages количество обработанных страниц
+ * @param skipped количество пропущенных страниц: обход отменён, нет ссылки на страницу или нет текста
+ * @param failed количество страниц и вложенных пространств, обработка которых завершилась ошибкой
+ */
+public record SpaceCrawlResult(String spaceId, int pages, int skipped, int failed) {
+}
@@ -0,0 +1,22 @@
+package ru.cbgr.adapter.xwiki.dto.job;
+
+/**
+ * Элемент общей очереди обхода
+ *
+ * @param id идентификатор в очереди; 0 – ещё не поставлен в очередь
+ * @param crawlId задача обхода, к которой относится элемент
+ * @param kind вики, пространство или страница
+ * @param key идентификатор вики, пространства или страницы
+ * @param url ссылка на список страниц пространства или на страницу
+ * @param version версия страницы из списка страниц
+ */
+public record WorkItem(long id, String crawlId, char kind, String key, String url, String version) {
+
+    public static final char WIKI = 'W';
+    public static final char SPACE = 'S';
+    public static final char PAGE = 'P';
+
+    public static WorkItem of(String crawlId, char kind, String key, String url, String version) {
+        return new WorkItem(0, crawlId, kind, key, url, version);
+    }
+}
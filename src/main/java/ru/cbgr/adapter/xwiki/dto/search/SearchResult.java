@@ -0,0 +1,13 @@
+package ru.cbgr.adapter.xwiki.dto.search;
+
+/**
+ * Фрагмент страницы, найденный по смыслу запроса
+ *
+ * @param pageId идентификатор страницы
+ * @param chunkIndex номер фрагмента на странице
+ * @param pageUrl адрес страницы в XWiki
+ * @param score косинусная близость фрагмента к запросу
+ * @param content текст фрагмента
+ */
+public record SearchResult(String pageId, int chunkIndex, String pageUrl, float score, String content) {
+}
@@ -3,12 +3,12 @@ package ru.cbgr.adapter.xwiki.dto.xwiki;
 import java.util.List;
 
 import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.HistorySummary;
-import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Link;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Links;
 
 import lombok.Data;
 
 @Data
 public class ModificationsResponse {
-    private List<Link> links;
+    private Links links;
     private List<HistorySummary> historySummaries;
 }
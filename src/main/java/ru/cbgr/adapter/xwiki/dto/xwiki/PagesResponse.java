@@ -4,7 +4,7 @@ import java.util.List;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
-import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Link;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Links;
 import ru.cbgr.adapter.xwiki.dto.xwiki.page.PageSummary;
 
 import lombok.Data;
@@ -12,6 +12,6 @@ import lombok.Data;
 @Data
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class PagesResponse {
-    private List<Link> links;
+    private Links links;
     private List<PageSummary> pageSummaries;
 }
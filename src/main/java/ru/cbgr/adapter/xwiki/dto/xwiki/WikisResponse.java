@@ -0,0 +1,13 @@
+package ru.cbgr.adapter.xwiki.dto.xwiki;
+
+import lombok.Data;
+import java.util.List;
+
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Links;
+import ru.cbgr.adapter.xwiki.dto.xwiki.wiki.Wiki;
+
+@Data
+public class WikisResponse {
+    private Links links;
+    private List<Wiki> wikis;
+}
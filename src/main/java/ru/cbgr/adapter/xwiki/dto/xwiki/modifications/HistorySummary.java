@@ -1,12 +1,10 @@
 package ru.cbgr.adapter.xwiki.dto.xwiki.modifications;
 
-import java.util.List;
-
 import lombok.Data;
 
 @Data
 public class HistorySummary {
-    private List<Link> links;
+    private Links links;
     private String pageId;
     private String wiki;
     private String space;
@@ -0,0 +1,57 @@
+package ru.cbgr.adapter.xwiki.dto.xwiki.modifications;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Известные отношения ссылок REST API XWiki (поле rel)
+ */
+public enum LinkRelation {
+    WIKI("http://www.xwiki.org/rel/wiki"),
+    SPACES("http://www.xwiki.org/rel/spaces"),
+    SPACE("http://www.xwiki.org/rel/space"),
+    PAGES("http://www.xwiki.org/rel/pages"),
+    PAGE("http://www.xwiki.org/rel/page"),
+    HOME("http://www.xwiki.org/rel/home"),
+    PARENT("http://www.xwiki.org/rel/parent"),
+    CHILDREN("http://www.xwiki.org/rel/children"),
+    HISTORY("http://www.xwiki.org/rel/history"),
+    MODIFICATIONS("http://www.xwiki.org/rel/modifications"),
+    TRANSLATION("http://www.xwiki.org/rel/translation"),
+    TAGS("http://www.xwiki.org/rel/tags"),
+    COMMENTS("http://www.xwiki.org/rel/comments"),
+    ATTACHMENTS("http://www.xwiki.org/rel/attachments"),
+    ATTACHMENT_DATA("http://www.xwiki.org/rel/attachmentData"),
+    OBJECTS("http://www.xwiki.org/rel/objects"),
+    OBJECT("http://www.xwiki.org/rel/object"),
+    CLASS("http://www.xwiki.org/rel/class"),
+    CLASSES("http://www.xwiki.org/rel/classes"),
+    PROPERTIES("http://www.xwiki.org/rel/properties"),
+    SEARCH("http://www.xwiki.org/rel/search"),
+    SYNTAXES("http://www.xwiki.org/rel/syntaxes");
+
+    private static final Map<String, LinkRelation> BY_URI = new HashMap<>();
+
+    static {
+        for (LinkRelation relation : values()) {
+            BY_URI.put(relation.uri, relation);
+        }
+    }
+
+    private final String uri;
+
+    LinkRelation(String uri) {
+        this.uri = uri;
+    }
+
+    public String getUri() {
+        return uri;
+    }
+
+    /**
+     * @return отношение по значению rel или null, если оно неизвестно
+     */
+    public static LinkRelation fromUri(String uri) {
+        return uri == null ? null : BY_URI.get(uri);
+    }
+}
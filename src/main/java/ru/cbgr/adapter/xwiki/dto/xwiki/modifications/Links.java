@@ -0,0 +1,135 @@
+package ru.cbgr.adapter.xwiki.dto.xwiki.modifications;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import ru.cbgr.adapter.xwiki.deserializer.LinksDeserializer;
+
+/**
+ * Компактный неизменяемый список ссылок объекта XWiki.
+ * Для известных отношений хранится только href: какие отношения есть – битовая маска,
+ * а href лежат в массиве в порядке {@link LinkRelation}, так что поиск по отношению – O(1).
+ * XWiki отдаёт в type и hrefLang null; ссылка известного отношения, у которой они заполнены,
+ * хранится целиком, как и ссылки с неизвестным отношением и повторы отношения – обычными {@link Link}.
+ * Для сериализации и существующего кода это по-прежнему список Link, порядок – известные по порядку
+ * {@link LinkRelation}, затем остальные.
+ */
+@JsonDeserialize(using = LinksDeserializer.class)
+public final class Links extends AbstractList<Link> {
+
+    public static final Links EMPTY = new Links(0, new String[0], null);
+
+    private static final LinkRelation[] RELATIONS = LinkRelation.values();
+
+    static {
+        if (RELATIONS.length > Integer.SIZE) {
+            throw new IllegalStateException("Маска отношений ссылок не вмещает " + RELATIONS.length + " значений");
+        }
+    }
+
+    private final int relations;
+    private final String[] hrefs;
+    private final Link[] others;
+
+    private Links(int relations, String[] hrefs, Link[] others) {
+        this.relations = relations;
+        this.hrefs = hrefs;
+        this.others = others;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return href ссылки с отношением relation или null, если такой ссылки нет
+     */
+    public String href(LinkRelation relation) {
+        int bit = 1 << relation.ordinal();
+        if ((relations & bit) != 0) {
+            return hrefs[Integer.bitCount(relations & (bit - 1))];
+        }
+        if (others != null) {
+            for (Link link : others) {
+                if (relation.getUri().equals(link.getRel())) {
+                    return link.getHref();
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Link get(int index) {
+        if (index < hrefs.length) {
+            int mask = relations;
+            for (int i = 0; i < index; i++) {
+                mask &= mask - 1;
+            }
+            return link(hrefs[index], RELATIONS[Integer.numberOfTrailingZeros(mask)].getUri(), null, null);
+        }
+        if (others == null || index - hrefs.length >= others.length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return others[index - hrefs.length];
+    }
+
+    @Override
+    public int size() {
+        return hrefs.length + (others == null ? 0 : others.length);
+    }
+
+    private static Link link(String href, String rel, String type, String hrefLang) {
+        Link link = new Link();
+        link.setHref(href);
+        link.setRel(rel);
+        link.setType(type);
+        link.setHrefLang(hrefLang);
+        return link;
+    }
+
+    public static final class Builder {
+        private final String[] hrefByRelation = new String[RELATIONS.length];
+        private int relations;
+        /**
+         * Отношения, уже встреченные в списке, в том числе сохранённые целиком в others
+         */
+        private int seen;
+        private List<Link> others;
+
+        private Builder() {
+        }
+
+        public Builder add(String href, String rel, String type, String hrefLang) {
+            LinkRelation relation = LinkRelation.fromUri(rel);
+            int bit = relation == null ? 0 : 1 << relation.ordinal();
+            boolean first = relation != null && (seen & bit) == 0;
+            seen |= bit;
+            if (first && type == null && hrefLang == null) {
+                relations |= bit;
+                hrefByRelation[relation.ordinal()] = href;
+            } else {
+                if (others == null) {
+                    others = new ArrayList<>(2);
+                }
+                others.add(link(href, rel, type, hrefLang));
+            }
+            return this;
+        }
+
+        public Links build() {
+            if (relations == 0 && others == null) {
+                return EMPTY;
+            }
+            String[] hrefs = new String[Integer.bitCount(relations)];
+            int size = 0;
+            for (int mask = relations; mask != 0; mask &= mask - 1) {
+                hrefs[size++] = hrefByRelation[Integer.numberOfTrailingZeros(mask)];
+            }
+            return new Links(relations, hrefs, others == null ? null : others.toArray(new Link[0]));
+        }
+    }
+}
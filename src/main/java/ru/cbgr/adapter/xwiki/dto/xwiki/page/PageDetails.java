@@ -5,6 +5,9 @@ import lombok.Data;
 @Data
 public class PageDetails {
     private String id;
+    private String title;
+    private String version;
+    private String xwikiAbsoluteUrl;
     private String content;
     // Можно добавить и другие поля, если понадобится в будущем
 }
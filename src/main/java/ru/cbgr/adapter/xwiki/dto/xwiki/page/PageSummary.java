@@ -1,16 +1,15 @@
 package ru.cbgr.adapter.xwiki.dto.xwiki.page;
 
 import lombok.Data;
-import java.util.List;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
-import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Link;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Links;
 
 @Data
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class PageSummary {
-    private List<Link> links;
+    private Links links;
     private String id;
     private String fullName;
     private String wiki;
@@ -1,13 +1,12 @@
 package ru.cbgr.adapter.xwiki.dto.xwiki.space;
 
 import lombok.Data;
-import java.util.List;
 
-import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Link;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Links;
 
 @Data
 public class Page {
-    private List<Link> links;
+    private Links links;
     private String id;
     private String wiki;
     private String space;
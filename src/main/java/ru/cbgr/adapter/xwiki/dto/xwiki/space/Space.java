@@ -2,13 +2,13 @@ package ru.cbgr.adapter.xwiki.dto.xwiki.space;
 
 import java.util.List;
 
-import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Link;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Links;
 
 import lombok.Data;
 
 @Data
 public class Space {
-    private List<Link> links;
+    private Links links;
     private String id;
     private String wiki;
     private String name;
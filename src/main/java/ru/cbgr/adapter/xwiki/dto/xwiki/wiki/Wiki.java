@@ -0,0 +1,14 @@
+package ru.cbgr.adapter.xwiki.dto.xwiki.wiki;
+
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Links;
+
+import lombok.Data;
+
+@Data
+public class Wiki {
+    private Links links;
+    private String id;
+    private String name;
+    private String description;
+    private String owner;
+}
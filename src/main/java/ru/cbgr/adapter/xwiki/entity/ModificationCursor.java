@@ -0,0 +1,47 @@
+package ru.cbgr.adapter.xwiki.entity;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Отметка последнего обработанного изменения XWiki (high-water mark).
+ * Время изменения дополняется pageId и версией: у нескольких правок может быть одинаковое время.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "modification_cursor")
+public class ModificationCursor {
+
+    /**
+     * Вики, к которой относится отметка
+     */
+    @Id
+    @Column(name = "wiki")
+    private String wiki;
+
+    @Column(name = "modified", nullable = false)
+    private long modified;
+
+    @Column(name = "page_id")
+    private String pageId;
+
+    @Column(name = "version")
+    private String version;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    public ModificationCursor(String wiki) {
+        this.wiki = wiki;
+    }
+}
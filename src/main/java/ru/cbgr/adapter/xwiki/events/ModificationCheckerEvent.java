@@ -1,7 +1,13 @@
 package ru.cbgr.adapter.xwiki.events;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -11,10 +17,20 @@ import ru.cbgr.adapter.xwiki.client.XWikiClient;
 import ru.cbgr.adapter.xwiki.configuration.ModificationCheckerProperties;
 import ru.cbgr.adapter.xwiki.dto.xwiki.ModificationsResponse;
 import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.HistorySummary;
+import ru.cbgr.adapter.xwiki.entity.ModificationCursor;
+import ru.cbgr.adapter.xwiki.service.IncrementalIndexingService;
+import ru.cbgr.adapter.xwiki.service.LeaderElectionService;
+import ru.cbgr.adapter.xwiki.service.WikiDirectory;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Опрашивает историю изменений всех вики фермы. У каждой вики своя отметка последнего
+ * обработанного изменения и свой адаптивный интервал опроса; вики опрашиваются параллельно.
+ * При нескольких экземплярах опрашивает только ведущий: отметки хранятся в БД и сохраняются
+ * после переиндексации, поэтому новый ведущий продолжает с последнего применённого изменения.
+ */
 @Component
 @Slf4j
 @RequiredArgsConstructor
@@ -22,46 +38,156 @@ import lombok.extern.slf4j.Slf4j;
 public class ModificationCheckerEvent {
 
     private final XWikiClient xWikiClient;
+    private final WikiDirectory wikiDirectory;
     private final ModificationCheckerProperties properties;
+    private final IncrementalIndexingService incrementalIndexingService;
+    private final LeaderElectionService leaderElectionService;
 
     /**
-     * Хранит максимальное время модификации, обработанное в предыдущем запуске.
-     * При первом запуске значение равно 0, поэтому все изменения будут считаться новыми.
+     * Расписание опроса по вики
      */
-    private long lastCheckedModificationTimestamp = 0L;
+    private final Map<String, PollSchedule> schedules = new ConcurrentHashMap<>();
 
     /**
-     * Метод, запускаемый каждые 24 часа.
-     * Параметры start и number позволяют получать историю изменений порциями.
+     * Планировщик срабатывает с минимальным интервалом, а фактически опрашиваются только вики,
+     * для которых наступил адаптивно вычисленный момент следующего опроса.
      */
-    @Scheduled(fixedRate = 30000) // 24 часа в миллисекундах = 86400000
+    @Scheduled(fixedDelayString = "${xwiki.modifications.minPollIntervalMs:5000}")
     public void checkForNewModifications() {
-        int start = 1;   // Начинаем с первого изменения
-        int number = 10;  // Получаем 2 изменения за один запрос (пример)
-        log.info("Запуск проверки изменений: start={}, number={}", start, number);
-
-        ModificationsResponse response = xWikiClient.getModifications(start, number);
-        if (response != null && response.getHistorySummaries() != null) {
-            List<HistorySummary> summaries = response.getHistorySummaries();
-
-            // Отбираем только те изменения, время которых больше, чем последнее обработанное
-            List<HistorySummary> newModifications = summaries.stream()
-                    .filter(summary -> summary.getModified() > lastCheckedModificationTimestamp)
-                    .collect(Collectors.toList());
-
-            if (!newModifications.isEmpty()) {
-                log.info("Найдены новые изменения: {}", newModifications);
-                // Обновляем lastCheckedModificationTimestamp до максимального времени среди новых изменений
-                long maxTimestamp = newModifications.stream()
-                        .mapToLong(HistorySummary::getModified)
-                        .max()
-                        .orElse(lastCheckedModificationTimestamp);
-                lastCheckedModificationTimestamp = maxTimestamp;
+        if (!leaderElectionService.tryAcquire(LeaderElectionService.MODIFICATIONS_POLLER)) {
+            log.debug("Изменения опрашивает другой экземпляр");
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<String> due = wikiDirectory.getWikiIds().stream()
+                .filter(wiki -> now >= schedules.computeIfAbsent(wiki, w -> new PollSchedule()).nextPollAt)
+                .toList();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String wiki : due) {
+                executor.submit(() -> checkWiki(wiki));
+            }
+        }
+    }
+
+    /**
+     * История изменений отдаётся от новых к старым, поэтому порции запрашиваются
+     * до тех пор, пока не встретится отметка последнего изменения, уже поставленного в очередь или применённого.
+     */
+    private void checkWiki(String wiki) {
+        List<HistorySummary> newModifications;
+        try {
+            ModificationCursor cursor = incrementalIndexingService.getReadCursor(wiki);
+            if (cursor == null) {
+                newModifications = List.of();
+                HistorySummary newest = readNewest(wiki);
+                if (newest != null) {
+                    incrementalIndexingService.saveCursor(toCursor(wiki, newest));
+                }
             } else {
-                log.info("Новых изменений не обнаружено.");
+                newModifications = readSince(wiki, cursor);
+                enqueue(wiki, newModifications);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Не удалось опросить изменения вики {}: {}", wiki, e.toString());
+            newModifications = List.of();
+        }
+        scheduleNextPoll(schedules.get(wiki), newModifications.size());
+    }
+
+    /**
+     * Отметка сохраняется сервисом переиндексации после того, как изменения применены,
+     * поэтому изменения, не переиндексированные до перезапуска, будут прочитаны снова.
+     */
+    private void enqueue(String wiki, List<HistorySummary> newModifications) {
+        if (!newModifications.isEmpty()) {
+            log.info("Найдены новые изменения в вики {}: {}", wiki, newModifications.size());
+            // Отдаём изменения в порядке от старых к новым
+            incrementalIndexingService.enqueue(toCursor(wiki, newModifications.get(0)), newModifications.reversed());
+        } else {
+            log.debug("Новых изменений в вики {} не обнаружено.", wiki);
+        }
+    }
+
+    /**
+     * Читает изменения новее отметки, постранично, от новых к старым.
+     * Порции читаются до отметки или до конца истории, поэтому всплеск правок любого размера не теряется.
+     * Ответ разбирается потоково; изменения после отметки пропускаются без сборки в объекты ответа.
+     */
+    private List<HistorySummary> readSince(String wiki, ModificationCursor cursor) {
+        List<HistorySummary> result = new ArrayList<>();
+        AtomicBoolean reachedCursor = new AtomicBoolean();
+        int pageSize = properties.getPageSize();
+        for (int page = 0; ; page++) {
+            int count = xWikiClient.streamModifications(wiki, page * pageSize, pageSize, summary -> {
+                if (reachedCursor.get() || !isAfter(summary, cursor)) {
+                    reachedCursor.set(true);
+                } else {
+                    result.add(summary);
+                }
+            });
+            if (reachedCursor.get() || count < pageSize) {
+                return result;
             }
+        }
+    }
+
+    /**
+     * При первом запуске история не переигрывается: её покрывает полный обход,
+     * а отметка встаёт на самое свежее изменение.
+     */
+    private HistorySummary readNewest(String wiki) {
+        ModificationsResponse response = xWikiClient.getModifications(wiki, 0, 1);
+        if (response == null || response.getHistorySummaries() == null || response.getHistorySummaries().isEmpty()) {
+            return null;
+        }
+        log.info("Отметка изменений для {} не найдена, начинаем с последнего изменения", wiki);
+        return response.getHistorySummaries().get(0);
+    }
+
+    /**
+     * Изменение новее отметки, если оно позже по времени, либо имеет то же время,
+     * но встречается в истории раньше самой отметки (не совпадает с её pageId и версией).
+     */
+    private static boolean isAfter(HistorySummary summary, ModificationCursor cursor) {
+        if (summary.getModified() != cursor.getModified()) {
+            return summary.getModified() > cursor.getModified();
+        }
+        return !(Objects.equals(summary.getPageId(), cursor.getPageId())
+                && Objects.equals(summary.getVersion(), cursor.getVersion()));
+    }
+
+    private static ModificationCursor toCursor(String wiki, HistorySummary newest) {
+        ModificationCursor cursor = new ModificationCursor(wiki);
+        cursor.setModified(newest.getModified());
+        cursor.setPageId(newest.getPageId());
+        cursor.setVersion(newest.getVersion());
+        return cursor;
+    }
+
+    /**
+     * Полная порция изменений – поток правок, опрашиваем с минимальным интервалом;
+     * есть изменения – интервал сокращается вдвое; изменений нет – удваивается до максимума.
+     */
+    private void scheduleNextPoll(PollSchedule schedule, int newCount) {
+        long min = properties.getMinPollIntervalMs();
+        long max = properties.getMaxPollIntervalMs();
+        long current = schedule.pollIntervalMs == 0 ? min : schedule.pollIntervalMs;
+        if (newCount >= properties.getPageSize()) {
+            current = min;
+        } else if (newCount > 0) {
+            current = Math.max(min, current / 2);
         } else {
-            log.warn("Получен пустой ответ от XWiki изменений.");
+            current = Math.min(max, current * 2);
         }
+        schedule.pollIntervalMs = current;
+        schedule.nextPollAt = System.currentTimeMillis() + current - min;
+    }
+
+    /**
+     * Текущий интервал опроса вики: сокращается при потоке правок и растёт при простое
+     */
+    private static class PollSchedule {
+        private volatile long pollIntervalMs;
+        private volatile long nextPollAt;
     }
 }
@@ -0,0 +1,14 @@
+package ru.cbgr.adapter.xwiki.events;
+
+import java.util.List;
+
+import ru.cbgr.adapter.xwiki.dto.embedding.PageChunkEmbedding;
+
+/**
+ * Публикуется после записи новых embedding`ов страницы в хранилище
+ *
+ * @param pageId идентификатор страницы
+ * @param chunks все фрагменты страницы в новой версии
+ */
+public record PageIndexedEvent(String pageId, List<PageChunkEmbedding> chunks) {
+}
@@ -0,0 +1,9 @@
+package ru.cbgr.adapter.xwiki.events;
+
+/**
+ * Публикуется после удаления страницы из хранилища embedding`ов
+ *
+ * @param pageId идентификатор страницы
+ */
+public record PageRemovedEvent(String pageId) {
+}
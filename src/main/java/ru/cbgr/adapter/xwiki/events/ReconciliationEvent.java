@@ -0,0 +1,34 @@
+package ru.cbgr.adapter.xwiki.events;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import ru.cbgr.adapter.xwiki.service.LeaderElectionService;
+import ru.cbgr.adapter.xwiki.service.ReconciliationService;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Сверка индекса с XWiki по расписанию xwiki.reconcile.cron (по умолчанию ночью).
+ * При нескольких экземплярах сверку выполняет один из них.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "xwiki.reconcile", name = "enabled", havingValue = "true")
+public class ReconciliationEvent {
+
+    private final ReconciliationService reconciliationService;
+    private final LeaderElectionService leaderElectionService;
+
+    @Scheduled(cron = "${xwiki.reconcile.cron:0 0 3 * * *}")
+    public void reconcile() {
+        if (!leaderElectionService.tryAcquire(LeaderElectionService.RECONCILER)) {
+            log.debug("Сверку выполняет другой экземпляр");
+            return;
+        }
+        reconciliationService.submit();
+    }
+}
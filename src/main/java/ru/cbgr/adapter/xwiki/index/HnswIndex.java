@@ -0,0 +1,434 @@
+package ru.cbgr.adapter.xwiki.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Приближённый поиск ближайших соседей (HNSW) по косинусной близости.
+ * Векторы хранятся нормализованными в float[], близость – скалярное произведение.
+ * Обновление ключа помечает прежний узел удалённым и добавляет новый: удалённые узлы
+ * участвуют в навигации по графу, но не попадают в результаты.
+ * Поиск выполняется параллельно под блокировкой чтения, изменения – под блокировкой записи.
+ * Все векторы индекса одной размерности – её задаёт первый добавленный вектор.
+ */
+public class HnswIndex {
+
+    private final int maxConnections;
+    private final int maxConnectionsLevel0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<Node> nodes = new ArrayList<>();
+    private final Map<String, Integer> nodeByKey = new HashMap<>();
+    private int dimension = -1;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int deletedCount;
+
+    /**
+     * @param maxConnections количество связей узла на верхних уровнях (M), на нулевом – 2M
+     * @param efConstruction ширина поиска соседей при вставке
+     */
+    public HnswIndex(int maxConnections, int efConstruction) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsLevel0 = maxConnections * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(maxConnections);
+    }
+
+    /**
+     * Добавляет вектор или заменяет вектор существующего ключа.
+     *
+     * @throws IllegalArgumentException размерность вектора отличается от размерности индекса
+     */
+    public void put(String key, float[] vector) {
+        float[] normalized = normalize(vector);
+        lock.writeLock().lock();
+        try {
+            if (dimension < 0) {
+                dimension = vector.length;
+            }
+            checkDimension(vector);
+            markDeleted(key);
+            insert(key, normalized);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String key) {
+        lock.writeLock().lock();
+        try {
+            markDeleted(key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param k количество результатов
+     * @param ef ширина поиска на нулевом уровне, не меньше k; больше – точнее и медленнее
+     * @return до k ближайших ключей, от самого близкого
+     */
+    public List<Hit> search(float[] query, int k, int ef) {
+        float[] normalized = normalize(query);
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return List.of();
+            }
+            checkDimension(query);
+            BitSet visited = new BitSet(nodes.size());
+            int current = entryPoint;
+            for (int level = maxLevel; level > 0; level--) {
+                current = greedyClosest(normalized, current, level);
+            }
+            NodeHeap found = searchLayer(normalized, current, Math.max(ef, k), 0, visited, true);
+            int resultSize = Math.min(k, found.size());
+            Hit[] hits = new Hit[resultSize];
+            while (found.size() > resultSize) {
+                found.poll();
+            }
+            for (int i = resultSize - 1; i >= 0; i--) {
+                float distance = found.peekDistance();
+                hits[i] = new Hit(nodes.get(found.poll()).key, 1 - distance);
+            }
+            return List.of(hits);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return количество живых (не удалённых) векторов
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodes.size() - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int deletedCount() {
+        lock.readLock().lock();
+        try {
+            return deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void markDeleted(String key) {
+        Integer previous = nodeByKey.remove(key);
+        if (previous != null) {
+            nodes.get(previous).deleted = true;
+            deletedCount++;
+        }
+    }
+
+    private void insert(String key, float[] vector) {
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        int id = nodes.size();
+        Node node = new Node(key, vector, level, maxConnections, maxConnectionsLevel0);
+        nodes.add(node);
+        nodeByKey.put(key, id);
+        if (entryPoint < 0) {
+            entryPoint = id;
+            maxLevel = level;
+            return;
+        }
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(vector, current, l);
+        }
+        BitSet visited = new BitSet(nodes.size());
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            visited.clear();
+            NodeHeap candidates = searchLayer(vector, current, efConstruction, l, visited, false);
+            int[] sorted = closest(candidates, candidates.size());
+            int[] neighbours = selectNeighbours(vector, sorted, sorted.length, maxConnections);
+            for (int neighbour : neighbours) {
+                connect(id, neighbour, l);
+                connect(neighbour, id, l);
+            }
+            if (sorted.length > 0) {
+                current = sorted[0];
+            }
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = id;
+        }
+    }
+
+    /**
+     * Добавляет связь from → to; при переполнении списка связей он пересобирается эвристикой выбора соседей.
+     */
+    private void connect(int from, int to, int level) {
+        Node node = nodes.get(from);
+        int[] links = node.links[level];
+        int count = node.linkCounts[level];
+        if (count < links.length) {
+            links[count] = to;
+            node.linkCounts[level] = count + 1;
+            return;
+        }
+        NodeHeap heap = new NodeHeap(count + 1, true);
+        for (int i = 0; i < count; i++) {
+            heap.add(links[i], distance(node.vector, nodes.get(links[i]).vector));
+        }
+        heap.add(to, distance(node.vector, nodes.get(to).vector));
+        int[] sorted = closest(heap, heap.size());
+        int[] selected = selectNeighbours(node.vector, sorted, sorted.length, links.length);
+        System.arraycopy(selected, 0, links, 0, selected.length);
+        node.linkCounts[level] = selected.length;
+    }
+
+    /**
+     * Эвристика выбора соседей HNSW: кандидат берётся, только если он ближе к базовому вектору,
+     * чем к любому уже выбранному соседу. Так связи ведут в разные стороны, а не в один плотный кластер.
+     *
+     * @param sorted кандидаты от самого близкого к base
+     */
+    private int[] selectNeighbours(float[] base, int[] sorted, int count, int limit) {
+        int[] selected = new int[Math.min(limit, count)];
+        int size = 0;
+        for (int i = 0; i < count && size < selected.length; i++) {
+            float[] candidate = nodes.get(sorted[i]).vector;
+            float candidateDistance = distance(base, candidate);
+            boolean good = true;
+            for (int j = 0; j < size; j++) {
+                if (distance(candidate, nodes.get(selected[j]).vector) < candidateDistance) {
+                    good = false;
+                    break;
+                }
+            }
+            if (good) {
+                selected[size++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(selected, size);
+    }
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float currentDistance = distance(query, nodes.get(current).vector);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Node node = nodes.get(current);
+            int[] links = node.links[level];
+            for (int i = 0; i < node.linkCounts[level]; i++) {
+                float d = distance(query, nodes.get(links[i]).vector);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = links[i];
+                    changed = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Поиск на одном уровне графа.
+     *
+     * @param skipDeleted не включать удалённые узлы в результат (но проходить через них)
+     * @return max-куча не более ef ближайших узлов
+     */
+    private NodeHeap searchLayer(float[] query, int start, int ef, int level, BitSet visited, boolean skipDeleted) {
+        NodeHeap candidates = new NodeHeap(ef * 2, false);
+        NodeHeap results = new NodeHeap(ef + 1, true);
+        float startDistance = distance(query, nodes.get(start).vector);
+        candidates.add(start, startDistance);
+        if (!skipDeleted || !nodes.get(start).deleted) {
+            results.add(start, startDistance);
+        }
+        visited.set(start);
+        while (candidates.size() > 0) {
+            float candidateDistance = candidates.peekDistance();
+            if (results.size() >= ef && candidateDistance > results.peekDistance()) {
+                break;
+            }
+            Node node = nodes.get(candidates.poll());
+            if (level >= node.links.length) {
+                continue;
+            }
+            int[] links = node.links[level];
+            for (int i = 0; i < node.linkCounts[level]; i++) {
+                int neighbour = links[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float d = distance(query, nodes.get(neighbour).vector);
+                if (results.size() < ef || d < results.peekDistance()) {
+                    candidates.add(neighbour, d);
+                    if (!skipDeleted || !nodes.get(neighbour).deleted) {
+                        results.add(neighbour, d);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Извлекает из max-кучи limit ближайших узлов, от самого близкого.
+     */
+    private static int[] closest(NodeHeap heap, int limit) {
+        while (heap.size() > limit) {
+            heap.poll();
+        }
+        int[] result = new int[heap.size()];
+        for (int i = result.length - 1; i >= 0; i--) {
+            result[i] = heap.poll();
+        }
+        return result;
+    }
+
+    private void checkDimension(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException(
+                    "Размерность вектора " + vector.length + " не совпадает с размерностью индекса " + dimension);
+        }
+    }
+
+    private static float distance(float[] a, float[] b) {
+        float dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return 1 - dot;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] result = new float[vector.length];
+        if (norm == 0) {
+            return result;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = (float) (vector[i] / norm);
+        }
+        return result;
+    }
+
+    /**
+     * Результат поиска
+     *
+     * @param key ключ вектора
+     * @param score косинусная близость к запросу
+     */
+    public record Hit(String key, float score) {
+    }
+
+    private static final class Node {
+        final String key;
+        final float[] vector;
+        final int[][] links;
+        final int[] linkCounts;
+        boolean deleted;
+
+        Node(String key, float[] vector, int level, int maxConnections, int maxConnectionsLevel0) {
+            this.key = key;
+            this.vector = vector;
+            this.links = new int[level + 1][];
+            this.linkCounts = new int[level + 1];
+            for (int l = 0; l <= level; l++) {
+                links[l] = new int[l == 0 ? maxConnectionsLevel0 : maxConnections];
+            }
+        }
+    }
+
+    /**
+     * Двоичная куча пар (узел, расстояние) на примитивных массивах
+     */
+    private static final class NodeHeap {
+        private final boolean max;
+        private int[] ids;
+        private float[] distances;
+        private int size;
+
+        NodeHeap(int capacity, boolean max) {
+            this.max = max;
+            this.ids = new int[Math.max(capacity, 4)];
+            this.distances = new float[ids.length];
+        }
+
+        int size() {
+            return size;
+        }
+
+        float peekDistance() {
+            return distances[0];
+        }
+
+        void add(int id, float distance) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(distance, distances[parent])) {
+                    break;
+                }
+                ids[i] = ids[parent];
+                distances[i] = distances[parent];
+                i = parent;
+            }
+            ids[i] = id;
+            distances[i] = distance;
+        }
+
+        int poll() {
+            int top = ids[0];
+            size--;
+            int lastId = ids[size];
+            float lastDistance = distances[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && before(distances[child + 1], distances[child])) {
+                    child++;
+                }
+                if (!before(distances[child], lastDistance)) {
+                    break;
+                }
+                ids[i] = ids[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            ids[i] = lastId;
+            distances[i] = lastDistance;
+            return top;
+        }
+
+        private boolean before(float a, float b) {
+            return max ? a > b : a < b;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ru.cbgr.adapter.xwiki.repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Контрольные точки полного обхода: какие пространства и страницы уже обработаны.
+ * Пока обход не завершён, контрольная точка хранится, и следующий обход продолжает с неё.
+ */
+@Repository
+@RequiredArgsConstructor
+public class CrawlCheckpointRepository {
+
+    public static final char SPACE = 'S';
+    public static final char PAGE = 'P';
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @return идентификатор последнего незавершённого обхода
+     */
+    public Optional<String> findUnfinished() {
+        return jdbcTemplate.query("SELECT job_id FROM crawl_checkpoint ORDER BY updated_at DESC LIMIT 1",
+                (rs, rowNum) -> rs.getString(1)).stream().findFirst();
+    }
+
+    public void create(String jobId) {
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.update("INSERT INTO crawl_checkpoint (job_id, started_at, updated_at) VALUES (?, ?, ?)",
+                jobId, now, now);
+    }
+
+    /**
+     * @param kind {@link #SPACE} или {@link #PAGE}
+     */
+    public Set<String> findCompleted(String jobId, char kind) {
+        Set<String> result = new HashSet<>();
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(
+                    "SELECT item_id FROM crawl_checkpoint_item WHERE job_id = ? AND kind = ?");
+            statement.setString(1, jobId);
+            statement.setString(2, String.valueOf(kind));
+            statement.setFetchSize(10000);
+            return statement;
+        }, rs -> {
+            result.add(rs.getString(1));
+        });
+        return result;
+    }
+
+    /**
+     * Записывает обработанные пространства и страницы одним пакетом.
+     */
+    @Transactional
+    public void saveCompleted(String jobId, List<String> spaceIds, List<String> pageIds) {
+        List<Object[]> rows = new ArrayList<>(spaceIds.size() + pageIds.size());
+        for (String spaceId : spaceIds) {
+            rows.add(new Object[]{jobId, String.valueOf(SPACE), spaceId});
+        }
+        for (String pageId : pageIds) {
+            rows.add(new Object[]{jobId, String.valueOf(PAGE), pageId});
+        }
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO crawl_checkpoint_item (job_id, kind, item_id) VALUES (?, ?, ?)
+                ON CONFLICT DO NOTHING
+                """, rows);
+        jdbcTemplate.update("UPDATE crawl_checkpoint SET updated_at = ? WHERE job_id = ?",
+                Timestamp.from(Instant.now()), jobId);
+    }
+
+    /**
+     * Удаляет контрольную точку завершённого обхода вместе с её записями.
+     */
+    public void delete(String jobId) {
+        jdbcTemplate.update("DELETE FROM crawl_checkpoint WHERE job_id = ?", jobId);
+    }
+}
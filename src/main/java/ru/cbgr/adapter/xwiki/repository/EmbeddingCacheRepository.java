@@ -0,0 +1,67 @@
+package ru.cbgr.adapter.xwiki.repository;
+
+import java.sql.Array;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import ru.cbgr.adapter.xwiki.util.Vectors;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Постоянный уровень кеша embedding`ов: векторы по модели и хешу нормализованного текста
+ */
+@Repository
+@RequiredArgsConstructor
+public class EmbeddingCacheRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @return хеш текста → вектор для найденных записей
+     */
+    public Map<String, float[]> findAll(String model, Collection<String> textHashes) {
+        Map<String, float[]> result = new HashMap<>();
+        if (textHashes.isEmpty()) {
+            return result;
+        }
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(
+                    "SELECT text_hash, embedding::text FROM embedding_cache WHERE model = ? AND text_hash = ANY(?)");
+            statement.setString(1, model);
+            Array array = connection.createArrayOf("text", textHashes.toArray());
+            statement.setArray(2, array);
+            return statement;
+        }, rs -> {
+            result.put(rs.getString(1), Vectors.fromPgVector(rs.getString(2)));
+        });
+        return result;
+    }
+
+    /**
+     * Сохраняет векторы одним batch insert; уже сохранённые записи не перезаписываются
+     */
+    public void saveAll(String model, Map<String, float[]> embeddings) {
+        if (embeddings.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO embedding_cache (model, text_hash, embedding, created_at)
+                VALUES (?, ?, ?::vector, ?)
+                ON CONFLICT (model, text_hash) DO NOTHING
+                """, new ArrayList<>(embeddings.entrySet()), embeddings.size(), (ps, entry) -> {
+            ps.setString(1, model);
+            ps.setString(2, entry.getKey());
+            ps.setString(3, Vectors.toPgVector(entry.getValue()));
+            ps.setTimestamp(4, now);
+        });
+    }
+}
@@ -0,0 +1,35 @@
+package ru.cbgr.adapter.xwiki.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Аренда ролей, которые в каждый момент выполняет один экземпляр
+ */
+@Repository
+@RequiredArgsConstructor
+public class LeaderLeaseRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Занимает или продлевает роль одним upsert: роль переходит к owner, если она свободна,
+     * уже принадлежит ему или аренда прежнего владельца истекла.
+     *
+     * @return true, если owner – владелец роли
+     */
+    public boolean tryAcquire(String name, String owner, long leaseMs) {
+        return jdbcTemplate.update("""
+                INSERT INTO leader_lease (name, owner, lease_until)
+                VALUES (?, ?, now() + ? * INTERVAL '1 millisecond')
+                ON CONFLICT (name) DO UPDATE SET owner = EXCLUDED.owner, lease_until = EXCLUDED.lease_until
+                WHERE leader_lease.owner = EXCLUDED.owner OR leader_lease.lease_until < now()
+                """, name, owner, leaseMs) == 1;
+    }
+
+    public void release(String name, String owner) {
+        jdbcTemplate.update("DELETE FROM leader_lease WHERE name = ? AND owner = ?", name, owner);
+    }
+}
@@ -0,0 +1,10 @@
+package ru.cbgr.adapter.xwiki.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import ru.cbgr.adapter.xwiki.entity.ModificationCursor;
+
+@Repository
+public interface ModificationCursorRepository extends JpaRepository<ModificationCursor, String> {
+}
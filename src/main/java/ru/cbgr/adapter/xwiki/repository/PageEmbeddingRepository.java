@@ -0,0 +1,181 @@
+package ru.cbgr.adapter.xwiki.repository;
+
+import java.sql.Array;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import ru.cbgr.adapter.xwiki.dto.embedding.PageChunkEmbedding;
+import ru.cbgr.adapter.xwiki.dto.embedding.StoredChunk;
+import ru.cbgr.adapter.xwiki.util.Vectors;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Хранилище embedding`ов фрагментов страниц в PostgreSQL (pgvector).
+ * Запись идёт пакетами JDBC: все фрагменты страницы – одним batch upsert.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PageEmbeddingRepository {
+
+    private static final String UPSERT_SQL = """
+            INSERT INTO page_embedding (page_id, chunk_index, version, page_url, content_hash, content, embedding, model, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?::vector, ?, ?)
+            ON CONFLICT (page_id, chunk_index) DO UPDATE SET
+                version = EXCLUDED.version,
+                page_url = EXCLUDED.page_url,
+                content_hash = EXCLUDED.content_hash,
+                content = EXCLUDED.content,
+                embedding = EXCLUDED.embedding,
+                model = EXCLUDED.model,
+                updated_at = EXCLUDED.updated_at
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Фрагменты, записанные до учёта модели (model IS NULL), хеша не имеют: в индекс поиска они не попадают,
+     * поэтому страница должна переиндексироваться.
+     *
+     * @return хеш содержимого, по которому строились сохранённые embedding`и страницы
+     */
+    public Optional<String> findContentHash(String pageId) {
+        return jdbcTemplate.query(
+                "SELECT content_hash FROM page_embedding WHERE page_id = ? AND chunk_index = 0 AND model IS NOT NULL",
+                (rs, rowNum) -> rs.getString(1), pageId).stream().findFirst();
+    }
+
+    /**
+     * Получает хеши содержимого сразу для набора страниц одним запросом.
+     *
+     * @return pageId → хеш для страниц, по которым есть сохранённые embedding`и
+     */
+    public Map<String, String> findContentHashes(Collection<String> pageIds) {
+        Map<String, String> result = new HashMap<>();
+        if (pageIds.isEmpty()) {
+            return result;
+        }
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(
+                    "SELECT page_id, content_hash FROM page_embedding WHERE chunk_index = 0 AND model IS NOT NULL AND page_id = ANY(?)");
+            Array array = connection.createArrayOf("text", pageIds.toArray());
+            statement.setArray(1, array);
+            return statement;
+        }, rs -> {
+            result.put(rs.getString(1), rs.getString(2));
+        });
+        return result;
+    }
+
+    /**
+     * Версии всех проиндексированных страниц вики.
+     * Префикс "wiki:" ищется побайтовым диапазоном [wiki:, wiki;) по индексу page_embedding_wiki_versions,
+     * без чтения строк таблицы.
+     *
+     * @return pageId → версия, по которой строились embedding`и
+     */
+    @Transactional(readOnly = true)
+    public Map<String, String> findVersions(String wiki) {
+        Map<String, String> result = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(
+                    "SELECT page_id, version FROM page_embedding "
+                            + "WHERE chunk_index = 0 AND page_id ~>=~ ? AND page_id ~<~ ?");
+            statement.setString(1, wiki + ":");
+            statement.setString(2, wiki + ";");
+            statement.setFetchSize(10000);
+            return statement;
+        }, rs -> {
+            result.put(rs.getString(1), rs.getString(2));
+        });
+        return result;
+    }
+
+    /**
+     * Заменяет фрагменты страницы: новые записываются одним batch upsert,
+     * лишние фрагменты от прежней, более длинной версии удаляются.
+     *
+     * @param model модель, которой построены embedding`и фрагментов
+     */
+    @Transactional
+    public void replacePage(String pageId, String version, String pageUrl, String contentHash, String model,
+                            List<PageChunkEmbedding> chunks) {
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate(UPSERT_SQL, chunks, chunks.size(), (ps, chunk) -> {
+            ps.setString(1, pageId);
+            ps.setInt(2, chunk.chunkIndex());
+            ps.setString(3, version);
+            ps.setString(4, pageUrl);
+            ps.setString(5, contentHash);
+            ps.setString(6, chunk.content());
+            ps.setString(7, Vectors.toPgVector(chunk.embedding()));
+            ps.setString(8, model);
+            ps.setTimestamp(9, now);
+        });
+        jdbcTemplate.update("DELETE FROM page_embedding WHERE page_id = ? AND chunk_index >= ?", pageId, chunks.size());
+    }
+
+    /**
+     * Построчно отдаёт векторы фрагментов, построенные моделью model, не загружая таблицу в память целиком.
+     * Текст фрагментов не читается.
+     */
+    @Transactional(readOnly = true)
+    public void forEachEmbedding(String model, Consumer<StoredChunk> consumer) {
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(
+                    "SELECT page_id, chunk_index, page_url, embedding::text FROM page_embedding WHERE model = ?");
+            statement.setString(1, model);
+            statement.setFetchSize(1000);
+            return statement;
+        }, rs -> {
+            consumer.accept(new StoredChunk(rs.getString(1), rs.getInt(2), rs.getString(3), null,
+                    Vectors.fromPgVector(rs.getString(4))));
+        });
+    }
+
+    /**
+     * @return количество фрагментов, построенных не моделью model (в том числе до учёта модели);
+     * их заменит следующий полный обход
+     */
+    public long countOtherModels(String model) {
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM page_embedding WHERE model IS DISTINCT FROM ?", Long.class, model);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Загружает текст и адрес страницы для набора фрагментов одним запросом.
+     *
+     * @return найденные фрагменты без векторов, в произвольном порядке
+     */
+    public List<StoredChunk> findChunks(List<String> pageIds, List<Integer> chunkIndexes) {
+        if (pageIds.isEmpty()) {
+            return List.of();
+        }
+        return jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement("""
+                    SELECT pe.page_id, pe.chunk_index, pe.page_url, pe.content
+                    FROM page_embedding pe
+                    JOIN unnest(?::text[], ?::int[]) AS k(page_id, chunk_index)
+                      ON pe.page_id = k.page_id AND pe.chunk_index = k.chunk_index
+                    """);
+            statement.setArray(1, connection.createArrayOf("text", pageIds.toArray()));
+            statement.setArray(2, connection.createArrayOf("int4", chunkIndexes.toArray()));
+            return statement;
+        }, (rs, rowNum) -> new StoredChunk(rs.getString(1), rs.getInt(2), rs.getString(3), rs.getString(4), null));
+    }
+
+    public void deletePage(String pageId) {
+        jdbcTemplate.update("DELETE FROM page_embedding WHERE page_id = ?", pageId);
+    }
+}
@@ -0,0 +1,47 @@
+package ru.cbgr.adapter.xwiki.repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Отпечатки пространств, с которыми сверяется текущее состояние XWiki
+ */
+@Repository
+@RequiredArgsConstructor
+public class SpaceFingerprintRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @return spaceId → отпечаток для всех сверенных пространств вики
+     */
+    public Map<String, String> findAll(String wiki) {
+        Map<String, String> result = new HashMap<>();
+        jdbcTemplate.query("SELECT space_id, fingerprint FROM space_fingerprint WHERE wiki = ?", rs -> {
+            result.put(rs.getString(1), rs.getString(2));
+        }, wiki);
+        return result;
+    }
+
+    public void save(String wiki, String spaceId, String fingerprint, int pageCount) {
+        jdbcTemplate.update("""
+                INSERT INTO space_fingerprint (wiki, space_id, fingerprint, page_count, updated_at)
+                VALUES (?, ?, ?, ?, ?)
+                ON CONFLICT (wiki, space_id) DO UPDATE SET
+                    fingerprint = EXCLUDED.fingerprint,
+                    page_count = EXCLUDED.page_count,
+                    updated_at = EXCLUDED.updated_at
+                """, wiki, spaceId, fingerprint, pageCount, Timestamp.from(Instant.now()));
+    }
+
+    public void delete(String wiki, String spaceId) {
+        jdbcTemplate.update("DELETE FROM space_fingerprint WHERE wiki = ? AND space_id = ?", wiki, spaceId);
+    }
+}
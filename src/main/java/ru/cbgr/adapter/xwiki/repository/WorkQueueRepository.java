@@ -0,0 +1,167 @@
+package ru.cbgr.adapter.xwiki.repository;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import ru.cbgr.adapter.xwiki.dto.job.CrawlQueueStats;
+import ru.cbgr.adapter.xwiki.dto.job.WorkItem;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Общая очередь распределённого обхода в PostgreSQL.
+ * Экземпляры забирают элементы в аренду через FOR UPDATE SKIP LOCKED: один элемент достаётся
+ * одному экземпляру, и экземпляры не ждут блокировок друг друга. Аренда продлевается,
+ * пока элемент в работе; элемент с истёкшей арендой (экземпляр упал) снова доступен остальным.
+ * Отмена обхода сохраняется в crawl_cancelled: элементы отменённого обхода не выдаются в работу
+ * и не добавляются, даже если их ставит в очередь экземпляр, который ещё разворачивает пространство.
+ */
+@Repository
+@RequiredArgsConstructor
+public class WorkQueueRepository {
+
+    private static final String CLAIM_SQL = """
+            UPDATE crawl_work_item
+            SET state = 'L', lease_owner = ?, lease_until = now() + ? * INTERVAL '1 millisecond', attempts = attempts + 1
+            WHERE id IN (
+                SELECT id FROM crawl_work_item
+                WHERE (state = 'Q' OR (state = 'L' AND lease_until < now()))
+                  AND NOT EXISTS (SELECT 1 FROM crawl_cancelled c WHERE c.crawl_id = crawl_work_item.crawl_id)
+                ORDER BY id
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED)
+            RETURNING id, crawl_id, kind, item_key, url, version
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Ставит элементы в очередь одним batch insert; уже поставленные в рамках обхода
+     * и элементы отменённого обхода пропускаются
+     */
+    public void enqueue(List<WorkItem> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO crawl_work_item (crawl_id, kind, item_key, url, version)
+                SELECT ?, ?, ?, ?, ?
+                WHERE NOT EXISTS (SELECT 1 FROM crawl_cancelled WHERE crawl_id = ?)
+                ON CONFLICT (crawl_id, kind, item_key) DO NOTHING
+                """, items, items.size(), (ps, item) -> {
+            ps.setString(1, item.crawlId());
+            ps.setString(2, String.valueOf(item.kind()));
+            ps.setString(3, item.key());
+            ps.setString(4, item.url());
+            ps.setString(5, item.version());
+            ps.setString(6, item.crawlId());
+        });
+    }
+
+    /**
+     * Забирает в аренду до limit элементов. Элементы, у которых истекла аренда и исчерпаны попытки,
+     * перед этим помечаются ошибочными.
+     */
+    public List<WorkItem> claim(String owner, int limit, long leaseMs, int maxAttempts) {
+        jdbcTemplate.update("""
+                UPDATE crawl_work_item SET state = 'F', lease_owner = NULL, lease_until = NULL
+                WHERE state = 'L' AND lease_until < now() AND attempts >= ?
+                """, maxAttempts);
+        return jdbcTemplate.query(CLAIM_SQL, (rs, rowNum) -> new WorkItem(rs.getLong(1), rs.getString(2),
+                rs.getString(3).charAt(0), rs.getString(4), rs.getString(5), rs.getString(6)),
+                owner, leaseMs, limit);
+    }
+
+    /**
+     * Продлевает аренду всех элементов экземпляра
+     */
+    public int extendLeases(String owner, long leaseMs) {
+        return jdbcTemplate.update("""
+                UPDATE crawl_work_item SET lease_until = now() + ? * INTERVAL '1 millisecond'
+                WHERE state = 'L' AND lease_owner = ?
+                """, leaseMs, owner);
+    }
+
+    public void complete(long id) {
+        jdbcTemplate.update(
+                "UPDATE crawl_work_item SET state = 'D', lease_owner = NULL, lease_until = NULL WHERE id = ?", id);
+    }
+
+    /**
+     * Возвращает элемент в очередь или, если попытки исчерпаны, помечает ошибочным
+     */
+    public void fail(long id, int maxAttempts) {
+        jdbcTemplate.update("""
+                UPDATE crawl_work_item
+                SET state = CASE WHEN attempts >= ? THEN 'F' ELSE 'Q' END, lease_owner = NULL, lease_until = NULL
+                WHERE id = ?
+                """, maxAttempts, id);
+    }
+
+    /**
+     * Убирает элемент, не обработав его, – например, если его обход отменён после выдачи в работу
+     */
+    public void remove(long id) {
+        jdbcTemplate.update("DELETE FROM crawl_work_item WHERE id = ?", id);
+    }
+
+    /**
+     * @return неотменённый обход, у которого остались элементы в очереди или в работе
+     */
+    public Optional<String> findActiveCrawl() {
+        return jdbcTemplate.query("""
+                        SELECT crawl_id FROM crawl_work_item i
+                        WHERE state IN ('Q', 'L')
+                          AND NOT EXISTS (SELECT 1 FROM crawl_cancelled c WHERE c.crawl_id = i.crawl_id)
+                        ORDER BY id LIMIT 1
+                        """,
+                (rs, rowNum) -> rs.getString(1)).stream().findFirst();
+    }
+
+    public CrawlQueueStats stats(String crawlId) {
+        long[] counts = new long[6];
+        jdbcTemplate.query("SELECT kind, state, count(*) FROM crawl_work_item WHERE crawl_id = ? GROUP BY kind, state",
+                rs -> {
+                    char kind = rs.getString(1).charAt(0);
+                    char state = rs.getString(2).charAt(0);
+                    long count = rs.getLong(3);
+                    if (state == 'Q' || state == 'L') {
+                        counts[5] += count;
+                    }
+                    if (kind == WorkItem.SPACE) {
+                        counts[0] += count;
+                        counts[1] += state == 'D' || state == 'F' ? count : 0;
+                    } else if (kind == WorkItem.PAGE) {
+                        counts[2] += count;
+                        counts[3] += state == 'D' ? count : 0;
+                        counts[4] += state == 'F' ? count : 0;
+                    }
+                }, crawlId);
+        return new CrawlQueueStats((int) counts[0], (int) counts[1], counts[2], counts[3], counts[4], counts[5]);
+    }
+
+    /**
+     * Отмечает обход отменённым и убирает из очереди его элементы, которые ещё не взяты в работу.
+     * Повторный вызов убирает элементы, добавленные в очередь до того, как отметка стала видна.
+     *
+     * @return количество убранных элементов
+     */
+    public int cancel(String crawlId) {
+        jdbcTemplate.update("INSERT INTO crawl_cancelled (crawl_id, cancelled_at) VALUES (?, now()) ON CONFLICT DO NOTHING",
+                crawlId);
+        return jdbcTemplate.update("DELETE FROM crawl_work_item WHERE crawl_id = ? AND state = 'Q'", crawlId);
+    }
+
+    public boolean isCancelled(String crawlId) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM crawl_cancelled WHERE crawl_id = ?)", Boolean.class, crawlId));
+    }
+
+    public void delete(String crawlId) {
+        jdbcTemplate.update("DELETE FROM crawl_work_item WHERE crawl_id = ?", crawlId);
+        jdbcTemplate.update("DELETE FROM crawl_cancelled WHERE crawl_id = ?", crawlId);
+    }
+}
@@ -0,0 +1,78 @@
+package ru.cbgr.adapter.xwiki.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Предохранитель: после failureThreshold ошибок подряд запросы отклоняются сразу
+ * ({@link CircuitOpenException}) в течение openNanos. Затем пропускается один пробный запрос:
+ * успех замыкает цепь, ошибка снова размыкает её.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(String name, int failureThreshold, long openMs) {
+        this.name = name;
+        this.failureThreshold = Math.max(failureThreshold, 1);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+    }
+
+    /**
+     * Разрешает запрос или отклоняет его, если цепь разомкнута.
+     *
+     * @throws CircuitOpenException цепь разомкнута или пробный запрос уже выполняется
+     */
+    public synchronized void acquire() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                throw new CircuitOpenException(name);
+            }
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                throw new CircuitOpenException(name);
+            }
+            trialInFlight = true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    /**
+     * Освобождает разрешение без исхода: запрос отменён или завершился ошибкой, которая не говорит
+     * о состоянии сервиса. Счётчик ошибок и состояние цепи не меняются, в полуоткрытом состоянии
+     * следующий запрос снова станет пробным.
+     */
+    public synchronized void release() {
+        trialInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            trialInFlight = false;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,11 @@
+package ru.cbgr.adapter.xwiki.resilience;
+
+/**
+ * Запрос отклонён без обращения к сервису: предохранитель разомкнут
+ */
+public class CircuitOpenException extends RuntimeException {
+
+    public CircuitOpenException(String backend) {
+        super("Сервис " + backend + " недоступен, запросы временно не выполняются");
+    }
+}
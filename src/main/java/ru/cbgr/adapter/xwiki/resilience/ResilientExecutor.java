@@ -0,0 +1,201 @@
+package ru.cbgr.adapter.xwiki.resilience;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import ru.cbgr.adapter.xwiki.configuration.ResilienceProperties;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Выполнение запросов к внешнему сервису с защитой от перегрузки и сбоев:
+ * предохранитель → ограничение частоты → адаптивное ограничение одновременных запросов → запрос,
+ * при временной ошибке – повтор со случайной экспоненциальной задержкой.
+ * Повторяются и считаются сбоем сервиса только сетевые ошибки, ответы 5xx и 429;
+ * остальные ошибки состояние предохранителя не меняют.
+ */
+@Slf4j
+public class ResilientExecutor {
+
+    /**
+     * Ошибка HTTP из Spring AI OllamaApi: RuntimeException с сообщением "[500] Internal Server Error - ..."
+     */
+    private static final Pattern OLLAMA_ERROR = Pattern.compile("^\\[(\\d{3})] ");
+
+    private final String name;
+    private final ResilienceProperties.Backend properties;
+    private final TokenBucket rateLimiter;
+    private final AimdConcurrencyLimiter concurrencyLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final Counter retries;
+    private final Counter rejected;
+
+    public ResilientExecutor(String name, ResilienceProperties.Backend properties, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.properties = properties;
+        this.rateLimiter = new TokenBucket(properties.getRatePerSecond(), properties.getBurst());
+        this.concurrencyLimiter = new AimdConcurrencyLimiter(properties.getMaxConcurrency(),
+                properties.getMinConcurrency(), properties.getMaxConcurrency(),
+                TimeUnit.MILLISECONDS.toNanos(properties.getLatencyThresholdMs()), 0.7);
+        this.circuitBreaker = new CircuitBreaker(name, properties.getFailureThreshold(), properties.getOpenMs());
+        Gauge.builder("resilience.concurrency.limit", concurrencyLimiter, AimdConcurrencyLimiter::getLimit)
+                .description("Текущий адаптивный предел одновременных запросов")
+                .tag("backend", name)
+                .register(meterRegistry);
+        Gauge.builder("resilience.concurrency.in.flight", concurrencyLimiter, AimdConcurrencyLimiter::getInFlight)
+                .description("Запросы, выполняемые сейчас")
+                .tag("backend", name)
+                .register(meterRegistry);
+        Gauge.builder("resilience.circuit.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .description("Состояние предохранителя: 0 – замкнут, 1 – пробный запрос, 2 – разомкнут")
+                .tag("backend", name)
+                .register(meterRegistry);
+        this.retries = Counter.builder("resilience.retries").tag("backend", name).register(meterRegistry);
+        this.rejected = Counter.builder("resilience.circuit.rejected").tag("backend", name).register(meterRegistry);
+    }
+
+    /**
+     * Выполняет идемпотентный запрос; временные ошибки повторяются.
+     */
+    public <T> T call(Supplier<T> call) {
+        return call(call, () -> true);
+    }
+
+    /**
+     * @param retryable можно ли повторить запрос после ошибки; например, false, если часть потокового
+     *                  ответа уже передана потребителю
+     */
+    public <T> T call(Supplier<T> call, BooleanSupplier retryable) {
+        for (int attempt = 1; ; attempt++) {
+            acquireCircuit();
+            rateLimiter.acquire();
+            concurrencyLimiter.acquire();
+            long startedAt = System.nanoTime();
+            boolean failed = false;
+            try {
+                T result = call.get();
+                circuitBreaker.onSuccess();
+                return result;
+            } catch (RuntimeException e) {
+                if (!isTransient(e)) {
+                    circuitBreaker.release();
+                    throw e;
+                }
+                failed = true;
+                circuitBreaker.onFailure();
+                if (attempt >= properties.getMaxAttempts() || !retryable.getAsBoolean()) {
+                    throw e;
+                }
+                log.debug("Ошибка запроса к {} (попытка {}): {}", name, attempt, e.toString());
+            } finally {
+                concurrencyLimiter.release(System.nanoTime() - startedAt, failed);
+            }
+            retries.increment();
+            sleep(backoffMs(attempt));
+        }
+    }
+
+    /**
+     * Пропускает запрос без повторов и ограничений – для потоковых ответов, исход которых
+     * сообщается позже через {@link #onSuccess()} / {@link #onFailure(Throwable)}.
+     *
+     * @throws CircuitOpenException предохранитель разомкнут
+     */
+    public void acquireCircuit() {
+        try {
+            circuitBreaker.acquire();
+        } catch (CircuitOpenException e) {
+            rejected.increment();
+            throw e;
+        }
+    }
+
+    public void onSuccess() {
+        circuitBreaker.onSuccess();
+    }
+
+    public void onFailure(Throwable error) {
+        if (isTransient(error)) {
+            circuitBreaker.onFailure();
+        } else {
+            circuitBreaker.release();
+        }
+    }
+
+    /**
+     * Потоковый запрос отменён потребителем: исход неизвестен, разрешение освобождается без учёта
+     */
+    public void onCancel() {
+        circuitBreaker.release();
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    /**
+     * Полный случайный разброс: от 0 до min(max, base * 2^(attempt-1))
+     */
+    private long backoffMs(int attempt) {
+        long ceiling = Math.min(properties.getRetryMaxDelayMs(),
+                properties.getRetryBaseDelayMs() << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * Временными считаются только сетевые ошибки, ответы 5xx и 429, в том числе переданные OllamaApi
+     * в тексте RuntimeException. Остальное (ошибки разбора ответа, неверные аргументы,
+     * отсутствующая модель Ollama) повтором не исправить.
+     */
+    private static boolean isTransient(Throwable error) {
+        if (error instanceof ResourceAccessException) {
+            return true;
+        }
+        if (error instanceof RestClientResponseException e) {
+            return isTransient(e.getStatusCode());
+        }
+        if (error instanceof WebClientResponseException e) {
+            return isTransient(e.getStatusCode());
+        }
+        if (error.getClass() == RuntimeException.class && error.getMessage() != null) {
+            Matcher matcher = OLLAMA_ERROR.matcher(error.getMessage());
+            if (matcher.find()) {
+                return isTransient(HttpStatusCode.valueOf(Integer.parseInt(matcher.group(1))));
+            }
+        }
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isTransient(HttpStatusCode status) {
+        return status.is5xxServerError() || status.value() == HttpStatus.TOO_MANY_REQUESTS.value();
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание повтора прервано", e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package ru.cbgr.adapter.xwiki.resilience;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ограничение частоты запросов: маркеры пополняются со скоростью rate в секунду, запас – не больше burst.
+ * Маркер резервируется сразу (баланс может уйти в минус), а поток ждёт, пока до него дойдёт очередь,
+ * поэтому ожидающие обслуживаются в порядке обращения.
+ */
+public class TokenBucket {
+
+    private final double ratePerNano;
+    private final double capacity;
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * @param ratePerSecond скорость пополнения; 0 или меньше – без ограничения
+     * @param burst сколько запросов можно выполнить подряд без ожидания
+     */
+    public TokenBucket(double ratePerSecond, int burst) {
+        this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(burst, 1);
+        this.tokens = capacity;
+        this.refilledAt = System.nanoTime();
+    }
+
+    public void acquire() {
+        if (ratePerNano <= 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+            tokens -= 1;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens / ratePerNano);
+        }
+        long deadline = System.nanoTime() + waitNanos;
+        for (long left = waitNanos; left > 0; left = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(left);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package ru.cbgr.adapter.xwiki.service;
+
+/**
+ * Профиль модели чата для запроса
+ */
+public enum ChatProfile {
+    /**
+     * Модель выбирается по длине запроса (ai.models.qualityPromptChars)
+     */
+    AUTO,
+    FAST,
+    QUALITY
+}
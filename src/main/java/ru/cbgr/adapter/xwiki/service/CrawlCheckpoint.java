@@ -0,0 +1,141 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import ru.cbgr.adapter.xwiki.repository.CrawlCheckpointRepository;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Контрольная точка одного полного обхода.
+ * Обработанные пространства и страницы копятся в памяти и записываются в БД пакетом –
+ * каждые everyPages записей или раз в interval, смотря что наступит раньше.
+ * Пространство отмечается только после всех своих страниц, а при записи пространства
+ * забираются из очереди раньше страниц, поэтому сохранённое пространство всегда
+ * сохраняется вместе со своими страницами.
+ */
+@Slf4j
+public class CrawlCheckpoint {
+
+    @Getter
+    private final String jobId;
+    private final CrawlCheckpointRepository repository;
+    private final Set<String> completedSpaces;
+    private final Set<String> completedPages;
+    private final int everyPages;
+    private final long intervalNanos;
+    private final Queue<String> pendingSpaces = new ConcurrentLinkedQueue<>();
+    private final Queue<String> pendingPages = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private volatile long flushedAt = System.nanoTime();
+
+    CrawlCheckpoint(String jobId, CrawlCheckpointRepository repository, Set<String> completedSpaces,
+                    Set<String> completedPages, int everyPages, long intervalMs) {
+        this.jobId = jobId;
+        this.repository = repository;
+        this.completedSpaces = completedSpaces;
+        this.completedPages = completedPages;
+        this.everyPages = everyPages;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+    }
+
+    /**
+     * Контрольная точка, которая ничего не хранит – для обхода вне задач
+     */
+    public static CrawlCheckpoint disabled() {
+        return new CrawlCheckpoint(null, null, Set.of(), Set.of(), 0, 0);
+    }
+
+    public boolean isSpaceDone(String spaceId) {
+        return completedSpaces.contains(spaceId);
+    }
+
+    public boolean isPageDone(String pageId) {
+        return completedPages.contains(pageId);
+    }
+
+    public void spaceDone(String spaceId) {
+        if (repository != null) {
+            pendingSpaces.add(spaceId);
+            afterAdd();
+        }
+    }
+
+    public void pageDone(String pageId) {
+        if (repository != null) {
+            pendingPages.add(pageId);
+            afterAdd();
+        }
+    }
+
+    /**
+     * Записывает накопленное, дожидаясь записи, которая уже идёт в другом потоке
+     */
+    public void flush() {
+        if (repository == null) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            write();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Обход завершён полностью – контрольная точка больше не нужна
+     */
+    public void complete() {
+        if (repository != null) {
+            repository.delete(jobId);
+        }
+    }
+
+    private void afterAdd() {
+        if (pendingCount.incrementAndGet() < everyPages && System.nanoTime() - flushedAt < intervalNanos) {
+            return;
+        }
+        // Если запись уже идёт в другом потоке, новые записи попадут в следующий пакет
+        if (flushLock.tryLock()) {
+            try {
+                write();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    private void write() {
+        List<String> spaces = drain(pendingSpaces);
+        List<String> pages = drain(pendingPages);
+        pendingCount.addAndGet(-(spaces.size() + pages.size()));
+        flushedAt = System.nanoTime();
+        if (spaces.isEmpty() && pages.isEmpty()) {
+            return;
+        }
+        try {
+            repository.saveCompleted(jobId, spaces, pages);
+        } catch (RuntimeException e) {
+            // Контрольная точка не должна останавливать обход: при продолжении эти страницы обработаются заново
+            log.warn("Не удалось записать контрольную точку обхода {}: {}", jobId, e.toString());
+        }
+    }
+
+    private static List<String> drain(Queue<String> queue) {
+        List<String> result = new ArrayList<>();
+        for (String item = queue.poll(); item != null; item = queue.poll()) {
+            result.add(item);
+        }
+        return result;
+    }
+}
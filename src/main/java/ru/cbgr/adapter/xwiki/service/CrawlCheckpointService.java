@@ -0,0 +1,44 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.stereotype.Service;
+
+import ru.cbgr.adapter.xwiki.configuration.CrawlProperties;
+import ru.cbgr.adapter.xwiki.repository.CrawlCheckpointRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Открывает контрольную точку для задачи обхода: продолжает незавершённый обход,
+ * если он есть (процесс упал, был перезапущен или обход отменили), иначе начинает новый.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class CrawlCheckpointService {
+
+    private final CrawlCheckpointRepository crawlCheckpointRepository;
+    private final CrawlProperties crawlProperties;
+
+    public CrawlCheckpoint open(String jobId) {
+        Optional<String> unfinished = crawlCheckpointRepository.findUnfinished();
+        if (unfinished.isEmpty()) {
+            crawlCheckpointRepository.create(jobId);
+            return checkpoint(jobId, Set.of(), Set.of());
+        }
+        String checkpointId = unfinished.get();
+        Set<String> spaces = crawlCheckpointRepository.findCompleted(checkpointId, CrawlCheckpointRepository.SPACE);
+        Set<String> pages = crawlCheckpointRepository.findCompleted(checkpointId, CrawlCheckpointRepository.PAGE);
+        log.info("Продолжаем обход {} с контрольной точки: пространств {}, страниц {}",
+                checkpointId, spaces.size(), pages.size());
+        return checkpoint(checkpointId, spaces, pages);
+    }
+
+    private CrawlCheckpoint checkpoint(String checkpointId, Set<String> spaces, Set<String> pages) {
+        return new CrawlCheckpoint(checkpointId, crawlCheckpointRepository, spaces, pages,
+                crawlProperties.getCheckpointEveryPages(), crawlProperties.getCheckpointIntervalMs());
+    }
+}
@@ -0,0 +1,78 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.time.Instant;
+import java.util.concurrent.Future;
+
+import ru.cbgr.adapter.xwiki.dto.job.CrawlJobState;
+import ru.cbgr.adapter.xwiki.dto.job.CrawlJobStatus;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Задача полного обхода XWiki, выполняемая в фоне
+ */
+@Getter
+@RequiredArgsConstructor
+public class CrawlJob {
+
+    private final String id;
+    private final Instant submittedAt = Instant.now();
+    private final CrawlProgress progress = new CrawlProgress();
+    private volatile CrawlJobState state = CrawlJobState.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+    private volatile Future<?> future;
+
+    void attach(Future<?> future) {
+        this.future = future;
+    }
+
+    void markRunning() {
+        startedAt = Instant.now();
+        state = CrawlJobState.RUNNING;
+    }
+
+    void markFinished(Throwable failure) {
+        finishedAt = Instant.now();
+        if (progress.isCancelled()) {
+            state = CrawlJobState.CANCELLED;
+        } else if (failure != null) {
+            error = failure.toString();
+            state = CrawlJobState.FAILED;
+        } else {
+            state = CrawlJobState.COMPLETED;
+        }
+    }
+
+    /**
+     * Отменяет задачу: ожидающая в очереди задача не запустится,
+     * выполняющаяся прекратит брать новые страницы.
+     */
+    void cancel() {
+        progress.cancel();
+        Future<?> f = future;
+        if (state == CrawlJobState.QUEUED && f != null && f.cancel(false)) {
+            markFinished(null);
+        }
+    }
+
+    public CrawlJobStatus toStatus() {
+        return CrawlJobStatus.builder()
+                .id(id)
+                .state(state)
+                .spacesDone(progress.getSpacesDone())
+                .spacesTotal(progress.getSpacesTotal())
+                .pagesDone(progress.getPagesDone())
+                .pagesFailed(progress.getPagesFailed())
+                .pagesTotal(progress.getPagesTotal())
+                .pagesPerSecond(progress.getPagesPerSecond())
+                .etaSeconds(state == CrawlJobState.RUNNING ? progress.getEtaSeconds() : null)
+                .submittedAt(submittedAt)
+                .startedAt(startedAt)
+                .finishedAt(finishedAt)
+                .error(error)
+                .build();
+    }
+}
@@ -0,0 +1,158 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import ru.cbgr.adapter.xwiki.configuration.ClusterProperties;
+import ru.cbgr.adapter.xwiki.configuration.CrawlProperties;
+import ru.cbgr.adapter.xwiki.dto.job.CrawlJobState;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Запускает полный обход XWiki в фоне и хранит состояние задач.
+ * Повторный запуск, пока предыдущая задача ждёт или выполняется, возвращает её же,
+ * поэтому параллельные запросы не удваивают нагрузку на XWiki.
+ * Задачи выполняет собственный поток сервиса, а не бин-исполнитель: объявленный в контексте
+ * ThreadPoolTaskExecutor отключил бы applicationTaskExecutor Spring Boot.
+ * Обход, прерванный ошибкой, отменой или остановкой процесса, следующая задача продолжает
+ * с контрольной точки.
+ * При cluster.enabled обход идёт через общую очередь в БД ({@link DistributedCrawlService}),
+ * а контрольные точки не нужны: состояние обхода хранит сама очередь.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class CrawlJobService {
+
+    private final EmbeddingsProcessorService embeddingsProcessorService;
+    private final CrawlCheckpointService crawlCheckpointService;
+    private final DistributedCrawlService distributedCrawlService;
+    private final CrawlProperties crawlProperties;
+    private final ClusterProperties clusterProperties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, CrawlJob> jobs = new ConcurrentHashMap<>();
+    /**
+     * Один поток: одновременно с XWiki работает не больше одного полного обхода
+     */
+    private final ExecutorService crawlJobExecutor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("crawl-job-", 1).factory());
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("crawl.jobs.queued", this, CrawlJobService::queuedJobs)
+                .description("Задачи обхода, ожидающие запуска")
+                .register(meterRegistry);
+        Gauge.builder("crawl.pages.remaining", this, CrawlJobService::remainingPages)
+                .description("Найденные, но ещё не обработанные страницы выполняемого обхода")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        crawlJobExecutor.shutdownNow();
+    }
+
+    /**
+     * Запускает полный обход, если нет активной задачи.
+     *
+     * @return новая задача или уже активная задача обхода
+     */
+    public synchronized CrawlJob submit() {
+        Optional<CrawlJob> active = jobs.values().stream()
+                .filter(job -> !job.getState().isFinished())
+                .findFirst();
+        if (active.isPresent()) {
+            log.info("Обход уже выполняется, возвращаем задачу {}", active.get().getId());
+            return active.get();
+        }
+        evictFinishedJobs();
+        CrawlJob job = new CrawlJob(UUID.randomUUID().toString());
+        job.attach(crawlJobExecutor.submit(() -> run(job)));
+        jobs.put(job.getId(), job);
+        log.info("Задача обхода {} поставлена в очередь", job.getId());
+        return job;
+    }
+
+    public Optional<CrawlJob> find(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    public Optional<CrawlJob> cancel(String jobId) {
+        Optional<CrawlJob> job = find(jobId);
+        job.ifPresent(CrawlJob::cancel);
+        return job;
+    }
+
+    private void run(CrawlJob job) {
+        if (job.getProgress().isCancelled()) {
+            job.markFinished(null);
+            return;
+        }
+        job.markRunning();
+        log.info("Задача обхода {} запущена", job.getId());
+        Throwable failure = null;
+        CrawlCheckpoint checkpoint = null;
+        try {
+            if (clusterProperties.isEnabled()) {
+                distributedCrawlService.run(job.getId(), job.getProgress());
+                return;
+            }
+            checkpoint = crawlCheckpointService.open(job.getId());
+            embeddingsProcessorService.processAllSpacesAndPages(job.getProgress(), checkpoint);
+            if (job.getProgress().isCancelled()) {
+                checkpoint.flush();
+            } else {
+                checkpoint.complete();
+            }
+        } catch (RuntimeException e) {
+            log.error("Задача обхода {} завершилась ошибкой", job.getId(), e);
+            failure = e;
+            if (checkpoint != null) {
+                checkpoint.flush();
+            }
+        } finally {
+            job.markFinished(failure);
+        }
+    }
+
+    private double queuedJobs() {
+        return jobs.values().stream()
+                .filter(job -> job.getState() == CrawlJobState.QUEUED)
+                .count();
+    }
+
+    private double remainingPages() {
+        return jobs.values().stream()
+                .filter(job -> !job.getState().isFinished())
+                .map(CrawlJob::getProgress)
+                .mapToLong(progress -> Math.max(progress.getPagesTotal() - progress.getPagesDone() - progress.getPagesFailed(), 0))
+                .sum();
+    }
+
+    private void evictFinishedJobs() {
+        int excess = jobs.size() - crawlProperties.getJobHistorySize() + 1;
+        if (excess <= 0) {
+            return;
+        }
+        jobs.values().stream()
+                .filter(job -> job.getState().isFinished())
+                .sorted(Comparator.comparing(CrawlJob::getSubmittedAt))
+                .limit(excess)
+                .toList()
+                .forEach(job -> jobs.remove(job.getId()));
+    }
+}
@@ -0,0 +1,132 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ru.cbgr.adapter.xwiki.dto.job.SpaceCrawlResult;
+
+/**
+ * Счётчики прогресса одного обхода XWiki.
+ * Обновляется из виртуальных потоков обхода, читается из HTTP-потоков при запросе состояния задачи.
+ */
+public class CrawlProgress {
+
+    private final AtomicInteger spacesTotal = new AtomicInteger();
+    private final AtomicInteger spacesDone = new AtomicInteger();
+    private final AtomicLong pagesTotal = new AtomicLong();
+    private final AtomicLong pagesDone = new AtomicLong();
+    private final AtomicLong pagesFailed = new AtomicLong();
+    private final List<SpaceCrawlResult> spaceResults = new CopyOnWriteArrayList<>();
+    private volatile long startedAtNanos;
+    private volatile long finishedAtNanos;
+    private volatile boolean cancelled;
+
+    public void start() {
+        startedAtNanos = System.nanoTime();
+    }
+
+    public void finish() {
+        finishedAtNanos = System.nanoTime();
+    }
+
+    public void spacesDiscovered(int count) {
+        spacesTotal.addAndGet(count);
+    }
+
+    public void spaceDone() {
+        spacesDone.incrementAndGet();
+    }
+
+    public void pagesDiscovered(int count) {
+        pagesTotal.addAndGet(count);
+    }
+
+    public void pageDone() {
+        pagesDone.incrementAndGet();
+    }
+
+    public void pageFailed() {
+        pagesFailed.incrementAndGet();
+    }
+
+    /**
+     * Переносит счётчики распределённого обхода, которые ведутся в общей очереди в БД
+     */
+    public void sync(int spacesTotal, int spacesDone, long pagesTotal, long pagesDone, long pagesFailed) {
+        this.spacesTotal.set(spacesTotal);
+        this.spacesDone.set(spacesDone);
+        this.pagesTotal.set(pagesTotal);
+        this.pagesDone.set(pagesDone);
+        this.pagesFailed.set(pagesFailed);
+    }
+
+    public void addSpaceResult(SpaceCrawlResult result) {
+        spaceResults.add(result);
+    }
+
+    /**
+     * Запрашивает остановку обхода: новые страницы перестают обрабатываться,
+     * уже начатые запросы к XWiki дорабатывают.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public int getSpacesTotal() {
+        return spacesTotal.get();
+    }
+
+    public int getSpacesDone() {
+        return spacesDone.get();
+    }
+
+    public long getPagesTotal() {
+        return pagesTotal.get();
+    }
+
+    public long getPagesDone() {
+        return pagesDone.get();
+    }
+
+    public long getPagesFailed() {
+        return pagesFailed.get();
+    }
+
+    /**
+     * Итоги по пространствам верхнего уровня в порядке списка пространств
+     */
+    public List<SpaceCrawlResult> getSpaceResults() {
+        return List.copyOf(spaceResults);
+    }
+
+    public double getPagesPerSecond() {
+        long started = startedAtNanos;
+        if (started == 0) {
+            return 0;
+        }
+        long end = finishedAtNanos != 0 ? finishedAtNanos : System.nanoTime();
+        double seconds = Math.max((end - started) / 1e9, 1e-3);
+        return (pagesDone.get() + pagesFailed.get()) / seconds;
+    }
+
+    /**
+     * Оценка оставшегося времени по уже найденным страницам.
+     * Пока обход находит новые пространства, оценка занижена.
+     *
+     * @return секунды или null, если скорость ещё неизвестна
+     */
+    public Long getEtaSeconds() {
+        double rate = getPagesPerSecond();
+        if (rate <= 0) {
+            return null;
+        }
+        long remaining = Math.max(pagesTotal.get() - pagesDone.get() - pagesFailed.get(), 0);
+        return Math.round(remaining / rate);
+    }
+}
@@ -0,0 +1,209 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import ru.cbgr.adapter.xwiki.client.XWikiClient;
+import ru.cbgr.adapter.xwiki.configuration.ClusterProperties;
+import ru.cbgr.adapter.xwiki.configuration.CrawlProperties;
+import ru.cbgr.adapter.xwiki.dto.job.WorkItem;
+import ru.cbgr.adapter.xwiki.dto.xwiki.SpacesResponse;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.LinkRelation;
+import ru.cbgr.adapter.xwiki.dto.xwiki.space.Space;
+import ru.cbgr.adapter.xwiki.repository.WorkQueueRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Обработчик общей очереди обхода, работает на каждом экземпляре при cluster.enabled.
+ * Вики разворачивается в свои пространства, пространство – в свои страницы, страница индексируется.
+ * В работе одновременно не больше cluster.workerConcurrency элементов; как только элемент
+ * обработан, на его место из очереди берётся следующий. Аренда элементов в работе
+ * продлевается отдельным потоком каждые cluster.heartbeatMs.
+ * Элемент отменённого обхода, выданный в работу до отмены, убирается без обработки,
+ * а разворачивание пространства прекращается на следующей порции страниц.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "cluster", name = "enabled", havingValue = "true")
+public class CrawlWorker {
+
+    private final WorkQueueRepository workQueueRepository;
+    private final ClusterProperties clusterProperties;
+    private final CrawlProperties crawlProperties;
+    private final XWikiClient xWikiClient;
+    private final EmbeddingsProcessorService embeddingsProcessorService;
+    private final MeterRegistry meterRegistry;
+    private ExecutorService executor;
+    private Semaphore slots;
+    private Thread claimer;
+    private Thread heartbeat;
+
+    @PostConstruct
+    void start() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        slots = new Semaphore(clusterProperties.getWorkerConcurrency());
+        claimer = Thread.ofVirtual().name("crawl-worker").start(this::claimLoop);
+        heartbeat = Thread.ofVirtual().name("crawl-worker-heartbeat").start(this::heartbeatLoop);
+        log.info("Обработчик очереди обхода запущен: экземпляр {}", clusterProperties.getInstanceId());
+    }
+
+    @PreDestroy
+    void stop() {
+        claimer.interrupt();
+        heartbeat.interrupt();
+        executor.shutdownNow();
+    }
+
+    private void claimLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (claimAndSubmit() == 0) {
+                    Thread.sleep(clusterProperties.getPollIntervalMs());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.warn("Ошибка чтения очереди обхода: {}", e.toString());
+                sleepQuietly(clusterProperties.getPollIntervalMs());
+            }
+        }
+    }
+
+    /**
+     * Дожидается хотя бы одного свободного места и забирает из очереди столько элементов, сколько мест свободно
+     *
+     * @return количество взятых в работу элементов
+     */
+    int claimAndSubmit() throws InterruptedException {
+        slots.acquire();
+        int free = 1 + slots.drainPermits();
+        List<WorkItem> items;
+        try {
+            items = workQueueRepository.claim(clusterProperties.getInstanceId(), free,
+                    clusterProperties.getLeaseMs(), clusterProperties.getMaxAttempts());
+        } catch (RuntimeException e) {
+            slots.release(free);
+            throw e;
+        }
+        slots.release(free - items.size());
+        for (WorkItem item : items) {
+            executor.submit(() -> {
+                try {
+                    process(item);
+                } finally {
+                    slots.release();
+                }
+            });
+        }
+        return items.size();
+    }
+
+    private void heartbeatLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(clusterProperties.getHeartbeatMs());
+                workQueueRepository.extendLeases(clusterProperties.getInstanceId(), clusterProperties.getLeaseMs());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                log.warn("Не удалось продлить аренду элементов очереди: {}", e.toString());
+            }
+        }
+    }
+
+    void process(WorkItem item) {
+        try {
+            if (workQueueRepository.isCancelled(item.crawlId())) {
+                workQueueRepository.remove(item.id());
+                count(item, "cancelled");
+                return;
+            }
+            switch (item.kind()) {
+                case WorkItem.WIKI -> expandWiki(item);
+                case WorkItem.SPACE -> expandSpace(item);
+                case WorkItem.PAGE -> embeddingsProcessorService.indexPage(item.key(), item.url(), item.version());
+                default -> throw new IllegalStateException("Неизвестный вид элемента очереди: " + item.kind());
+            }
+            workQueueRepository.complete(item.id());
+            count(item, "done");
+        } catch (RuntimeException e) {
+            log.warn("Ошибка обработки {} {} в очереди обхода: {}", item.kind(), item.key(), e.toString());
+            workQueueRepository.fail(item.id(), clusterProperties.getMaxAttempts());
+            count(item, "failed");
+        }
+    }
+
+    private void expandWiki(WorkItem item) {
+        SpacesResponse response = xWikiClient.getSpaces(item.key());
+        if (response == null || response.getSpaces() == null) {
+            log.warn("Нет пространств для обработки в вики {}", item.key());
+            return;
+        }
+        List<WorkItem> spaces = new ArrayList<>();
+        collectSpaces(item.crawlId(), response.getSpaces(), spaces);
+        workQueueRepository.enqueue(spaces);
+    }
+
+    private static void collectSpaces(String crawlId, List<Space> spaces, List<WorkItem> result) {
+        for (Space space : spaces) {
+            String pagesUrl = space.getLinks() == null ? null : space.getLinks().href(LinkRelation.PAGES);
+            if (pagesUrl == null) {
+                log.warn("Нет ссылки на страницы для пространства: {}", space.getId());
+            } else {
+                result.add(WorkItem.of(crawlId, WorkItem.SPACE, space.getId(), pagesUrl, null));
+            }
+            if (space.getSpaces() != null) {
+                collectSpaces(crawlId, space.getSpaces(), result);
+            }
+        }
+    }
+
+    /**
+     * Ставит в очередь страницы пространства, порциями по xwiki.crawl.pageListSize, пока обход не отменён
+     */
+    private void expandSpace(WorkItem item) {
+        int pageSize = crawlProperties.getPageListSize();
+        for (int start = 0; ; start += pageSize) {
+            if (start > 0 && workQueueRepository.isCancelled(item.crawlId())) {
+                log.info("Обход {} отменён, пространство {} больше не разворачивается", item.crawlId(), item.key());
+                return;
+            }
+            List<WorkItem> pages = new ArrayList<>(pageSize);
+            int count = xWikiClient.streamPages(item.url(), start, pageSize, page -> {
+                String detailUrl = page.getLinks() == null ? null : page.getLinks().href(LinkRelation.PAGE);
+                if (detailUrl != null) {
+                    pages.add(WorkItem.of(item.crawlId(), WorkItem.PAGE, page.getId(), detailUrl, page.getVersion()));
+                }
+            });
+            workQueueRepository.enqueue(pages);
+            if (count < pageSize) {
+                return;
+            }
+        }
+    }
+
+    private void count(WorkItem item, String result) {
+        meterRegistry.counter("crawl.queue.items", "kind", String.valueOf(item.kind()), "result", result).increment();
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.List;
+
+import org.springframework.stereotype.Service;
+
+import ru.cbgr.adapter.xwiki.configuration.ClusterProperties;
+import ru.cbgr.adapter.xwiki.dto.job.CrawlQueueStats;
+import ru.cbgr.adapter.xwiki.dto.job.WorkItem;
+import ru.cbgr.adapter.xwiki.repository.WorkQueueRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Полный обход через общую очередь (cluster.enabled): задача обхода на одном экземпляре
+ * ставит в очередь вики фермы и следит за прогрессом, а работу выполняют {@link CrawlWorker} всех экземпляров.
+ * Если в очереди остался незавершённый обход (например, координатор перезапускался), задача продолжает его.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class DistributedCrawlService {
+
+    private final WorkQueueRepository workQueueRepository;
+    private final LeaderElectionService leaderElectionService;
+    private final WikiDirectory wikiDirectory;
+    private final ClusterProperties clusterProperties;
+
+    /**
+     * Выполняет обход и ждёт, пока очередь обхода опустеет
+     *
+     * @throws IllegalStateException если обход координирует другой экземпляр
+     */
+    public void run(String jobId, CrawlProgress progress) {
+        if (!leaderElectionService.tryAcquire(LeaderElectionService.CRAWL_COORDINATOR)) {
+            throw new IllegalStateException("Обход уже координирует другой экземпляр");
+        }
+        progress.start();
+        try {
+            String crawlId = workQueueRepository.findActiveCrawl().orElse(null);
+            if (crawlId != null) {
+                log.info("Продолжаем обход {} из общей очереди", crawlId);
+            } else {
+                crawlId = jobId;
+                List<WorkItem> wikis = wikiDirectory.getWikiIds().stream()
+                        .map(wiki -> WorkItem.of(jobId, WorkItem.WIKI, wiki, null, null))
+                        .toList();
+                workQueueRepository.enqueue(wikis);
+                log.info("Обход {} поставлен в общую очередь: вики {}", crawlId, wikis.size());
+            }
+            await(crawlId, progress);
+            workQueueRepository.delete(crawlId);
+        } finally {
+            progress.finish();
+            leaderElectionService.release(LeaderElectionService.CRAWL_COORDINATOR);
+        }
+    }
+
+    private void await(String crawlId, CrawlProgress progress) {
+        boolean cancelRequested = false;
+        while (true) {
+            try {
+                Thread.sleep(clusterProperties.getPollIntervalMs());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Ожидание обхода прервано", e);
+            }
+            if (!leaderElectionService.tryAcquire(LeaderElectionService.CRAWL_COORDINATOR)) {
+                throw new IllegalStateException("Координация обхода перешла к другому экземпляру");
+            }
+            // Отмена повторяется, пока обход не завершится: пространства и вики, уже взятые в работу,
+            // могли поставить страницы в очередь до того, как увидели отметку отмены
+            if (progress.isCancelled()) {
+                int removed = workQueueRepository.cancel(crawlId);
+                if (!cancelRequested || removed > 0) {
+                    log.info("Обход {} отменён, убрано из очереди элементов: {}", crawlId, removed);
+                }
+                cancelRequested = true;
+            }
+            CrawlQueueStats stats = workQueueRepository.stats(crawlId);
+            progress.sync(stats.spacesTotal(), stats.spacesDone(), stats.pagesTotal(), stats.pagesDone(), stats.pagesFailed());
+            if (stats.remaining() == 0) {
+                return;
+            }
+        }
+    }
+}
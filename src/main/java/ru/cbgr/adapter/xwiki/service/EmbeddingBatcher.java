@@ -0,0 +1,185 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+import ru.cbgr.adapter.xwiki.configuration.EmbeddingBatchProperties;
+import ru.cbgr.adapter.xwiki.configuration.ResilienceProperties;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Собирает одиночные запросы embedding`ов из параллельных потоков в пакеты.
+ * Пакет отправляется в модель, когда набрано maxBatchSize текстов или истекло maxWaitMs
+ * с момента прихода первого. Пакеты отправляются параллельно, не больше
+ * resilience.ollama.maxConcurrency одновременно; пока все слоты заняты, следующие запросы
+ * копятся в очереди, поэтому под нагрузкой пакеты укрупняются сами.
+ */
+@Component
+@Slf4j
+public class EmbeddingBatcher {
+
+    private final LlamaAiService llamaAiService;
+    private final EmbeddingBatchProperties properties;
+    private final BlockingQueue<PendingEmbedding> queue = new LinkedBlockingQueue<>();
+    /**
+     * Слоты одновременных запросов пакетов; дальше их ограничивает адаптивный предел Ollama
+     */
+    private final Semaphore inFlight;
+    private final DistributionSummary batchSize;
+    private final Timer batchLatency;
+    private final Timer queueWait;
+    private Thread dispatcher;
+
+    public EmbeddingBatcher(LlamaAiService llamaAiService, EmbeddingBatchProperties properties,
+                            ResilienceProperties resilienceProperties, MeterRegistry meterRegistry) {
+        this.llamaAiService = llamaAiService;
+        this.properties = properties;
+        this.inFlight = new Semaphore(Math.max(resilienceProperties.getOllama().getMaxConcurrency(), 1));
+        this.batchSize = DistributionSummary.builder("ai.embedding.batch.size")
+                .description("Количество текстов в пакете запроса embedding`ов")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchLatency = Timer.builder("ai.embedding.batch.latency")
+                .description("Время запроса пакета embedding`ов к модели")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.queueWait = Timer.builder("ai.embedding.batch.queue.wait")
+                .description("Время ожидания текста в очереди до отправки в модель")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("ai.embedding.batch.queue.size", queue, BlockingQueue::size)
+                .description("Количество текстов, ожидающих отправки в модель")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void start() {
+        dispatcher = Thread.ofVirtual().name("embedding-batcher").start(this::dispatchLoop);
+    }
+
+    @PreDestroy
+    void stop() {
+        dispatcher.interrupt();
+    }
+
+    /**
+     * Ставит текст в очередь на получение embedding`а.
+     *
+     * @param text Входные данные
+     * @return embedding текста после обработки пакета, в который он попал
+     */
+    public CompletableFuture<Embedding> embed(String text) {
+        PendingEmbedding pending = new PendingEmbedding(text, System.nanoTime(), new CompletableFuture<>());
+        queue.add(pending);
+        return pending.result();
+    }
+
+    /**
+     * Ставит в очередь все тексты сразу и дожидается их embedding`ов: тексты попадают
+     * в общие пакеты с запросами из других потоков.
+     *
+     * @param texts Входные данные
+     * @return embedding`и в порядке входных текстов
+     */
+    public List<Embedding> embedAll(List<String> texts) {
+        List<CompletableFuture<Embedding>> futures = texts.stream().map(this::embed).toList();
+        try {
+            return futures.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Нарезает очередь на пакеты; каждый пакет отправляется в модель в своём виртуальном потоке.
+     * Слот занимается до набора пакета, чтобы при занятых слотах тексты копились в очереди.
+     */
+    private void dispatchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            List<PendingEmbedding> batch = new ArrayList<>(properties.getMaxBatchSize());
+            try {
+                collectBatch(batch);
+                Thread.ofVirtual().name("embedding-batch").start(() -> {
+                    try {
+                        execute(batch);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                inFlight.release();
+                batch.forEach(pending -> pending.result().completeExceptionally(new IllegalStateException("Сервис остановлен")));
+            }
+        }
+        List<PendingEmbedding> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        rest.forEach(pending -> pending.result().completeExceptionally(new IllegalStateException("Сервис остановлен")));
+    }
+
+    private void collectBatch(List<PendingEmbedding> batch) throws InterruptedException {
+        int maxBatchSize = properties.getMaxBatchSize();
+        batch.add(queue.take());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getMaxWaitMs());
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+            PendingEmbedding next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            if (next == null) {
+                break;
+            }
+            batch.add(next);
+        }
+        queue.drainTo(batch, maxBatchSize - batch.size());
+    }
+
+    private void execute(List<PendingEmbedding> batch) {
+        long sentAt = System.nanoTime();
+        List<String> texts = new ArrayList<>(batch.size());
+        for (PendingEmbedding pending : batch) {
+            queueWait.record(sentAt - pending.enqueuedAt(), TimeUnit.NANOSECONDS);
+            texts.add(pending.text());
+        }
+        batchSize.record(batch.size());
+        try {
+            EmbeddingResponse response = llamaAiService.getEmbeddings(texts);
+            batchLatency.record(System.nanoTime() - sentAt, TimeUnit.NANOSECONDS);
+            List<Embedding> results = response.getResults();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(results.get(i));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Ошибка получения пакета embedding`ов из {} текстов: {}", batch.size(), e.toString());
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+        }
+    }
+
+    private record PendingEmbedding(String text, long enqueuedAt, CompletableFuture<Embedding> result) {
+    }
+}
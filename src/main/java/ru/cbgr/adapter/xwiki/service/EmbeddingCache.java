@@ -0,0 +1,223 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import ru.cbgr.adapter.xwiki.configuration.EmbeddingCacheProperties;
+import ru.cbgr.adapter.xwiki.repository.EmbeddingCacheRepository;
+import ru.cbgr.adapter.xwiki.util.Hashing;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Кеш embedding`ов по модели и SHA-256 нормализованного текста.
+ * Одинаковые тексты (шаблоны, общие макросы, повторяющиеся заголовки, повторные запросы)
+ * отправляются в модель один раз. В памяти – Caffeine с ограничением по размеру векторов,
+ * векторы хранятся как float[] или, при storage = INT8, байтами с общим масштабом.
+ * При persistent = true промахи памяти ищутся в таблице embedding_cache, и кеш переживает перезапуск.
+ */
+@Component
+@Slf4j
+public class EmbeddingCache {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final EmbeddingCacheProperties properties;
+    private final EmbeddingCacheRepository repository;
+    private final Cache<String, CachedVector> memory;
+    private final Counter memoryHits;
+    private final Counter databaseHits;
+    private final Counter misses;
+    private final Counter savedSeconds;
+    /**
+     * Скользящее среднее времени модели на один текст – для оценки сэкономленного времени
+     */
+    private final AtomicLong modelNanosPerText = new AtomicLong();
+
+    public EmbeddingCache(EmbeddingCacheProperties properties, EmbeddingCacheRepository repository,
+                          MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.repository = repository;
+        this.memory = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxSizeMb() * 1024 * 1024)
+                .weigher((String key, CachedVector vector) -> key.length() * 2 + vector.bytes())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, memory, "ai.embedding.cache");
+        this.memoryHits = requests(meterRegistry, "memory");
+        this.databaseHits = requests(meterRegistry, "database");
+        this.misses = requests(meterRegistry, "model");
+        this.savedSeconds = Counter.builder("ai.embedding.cache.saved.time")
+                .description("Оценка времени модели, сэкономленного попаданиями в кеш")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("ai.embedding.cache.hit.ratio", this, EmbeddingCache::hitRatio)
+                .description("Доля текстов, embedding которых взят из кеша (память и БД)")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Возвращает embedding`и текстов, запрашивая у модели только отсутствующие в кеше.
+     * Повторы внутри одного запроса тоже отправляются в модель один раз.
+     * Тексты нормализуются и при выключенном кеше, чтобы векторы не зависели от настройки enabled.
+     *
+     * @param model модель, которой строятся embedding`и
+     * @param texts входные тексты
+     * @param loader запрос к модели: нормализованные тексты → векторы в том же порядке
+     * @return векторы в порядке входных текстов
+     */
+    public List<float[]> getAll(String model, List<String> texts, Function<List<String>, List<float[]>> loader) {
+        List<String> normalized = texts.stream().map(EmbeddingCache::normalize).toList();
+        if (!properties.isEnabled()) {
+            return loader.apply(normalized);
+        }
+        float[][] result = new float[texts.size()][];
+        String[] hashes = new String[texts.size()];
+        Map<String, String> missing = new LinkedHashMap<>();
+        int hits = 0;
+        for (int i = 0; i < texts.size(); i++) {
+            String text = normalized.get(i);
+            hashes[i] = Hashing.sha256Hex(text);
+            CachedVector cached = memory.getIfPresent(key(model, hashes[i]));
+            if (cached != null) {
+                result[i] = cached.toFloats();
+                hits++;
+            } else {
+                missing.putIfAbsent(hashes[i], text);
+            }
+        }
+        memoryHits.increment(hits);
+
+        Map<String, float[]> loaded = new LinkedHashMap<>();
+        if (!missing.isEmpty() && properties.isPersistent()) {
+            loaded.putAll(findStored(model, missing));
+            loaded.keySet().forEach(missing::remove);
+            databaseHits.increment(loaded.size());
+            loaded.forEach((hash, vector) -> memory.put(key(model, hash), CachedVector.of(vector, properties.getStorage())));
+        }
+        if (!missing.isEmpty()) {
+            Map<String, float[]> computed = load(missing, loader);
+            computed.forEach((hash, vector) -> memory.put(key(model, hash), CachedVector.of(vector, properties.getStorage())));
+            if (properties.isPersistent()) {
+                store(model, computed);
+            }
+            loaded.putAll(computed);
+        }
+        // Попадания в кеш по повторам внутри запроса тоже экономят обращение к модели
+        int modelTexts = missing.size();
+        savedSeconds.increment((texts.size() - modelTexts) * modelNanosPerText.get() / 1e9);
+        for (int i = 0; i < result.length; i++) {
+            if (result[i] == null) {
+                result[i] = loaded.get(hashes[i]);
+            }
+        }
+        return List.of(result);
+    }
+
+    private Map<String, float[]> load(Map<String, String> missing, Function<List<String>, List<float[]>> loader) {
+        List<String> hashes = new ArrayList<>(missing.keySet());
+        long startedAt = System.nanoTime();
+        List<float[]> vectors = loader.apply(new ArrayList<>(missing.values()));
+        long perText = (System.nanoTime() - startedAt) / hashes.size();
+        modelNanosPerText.updateAndGet(avg -> avg == 0 ? perText : avg + (perText - avg) / 8);
+        misses.increment(hashes.size());
+        Map<String, float[]> result = new LinkedHashMap<>();
+        for (int i = 0; i < hashes.size(); i++) {
+            result.put(hashes.get(i), vectors.get(i));
+        }
+        return result;
+    }
+
+    private Map<String, float[]> findStored(String model, Map<String, String> missing) {
+        try {
+            return repository.findAll(model, missing.keySet());
+        } catch (RuntimeException e) {
+            log.warn("Не удалось прочитать кеш embedding`ов из БД: {}", e.toString());
+            return Map.of();
+        }
+    }
+
+    private void store(String model, Map<String, float[]> computed) {
+        try {
+            repository.saveAll(model, computed);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось записать кеш embedding`ов в БД: {}", e.toString());
+        }
+    }
+
+    private double hitRatio() {
+        double hits = memoryHits.count() + databaseHits.count();
+        double total = hits + misses.count();
+        return total == 0 ? 0 : hits / total;
+    }
+
+    /**
+     * Нормализация текста перед хешированием и отправкой в модель: NFC и схлопнутые пробелы
+     */
+    static String normalize(String text) {
+        return WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFC)).replaceAll(" ").strip();
+    }
+
+    private static String key(String model, String hash) {
+        return model + '\n' + hash;
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("ai.embedding.cache.requests")
+                .description("Получение embedding`ов текстов: из памяти, из БД или запросом к модели")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Вектор в памяти кеша: float[] как есть или байты с масштабом (storage = INT8)
+     */
+    record CachedVector(float[] floats, byte[] quantized, float scale) {
+
+        static CachedVector of(float[] vector, EmbeddingCacheProperties.Storage storage) {
+            if (storage == EmbeddingCacheProperties.Storage.FLOAT32) {
+                return new CachedVector(vector.clone(), null, 0);
+            }
+            float maxAbs = 0;
+            for (float value : vector) {
+                maxAbs = Math.max(maxAbs, Math.abs(value));
+            }
+            float scale = maxAbs == 0 ? 1 : maxAbs / 127;
+            byte[] quantized = new byte[vector.length];
+            for (int i = 0; i < vector.length; i++) {
+                quantized[i] = (byte) Math.round(vector[i] / scale);
+            }
+            return new CachedVector(null, quantized, scale);
+        }
+
+        float[] toFloats() {
+            if (floats != null) {
+                return floats.clone();
+            }
+            float[] result = new float[quantized.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = quantized[i] * scale;
+            }
+            return result;
+        }
+
+        int bytes() {
+            return floats != null ? floats.length * Float.BYTES + 32 : quantized.length + 48;
+        }
+    }
+}
@@ -1,16 +1,40 @@
 package ru.cbgr.adapter.xwiki.service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PostConstruct;
 
 import ru.cbgr.adapter.xwiki.client.XWikiClient;
-import ru.cbgr.adapter.xwiki.dto.xwiki.PagesResponse;
+import ru.cbgr.adapter.xwiki.configuration.CrawlProperties;
+import ru.cbgr.adapter.xwiki.dto.embedding.PageChunkEmbedding;
+import ru.cbgr.adapter.xwiki.dto.job.SpaceCrawlResult;
 import ru.cbgr.adapter.xwiki.dto.xwiki.SpacesResponse;
-import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Link;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.LinkRelation;
 import ru.cbgr.adapter.xwiki.dto.xwiki.page.PageDetails;
 import ru.cbgr.adapter.xwiki.dto.xwiki.page.PageSummary;
 import ru.cbgr.adapter.xwiki.dto.xwiki.space.Space;
+import ru.cbgr.adapter.xwiki.events.PageIndexedEvent;
+import ru.cbgr.adapter.xwiki.events.PageRemovedEvent;
+import ru.cbgr.adapter.xwiki.repository.PageEmbeddingRepository;
+import ru.cbgr.adapter.xwiki.util.Hashing;
+import ru.cbgr.adapter.xwiki.util.Vectors;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -21,19 +45,95 @@ import lombok.extern.slf4j.Slf4j;
 public class EmbeddingsProcessorService { // todo Проанализировать ответы от xwiki api
 
     private final XWikiClient xWikiClient;
+    private final WikiDirectory wikiDirectory;
+    private final CrawlProperties crawlProperties;
+    private final LlamaAiService llamaAiService;
+    private final EmbeddingBatcher embeddingBatcher;
+    private final TextPreprocessingService textPreprocessingService;
+    private final PageEmbeddingRepository pageEmbeddingRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
+    private final AtomicInteger pagesInFlight = new AtomicInteger();
+
+    @PostConstruct
+    void registerMetrics() {
+        meterRegistry.gauge("crawl.pages.in.flight", pagesInFlight);
+    }
 
     /**
-     * Обходит все пространства, полученные по /rest/wikis/xwiki/spaces,
-     * и для каждого пространства обрабатывает страницы.
+     * Обходит все вики фермы (см. {@link WikiDirectory}), для каждой вики – все пространства,
+     * полученные по /rest/wikis/{wiki}/spaces, и для каждого пространства обрабатывает страницы.
+     * Вики, пространства, списки страниц и страницы обрабатываются параллельно в виртуальных потоках,
+     * количество одновременных запросов к XWiki ограничивает {@link ru.cbgr.adapter.xwiki.client.HostConcurrencyLimiter}.
+     * Итоги по пространствам выводятся в порядке исходного списка, независимо от порядка завершения.
      */
     public void processAllSpacesAndPages() {
-        SpacesResponse spacesResponse = xWikiClient.getSpaces();
+        processAllSpacesAndPages(new CrawlProgress());
+    }
+
+    /**
+     * Выполняет полный обход, публикуя прогресс в progress.
+     * После {@link CrawlProgress#cancel()} новые страницы не обрабатываются.
+     *
+     * @param progress счётчики прогресса обхода
+     */
+    public void processAllSpacesAndPages(CrawlProgress progress) {
+        processAllSpacesAndPages(progress, CrawlCheckpoint.disabled());
+    }
+
+    /**
+     * Выполняет полный обход с контрольной точкой: уже обработанные пространства и страницы
+     * пропускаются, вновь обработанные отмечаются в ней.
+     * У каждой вики свой бюджет одновременно обрабатываемых страниц (xwiki.crawl.maxConcurrencyPerWiki),
+     * а разрешения хоста выдаются по очереди, поэтому большая вики не вытесняет небольшие.
+     *
+     * @param progress счётчики прогресса обхода
+     * @param checkpoint контрольная точка обхода
+     */
+    public void processAllSpacesAndPages(CrawlProgress progress, CrawlCheckpoint checkpoint) {
+        progress.start();
+        try {
+            List<String> wikis = wikiDirectory.getWikiIds();
+            log.info("Обходим вики: {}", wikis);
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<?>> futures = new ArrayList<>(wikis.size());
+                for (String wiki : wikis) {
+                    CrawlContext context = new CrawlContext(wiki, executor, progress, checkpoint,
+                            new Semaphore(crawlProperties.getMaxConcurrencyPerWiki(), true));
+                    futures.add(executor.submit(() -> processWiki(context)));
+                }
+                for (int i = 0; i < futures.size(); i++) {
+                    await(futures.get(i), wikis.get(i));
+                }
+            }
+        } finally {
+            progress.finish();
+        }
+        log.info("Обход {}: страниц {}, ошибок {}, {} стр/с",
+                progress.isCancelled() ? "отменён" : "завершён",
+                progress.getPagesDone(), progress.getPagesFailed(), String.format("%.1f", progress.getPagesPerSecond()));
+    }
+
+    private void processWiki(CrawlContext context) {
+        SpacesResponse spacesResponse = xWikiClient.getSpaces(context.wiki());
         if (spacesResponse == null || spacesResponse.getSpaces() == null) {
-            log.warn("Нет пространств для обработки.");
+            log.warn("Нет пространств для обработки в вики {}", context.wiki());
             return;
         }
-        for (Space space : spacesResponse.getSpaces()) {
-            processSpace(space);
+        List<Space> spaces = spacesResponse.getSpaces();
+        context.progress().spacesDiscovered(spaces.size());
+        List<Future<SpaceResult>> futures = new ArrayList<>();
+        for (Space space : spaces) {
+            futures.add(context.executor().submit(() -> processSpace(space, context)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            String spaceId = spaces.get(i).getId();
+            SpaceResult result = Optional.ofNullable(await(futures.get(i), spaceId)).orElse(SpaceResult.FAILED);
+            log.info("Пространство {} обработано: страниц {}, пропущено {}, ошибок {}",
+                    spaceId, result.pages(), result.skipped(), result.failed());
+            context.progress().addSpaceResult(
+                    new SpaceCrawlResult(spaceId, result.pages(), result.skipped(), result.failed()));
         }
     }
 
@@ -42,30 +142,152 @@ public class EmbeddingsProcessorService { // todo Проанализироват
      * – извлекает ссылку на список страниц (rel = "http://www.xwiki.org/rel/pages"),
      * – обходит все страницы,
      * – если есть вложенные пространства, обрабатывает их рекурсивно.
+     * Страницы и вложенные пространства отправляются в executor и обрабатываются параллельно.
      */
-    private void processSpace(Space space) {
+    private SpaceResult processSpace(Space space, CrawlContext context) {
+        CrawlProgress progress = context.progress();
+        if (progress.isCancelled()) {
+            return SpaceResult.EMPTY;
+        }
+        if (context.checkpoint().isSpaceDone(space.getId())) {
+            log.debug("Пространство {} обработано до перезапуска, пропускаем", space.getId());
+            progress.spaceDone();
+            return SpaceResult.EMPTY;
+        }
         log.info("Обрабатываем пространство: {}", space.getId());
-        Optional<Link> pagesLinkOpt = space.getLinks().stream()
-                .filter(link -> "http://www.xwiki.org/rel/pages".equals(link.getRel()))
-                .findFirst();
-        if (pagesLinkOpt.isEmpty()) {
+        // Вложенные пространства запускаются сразу, параллельно с обходом списка страниц
+        List<Future<SpaceResult>> nestedFutures = new ArrayList<>();
+        if (space.getSpaces() != null) {
+            progress.spacesDiscovered(space.getSpaces().size());
+            for (Space nestedSpace : space.getSpaces()) {
+                nestedFutures.add(context.executor().submit(() -> processSpace(nestedSpace, context)));
+            }
+        }
+
+        SpaceResult result = SpaceResult.EMPTY;
+        String pagesUrl = space.getLinks() == null ? null : space.getLinks().href(LinkRelation.PAGES);
+        if (pagesUrl == null) {
             log.warn("Нет ссылки на страницы для пространства: {}", space.getId());
         } else {
-            String pagesUrl = pagesLinkOpt.get().getHref();
-            PagesResponse pagesResponse = xWikiClient.getPages(pagesUrl);
-            if (pagesResponse == null || pagesResponse.getPageSummaries() == null) {
-                log.warn("Нет страниц в пространстве: {}", space.getId());
+            result = processPages(space.getId(), pagesUrl, context);
+        }
+        for (Future<SpaceResult> nestedFuture : nestedFutures) {
+            result = result.plus(Optional.ofNullable(await(nestedFuture, space.getId())).orElse(SpaceResult.FAILED));
+        }
+        progress.spaceDone();
+        meterRegistry.counter("crawl.spaces").increment();
+        // Пространство с ошибками или прерванное отменой при продолжении обходится снова
+        if (result.failed() == 0 && !progress.isCancelled()) {
+            context.checkpoint().spaceDone(space.getId());
+        }
+        return result;
+    }
+
+    /**
+     * Обходит список страниц пространства порциями по xwiki.crawl.pageListSize.
+     * Следующая порция загружается, пока обрабатываются страницы текущей; прежде чем взять
+     * в работу очередную порцию, дожидаемся предыдущей. Так в работе не больше двух порций,
+     * и память и время одного запроса не зависят от размера пространства.
+     */
+    private SpaceResult processPages(String spaceId, String pagesUrl, CrawlContext context) {
+        int pageSize = crawlProperties.getPageListSize();
+        SpaceResult result = SpaceResult.EMPTY;
+        List<Future<Boolean>> previous = List.of();
+        Future<List<PageSummary>> next = context.executor().submit(() -> fetchPages(pagesUrl, 0, pageSize));
+        for (int start = 0; next != null; start += pageSize) {
+            List<PageSummary> pages = await(next, spaceId);
+            if (pages == null) {
+                result = result.plus(SpaceResult.FAILED);
+                break;
+            }
+            if (start == 0 && pages.isEmpty()) {
+                log.warn("Нет страниц в пространстве: {}", spaceId);
+            }
+            int nextStart = start + pageSize;
+            next = pages.size() == pageSize && !context.progress().isCancelled()
+                    ? context.executor().submit(() -> fetchPages(pagesUrl, nextStart, pageSize))
+                    : null;
+            List<Future<Boolean>> current = submitPages(pages, context);
+            result = result.plus(awaitPages(previous, spaceId));
+            previous = current;
+        }
+        return result.plus(awaitPages(previous, spaceId));
+    }
+
+    private List<PageSummary> fetchPages(String pagesUrl, int start, int number) {
+        List<PageSummary> pages = new ArrayList<>(number);
+        xWikiClient.streamPages(pagesUrl, start, number, pages::add);
+        return pages;
+    }
+
+    /**
+     * Отправляет порцию страниц в обработку, пропуская обработанные до перезапуска.
+     * Хеши сохранённого содержимого страниц порции получаются одним запросом.
+     */
+    private List<Future<Boolean>> submitPages(List<PageSummary> allPages, CrawlContext context) {
+        List<PageSummary> pages = allPages.stream()
+                .filter(page -> !context.checkpoint().isPageDone(page.getId()))
+                .toList();
+        if (pages.isEmpty()) {
+            return List.of();
+        }
+        context.progress().pagesDiscovered(pages.size());
+        Map<String, String> storedHashes = pageEmbeddingRepository.findContentHashes(
+                pages.stream().map(PageSummary::getId).toList());
+        List<Future<Boolean>> futures = new ArrayList<>(pages.size());
+        for (PageSummary page : pages) {
+            futures.add(context.executor().submit(() -> crawlPage(page, storedHashes.get(page.getId()), context)));
+        }
+        return futures;
+    }
+
+    /**
+     * Дожидается страниц порции: false – страница пропущена (обход отменён, нет ссылки
+     * на страницу или нет текста), null – обработка завершилась ошибкой
+     */
+    private static SpaceResult awaitPages(List<Future<Boolean>> futures, String spaceId) {
+        SpaceResult result = SpaceResult.EMPTY;
+        for (Future<Boolean> future : futures) {
+            Boolean processed = await(future, spaceId);
+            if (processed == null) {
+                result = result.plus(SpaceResult.FAILED);
             } else {
-                for (PageSummary page : pagesResponse.getPageSummaries()) {
-                    processPage(page);
-                }
+                result = result.plus(processed ? SpaceResult.PAGE : SpaceResult.SKIPPED);
             }
         }
-        // Если у пространства есть вложенные пространства – обрабатываем их рекурсивно:
-        if (space.getSpaces() != null) {
-            for (Space nestedSpace : space.getSpaces()) {
-                processSpace(nestedSpace);
+        return result;
+    }
+
+    /**
+     * Обрабатывает страницу в рамках обхода и учитывает результат в прогрессе.
+     * Если обход отменён, страница пропускается. Страница ждёт разрешения из бюджета своей вики.
+     * Обработка страницы – отдельный корневой спан crawl.page: в него вложены запросы к XWiki
+     * и модели, поэтому медленную страницу можно разобрать по трассировке целиком.
+     */
+    private boolean crawlPage(PageSummary page, String storedHash, CrawlContext context) {
+        context.permits().acquireUninterruptibly();
+        try {
+            if (context.progress().isCancelled()) {
+                return false;
+            }
+            pagesInFlight.incrementAndGet();
+            try {
+                boolean processed = Observation.createNotStarted("crawl.page", observationRegistry)
+                        .lowCardinalityKeyValue("wiki", context.wiki())
+                        .highCardinalityKeyValue("page.id", page.getId())
+                        .observe(() -> processPage(page, storedHash));
+                context.progress().pageDone();
+                context.checkpoint().pageDone(page.getId());
+                return processed;
+            } catch (RuntimeException e) {
+                context.progress().pageFailed();
+                meterRegistry.counter("crawl.pages.failed", "cause", failureCause(e)).increment();
+                throw e;
+            } finally {
+                pagesInFlight.decrementAndGet();
             }
+        } finally {
+            context.permits().release();
         }
     }
 
@@ -76,42 +298,152 @@ public class EmbeddingsProcessorService { // todo Проанализироват
      * – нормализует текст,
      * – генерирует эмбеддинг.
      */
-    private void processPage(PageSummary page) {
+    private boolean processPage(PageSummary page, String storedHash) {
         log.info("Обрабатываем страницу: {}", page.getId());
 
-        Optional<Link> detailLinkOpt = page.getLinks().stream()
-                .filter(link -> "http://www.xwiki.org/rel/page".equals(link.getRel()))
-                .findFirst();
-
-        if (detailLinkOpt.isEmpty()) {
+        // Используем полученный URL напрямую, без дополнительного кодирования
+        String detailUrl = page.getLinks() == null ? null : page.getLinks().href(LinkRelation.PAGE);
+        if (detailUrl == null) {
             log.warn("Не найдена ссылка для получения подробной информации для страницы: {}", page.getId());
-            return;
+            return false;
         }
+        return indexPage(page.getId(), detailUrl, page.getVersion(), storedHash);
+    }
 
-        // Используем полученный URL напрямую, без дополнительного кодирования
-        String detailUrl = detailLinkOpt.get().getHref();
+    /**
+     * Загружает содержимое страницы по URL и индексирует его.
+     * Используется и полным обходом, и инкрементальной переиндексацией изменённых страниц.
+     *
+     * @param pageId идентификатор страницы
+     * @param detailUrl URL страницы в REST API XWiki
+     * @param version версия страницы из истории изменений, если известна
+     * @return true, если содержимое страницы получено и обработано
+     */
+    public boolean indexPage(String pageId, String detailUrl, String version) {
+        return indexPage(pageId, detailUrl, version, pageEmbeddingRepository.findContentHash(pageId).orElse(null));
+    }
+
+    /**
+     * Индексирует страницу, если её содержимое изменилось.
+     * Если хеш содержимого совпадает с сохранённым, обращения к модели и записи в БД не происходит.
+     *
+     * @param storedHash хеш содержимого, по которому строились сохранённые embedding`и, или null
+     */
+    private boolean indexPage(String pageId, String detailUrl, String version, String storedHash) {
         log.debug("Получаем данные страницы по URL: {}", detailUrl);
 
         // Вызываем getPageDetails только если URL заканчивается на "/WebHome"
         /*if (!detailUrl.endsWith("/WebHome")) {
-            log.info("Ссылка {} не заканчивается на /WebHome, пропускаем обработку страницы: {}", detailUrl, page.getId());
+            log.info("Ссылка {} не заканчивается на /WebHome, пропускаем обработку страницы: {}", detailUrl, pageId);
             return;
         }*/
 
         // Получаем подробности страницы (например, объект PageDetails), где содержится поле content
-        PageDetails pageDetails = xWikiClient.getPageDetails(detailUrl);
+        PageDetails pageDetails = xWikiClient.getPageDetails(detailUrl, version);
         if (pageDetails == null || pageDetails.getContent() == null || pageDetails.getContent().isEmpty()) {
-            log.warn("Поле content пустое для страницы: {}", page.getId());
-            return;
+            log.warn("Поле content пустое для страницы: {}", pageId);
+            countPage("empty");
+            return false;
         }
 
         String content = pageDetails.getContent();
-        log.info(content);
+        // Хеш учитывает модель embedding`ов и параметры нарезки: после их смены страницы переиндексируются
+        String contentHash = Hashing.sha256Hex(llamaAiService.getEmbeddingModel() + '\n'
+                + textPreprocessingService.getChunkingSignature() + '\n' + content);
+        if (contentHash.equals(storedHash)) {
+            log.debug("Содержимое страницы {} не изменилось, пропускаем", pageId);
+            countPage("unchanged");
+            return true;
+        }
+
+        List<String> chunks = textPreprocessingService.preprocess(content);
+        if (chunks.isEmpty()) {
+            log.warn("После удаления разметки на странице {} не осталось текста", pageId);
+            pageEmbeddingRepository.deletePage(pageId);
+            eventPublisher.publishEvent(new PageRemovedEvent(pageId));
+            countPage("empty");
+            return false;
+        }
+        // Фрагменты параллельно обрабатываемых страниц объединяются в общие пакеты запросов к модели
+        List<Embedding> vectors = embeddingBatcher.embedAll(chunks);
+        List<PageChunkEmbedding> embeddings = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            embeddings.add(new PageChunkEmbedding(i, chunks.get(i), Vectors.toFloatArray(vectors.get(i).getOutput())));
+        }
+        pageEmbeddingRepository.replacePage(pageId, pageDetails.getVersion(), pageDetails.getXwikiAbsoluteUrl(),
+                contentHash, llamaAiService.getEmbeddingModel(), embeddings);
+        eventPublisher.publishEvent(new PageIndexedEvent(pageId, embeddings));
+        log.info("Страница {} проиндексирована: фрагментов {}", pageId, embeddings.size());
+        countPage("indexed");
+        return true;
+    }
+
+    /**
+     * Удаляет из индекса страницу, которой больше нет в XWiki.
+     *
+     * @param pageId идентификатор страницы
+     */
+    public void removePage(String pageId) {
+        log.info("Страница {} удалена из XWiki, исключаем её из индекса", pageId);
+        pageEmbeddingRepository.deletePage(pageId);
+        eventPublisher.publishEvent(new PageRemovedEvent(pageId));
+        countPage("removed");
+    }
+
+    private void countPage(String outcome) {
+        meterRegistry.counter("index.pages", "outcome", outcome).increment();
+    }
+
+    /**
+     * Причина ошибки для тега метрики: HTTP-статус ответа или класс исходного исключения
+     */
+    private static String failureCause(Throwable e) {
+        if (e instanceof HttpStatusCodeException statusError) {
+            return "http." + statusError.getStatusCode().value();
+        }
+        Throwable cause = e;
+        while (cause.getCause() != null && cause.getCause() != cause) {
+            cause = cause.getCause();
+        }
+        return cause.getClass().getSimpleName();
+    }
+
+    /**
+     * Дожидается результата задачи обхода. Ошибка одной страницы или пространства
+     * не прерывает обход: она логируется, а вместо результата возвращается null.
+     */
+    private static <T> T await(Future<T> future, String spaceId) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Обход прерван", e);
+        } catch (ExecutionException e) {
+            log.warn("Ошибка обработки в пространстве {}: {}", spaceId, e.getCause().toString());
+            return null;
+        }
+    }
+
+    /**
+     * Состояние обхода одной вики, общее для её пространств и страниц
+     *
+     * @param permits бюджет одновременно обрабатываемых страниц вики
+     */
+    private record CrawlContext(String wiki, ExecutorService executor, CrawlProgress progress,
+                                CrawlCheckpoint checkpoint, Semaphore permits) {
+    }
+
+    /**
+     * Итог обработки пространства вместе с вложенными пространствами
+     */
+    private record SpaceResult(int pages, int skipped, int failed) {
+        static final SpaceResult EMPTY = new SpaceResult(0, 0, 0);
+        static final SpaceResult PAGE = new SpaceResult(1, 0, 0);
+        static final SpaceResult SKIPPED = new SpaceResult(0, 1, 0);
+        static final SpaceResult FAILED = new SpaceResult(0, 0, 1);
 
-        // Нормализуем content, генерируем эмбеддинг и так далее
-//        String normalizedText = textPreprocessingService.preprocess(content);
-//        float[] embedding = embeddingGenerationService.generateEmbedding(normalizedText);
-//        log.info("Embedding: {}", Arrays.toString(embedding));
-        // Если требуется – переходим к следующей странице
+        SpaceResult plus(SpaceResult other) {
+            return new SpaceResult(pages + other.pages, skipped + other.skipped, failed + other.failed);
+        }
     }
 }
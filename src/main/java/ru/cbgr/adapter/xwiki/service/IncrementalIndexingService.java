@@ -0,0 +1,200 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+import ru.cbgr.adapter.xwiki.client.XWikiClient;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.HistorySummary;
+import ru.cbgr.adapter.xwiki.entity.ModificationCursor;
+import ru.cbgr.adapter.xwiki.repository.ModificationCursorRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Инкрементальная переиндексация страниц по изменениям из /modifications.
+ * Изменения копятся в течение окна xwiki.modifications.reindexWindowMs, несколько правок
+ * одной страницы за окно схлопываются в одну переиндексацию её текущей версии.
+ * Страницы, которые XWiki больше не отдаёт (404), исключаются из индекса.
+ * Отметка изменений вики сохраняется только после того, как все изменения до неё переиндексированы:
+ * после перезапуска или смены ведущего экземпляра неприменённые изменения читаются из истории снова.
+ * Страница с ошибкой переиндексации повторяется в следующих окнах, пока не исчерпаны попытки.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class IncrementalIndexingService {
+
+    /**
+     * Сколько окон подряд повторять переиндексацию страницы, прежде чем пропустить изменение
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final XWikiClient xWikiClient;
+    private final EmbeddingsProcessorService embeddingsProcessorService;
+    private final ModificationCursorRepository modificationCursorRepository;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Последнее изменение по каждой странице, ожидающее переиндексации
+     */
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    /**
+     * Отметки, которые будут сохранены после переиндексации изменений, поставленных в очередь до них
+     */
+    private final Map<String, ModificationCursor> unsavedCursors = new HashMap<>();
+    /**
+     * Самое свежее изменение, уже поставленное в очередь, по вики: с него продолжается чтение истории
+     */
+    private final Map<String, ModificationCursor> readCursors = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void registerMetrics() {
+        Gauge.builder("xwiki.modifications.pending", pending, Map::size)
+                .description("Изменённые страницы, ожидающие переиндексации")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Добавляет изменения вики в очередь переиндексации.
+     * Если по странице уже есть изменение в текущем окне, остаётся более позднее.
+     *
+     * @param cursor отметка самого свежего из изменений; сохраняется после их переиндексации
+     * @param modifications изменения в порядке от старых к новым
+     */
+    public synchronized void enqueue(ModificationCursor cursor, List<HistorySummary> modifications) {
+        for (HistorySummary modification : modifications) {
+            if (modification.getPageId() == null) {
+                continue;
+            }
+            pending.merge(modification.getPageId(), new Pending(modification, 0),
+                    (current, candidate) -> candidate.modification().getModified() >= current.modification().getModified()
+                            ? candidate : current);
+        }
+        unsavedCursors.put(cursor.getWiki(), cursor);
+        readCursors.put(cursor.getWiki(), cursor);
+    }
+
+    /**
+     * @return отметка, с которой читать историю вики: поставленная в очередь, иначе сохранённая
+     */
+    public ModificationCursor getReadCursor(String wiki) {
+        ModificationCursor cursor = readCursors.get(wiki);
+        return cursor != null ? cursor : modificationCursorRepository.findById(wiki).orElse(null);
+    }
+
+    /**
+     * Сохраняет отметку вики, для которой нет ожидающих изменений (например, при первом опросе)
+     */
+    public synchronized void saveCursor(ModificationCursor cursor) {
+        readCursors.put(cursor.getWiki(), cursor);
+        if (!unsavedCursors.containsKey(cursor.getWiki())) {
+            save(cursor);
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Переиндексирует страницы, изменённые за прошедшее окно, и сохраняет отметки вики,
+     * все изменения которых применены.
+     */
+    @Scheduled(fixedDelayString = "${xwiki.modifications.reindexWindowMs:10000}")
+    public void flush() {
+        List<Pending> batch;
+        Map<String, ModificationCursor> cursors;
+        synchronized (this) {
+            if (pending.isEmpty() && unsavedCursors.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+            cursors = new HashMap<>(unsavedCursors);
+            unsavedCursors.clear();
+        }
+        log.info("Инкрементальная переиндексация: страниц {}", batch.size());
+        List<Future<Boolean>> results = new ArrayList<>(batch.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Pending item : batch) {
+                results.add(executor.submit(() -> reindex(item.modification())));
+            }
+        }
+        Set<String> wikisWithRetries = new HashSet<>();
+        synchronized (this) {
+            for (int i = 0; i < batch.size(); i++) {
+                Pending item = batch.get(i);
+                if (results.get(i).resultNow()) {
+                    continue;
+                }
+                HistorySummary modification = item.modification();
+                if (item.attempts() + 1 >= MAX_ATTEMPTS) {
+                    log.error("Страница {} (версия {}) не переиндексирована за {} попыток, изменение пропущено",
+                            modification.getPageId(), modification.getVersion(), MAX_ATTEMPTS);
+                    continue;
+                }
+                // Более свежее изменение страницы, пришедшее за время переиндексации, важнее повтора
+                pending.putIfAbsent(modification.getPageId(), new Pending(modification, item.attempts() + 1));
+                wikisWithRetries.add(modification.getWiki());
+            }
+            cursors.forEach((wiki, cursor) -> {
+                if (wikisWithRetries.contains(wiki)) {
+                    unsavedCursors.putIfAbsent(wiki, cursor);
+                } else if (!unsavedCursors.containsKey(wiki)) {
+                    save(cursor);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return false, если страницу нужно переиндексировать повторно
+     */
+    private boolean reindex(HistorySummary modification) {
+        String pageId = modification.getPageId();
+        String pageUrl = xWikiClient.getPageUrl(modification);
+        try {
+            embeddingsProcessorService.indexPage(pageId, pageUrl, modification.getVersion());
+        } catch (HttpClientErrorException.NotFound e) {
+            embeddingsProcessorService.removePage(pageId);
+        } catch (RuntimeException e) {
+            log.warn("Не удалось переиндексировать страницу {} (версия {}): {}", pageId, modification.getVersion(), e.toString());
+            return false;
+        }
+        return true;
+    }
+
+    private void save(ModificationCursor cursor) {
+        try {
+            cursor.setUpdatedAt(Instant.now());
+            modificationCursorRepository.save(cursor);
+        } catch (RuntimeException e) {
+            // Отметка останется прежней: изменения после неё будут прочитаны и переиндексированы повторно
+            log.warn("Не удалось сохранить отметку изменений вики {}: {}", cursor.getWiki(), e.toString());
+        }
+    }
+
+    /**
+     * Изменение, ожидающее переиндексации, и количество уже неудачных попыток
+     */
+    private record Pending(HistorySummary modification, int attempts) {
+    }
+}
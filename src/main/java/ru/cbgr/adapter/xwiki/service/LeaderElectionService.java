@@ -0,0 +1,52 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import org.springframework.stereotype.Service;
+
+import ru.cbgr.adapter.xwiki.configuration.ClusterProperties;
+import ru.cbgr.adapter.xwiki.repository.LeaderLeaseRepository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Выбор единственного экземпляра для роли через аренду в БД.
+ * Владелец продлевает аренду, вызывая {@link #tryAcquire(String)} чаще, чем истекает cluster.leaderLeaseMs;
+ * если он перестал это делать, роль переходит к первому обратившемуся экземпляру.
+ * Без cluster.enabled экземпляр считается единственным и владеет всеми ролями.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class LeaderElectionService {
+
+    public static final String MODIFICATIONS_POLLER = "modifications-poller";
+    public static final String CRAWL_COORDINATOR = "crawl-coordinator";
+    public static final String RECONCILER = "reconciler";
+
+    private final ClusterProperties clusterProperties;
+    private final LeaderLeaseRepository leaderLeaseRepository;
+
+    /**
+     * Занимает или продлевает роль
+     *
+     * @return true, если роль принадлежит этому экземпляру
+     */
+    public boolean tryAcquire(String role) {
+        if (!clusterProperties.isEnabled()) {
+            return true;
+        }
+        try {
+            return leaderLeaseRepository.tryAcquire(role, clusterProperties.getInstanceId(), clusterProperties.getLeaderLeaseMs());
+        } catch (RuntimeException e) {
+            // Без связи с БД роль не подтвердить: лучше пропустить работу, чем выполнить её дважды
+            log.warn("Не удалось продлить роль {}: {}", role, e.toString());
+            return false;
+        }
+    }
+
+    public void release(String role) {
+        if (clusterProperties.isEnabled()) {
+            leaderLeaseRepository.release(role, clusterProperties.getInstanceId());
+        }
+    }
+}
@@ -1,55 +1,238 @@
 package ru.cbgr.adapter.xwiki.service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.springframework.ai.chat.metadata.Usage;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.Embedding;
 import org.springframework.ai.embedding.EmbeddingResponse;
 import org.springframework.ai.ollama.OllamaChatModel;
-import org.springframework.ai.ollama.OllamaEmbeddingModel;
 import org.springframework.ai.ollama.api.OllamaOptions;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import reactor.core.publisher.Flux;
+
+import ru.cbgr.adapter.xwiki.client.OllamaEmbedClient;
+import ru.cbgr.adapter.xwiki.configuration.AiModelProperties;
+import ru.cbgr.adapter.xwiki.resilience.ResilientExecutor;
+import ru.cbgr.adapter.xwiki.util.Vectors;
+
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Запросы к моделям в Ollama. Embedding`и строит отдельная модель (ai.models.embedding)
+ * пакетными запросами к /api/embed, запросы чата направляются в быструю или качественную модель по профилю запроса.
+ * Каждый запрос – наблюдение ai.chat или ai.embedding (таймер с гистограммой и спан с тегом модели),
+ * токены ответов считаются в ai.chat.tokens.
+ */
 @Service
+@Slf4j
 @RequiredArgsConstructor
 public class LlamaAiService { // todo Добавить мапперы
 
-    public static final String MODEL_VERSION = "llama3.2:3b";
-
     private final OllamaChatModel chatModel;
-    private final OllamaEmbeddingModel embeddingModel;
+    private final OllamaEmbedClient ollamaEmbedClient;
+    private final AiModelProperties modelProperties;
+    private final MeterRegistry meterRegistry;
+    private final ResilientExecutor ollamaResilience;
+    private final ObservationRegistry observationRegistry;
+    private final EmbeddingCache embeddingCache;
 
     /**
-     * Отправка запроса в большую языковую модель /api/chat
+     * Отправка запроса в большую языковую модель /api/chat, модель выбирается по длине запроса
      * @param prompt Сообщение (запрос) в LLM
      * @return Ответ от LLM
      */
     public ChatResponse generateResult(String prompt) {
-        ChatResponse response = chatModel.call(
+        return generateResult(prompt, ChatProfile.AUTO);
+    }
+
+    /**
+     * Отправка запроса в большую языковую модель /api/chat
+     * @param prompt Сообщение (запрос) в LLM
+     * @param profile Профиль модели
+     * @return Ответ от LLM
+     */
+    public ChatResponse generateResult(String prompt, ChatProfile profile) {
+        String model = chatModelFor(prompt, profile);
+        ChatResponse response = observation("ai.chat", model).observe(() -> ollamaResilience.call(() -> chatModel.call(
                 new Prompt(
                         prompt,
-                        OllamaOptions.create()
-                                .withModel(MODEL_VERSION)
-                ));
+                        options(model)
+                ))));
+        Usage usage = response.getMetadata() == null ? null : response.getMetadata().getUsage();
+        if (usage != null) {
+            countTokens(model, "prompt", usage.getPromptTokens());
+            countTokens(model, "generation", usage.getGenerationTokens());
+        }
 
         return response;
     }
 
+    public Flux<ChatResponse> streamResult(String prompt) {
+        return streamResult(prompt, ChatProfile.AUTO);
+    }
+
+    /**
+     * Потоковый запрос в большую языковую модель /api/chat: ответ приходит по мере генерации.
+     * Отмена подписки (например, клиент закрыл соединение) закрывает запрос к Ollama,
+     * и модель прекращает генерацию.
+     * Если Ollama недоступна (предохранитель разомкнут), поток сразу завершается ошибкой.
+     * Публикует время до первого токена, скорость генерации и количество отменённых запросов.
+     * @param prompt Сообщение (запрос) в LLM
+     * @param profile Профиль модели
+     * @return Поток частей ответа от LLM
+     */
+    public Flux<ChatResponse> streamResult(String prompt, ChatProfile profile) {
+        String model = chatModelFor(prompt, profile);
+        return Flux.defer(() -> {
+            ollamaResilience.acquireCircuit();
+            long startedAt = System.nanoTime();
+            AtomicLong firstTokenAt = new AtomicLong();
+            AtomicLong tokens = new AtomicLong();
+            return chatModel.stream(
+                            new Prompt(
+                                    prompt,
+                                    options(model)
+                            ))
+                    .doOnNext(response -> {
+                        if (firstTokenAt.compareAndSet(0, System.nanoTime())) {
+                            Timer.builder("ai.chat.stream.first.token")
+                                    .description("Время до первого токена потокового ответа")
+                                    .tag("model", model)
+                                    .publishPercentileHistogram()
+                                    .register(meterRegistry)
+                                    .record(firstTokenAt.get() - startedAt, TimeUnit.NANOSECONDS);
+                        }
+                        tokens.incrementAndGet();
+                    })
+                    .doOnError(ollamaResilience::onFailure)
+                    .doOnComplete(() -> {
+                        ollamaResilience.onSuccess();
+                        countTokens(model, "generation", tokens.get());
+                        long generationNanos = System.nanoTime() - Math.max(firstTokenAt.get(), startedAt);
+                        if (tokens.get() > 1 && generationNanos > 0) {
+                            meterRegistry.summary("ai.chat.stream.tokens.per.second", "model", model)
+                                    .record(tokens.get() * 1e9 / generationNanos);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        ollamaResilience.onCancel();
+                        meterRegistry.counter("ai.chat.stream.cancelled", "model", model).increment();
+                    });
+        });
+    }
+
     /**
      * Получение embedding`ов для входящего текста (векторов текста)
      * @param message Входные данные
      */
     public EmbeddingResponse getEmbeddings(String message) {
-        EmbeddingResponse response = embeddingModel.call(
-                new EmbeddingRequest(
-                        List.of(message),
-                        OllamaOptions.create()
-                                .withModel(MODEL_VERSION)
-                ));
+        return getEmbeddings(List.of(message));
+    }
 
-        return response;
+    /**
+     * Получение embedding`ов для нескольких текстов одним запросом к модели.
+     * Тексты, embedding которых уже есть в {@link EmbeddingCache}, в модель не отправляются.
+     * Результаты возвращаются в порядке входных текстов.
+     * @param messages Входные данные
+     */
+    public EmbeddingResponse getEmbeddings(List<String> messages) {
+        List<float[]> vectors = embeddingCache.getAll(getEmbeddingModel(), messages, this::embed);
+        List<Embedding> embeddings = new ArrayList<>(vectors.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            embeddings.add(new Embedding(Vectors.toDoubleList(vectors.get(i)), i));
+        }
+
+        return new EmbeddingResponse(embeddings);
+    }
+
+    /**
+     * Модель, которой строятся embedding`и страниц и запросов
+     */
+    public String getEmbeddingModel() {
+        return modelProperties.getEmbedding();
+    }
+
+    /**
+     * Загружает модели в Ollama после старта приложения, в фоне: первый запрос пользователя
+     * не ждёт загрузки модели, а keep_alive в запросах не даёт Ollama её выгрузить.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!modelProperties.isWarmUp()) {
+            return;
+        }
+        Thread.ofVirtual().name("model-warm-up").start(() -> {
+            warmUp(getEmbeddingModel(), () -> ollamaEmbedClient.embed(getEmbeddingModel(), List.of("warm-up"),
+                    modelProperties.getKeepAlive()));
+            Set<String> chatModels = new LinkedHashSet<>(List.of(modelProperties.getChatFast(), modelProperties.getChatQuality()));
+            for (String model : chatModels) {
+                warmUp(model, () -> chatModel.call(new Prompt("ping", options(model).withNumPredict(1))));
+            }
+        });
+    }
+
+    String chatModelFor(String prompt, ChatProfile profile) {
+        return switch (profile) {
+            case FAST -> modelProperties.getChatFast();
+            case QUALITY -> modelProperties.getChatQuality();
+            case AUTO -> prompt.length() > modelProperties.getQualityPromptChars()
+                    ? modelProperties.getChatQuality()
+                    : modelProperties.getChatFast();
+        };
+    }
+
+    private void warmUp(String model, Runnable request) {
+        long startedAt = System.nanoTime();
+        try {
+            request.run();
+            long elapsedNanos = System.nanoTime() - startedAt;
+            meterRegistry.timer("ai.model.warm.up", "model", model).record(elapsedNanos, TimeUnit.NANOSECONDS);
+            log.info("Модель {} загружена в Ollama за {} мс", model, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        } catch (RuntimeException e) {
+            log.warn("Не удалось загрузить модель {} в Ollama: {}", model, e.toString());
+        }
+    }
+
+    /**
+     * Все тексты отправляются одним запросом к /api/embed
+     */
+    private List<float[]> embed(List<String> messages) {
+        String model = getEmbeddingModel();
+        List<float[]> vectors = observation("ai.embedding", model).observe(() -> ollamaResilience.call(
+                () -> ollamaEmbedClient.embed(model, messages, modelProperties.getKeepAlive())));
+        meterRegistry.summary("ai.embedding.texts", "model", model).record(messages.size());
+        return vectors;
+    }
+
+    private OllamaOptions options(String model) {
+        return OllamaOptions.create()
+                .withModel(model)
+                .withKeepAlive(modelProperties.getKeepAlive());
+    }
+
+    private Observation observation(String name, String model) {
+        return Observation.createNotStarted(name, observationRegistry)
+                .lowCardinalityKeyValue("model", model);
+    }
+
+    private void countTokens(String model, String type, Long count) {
+        if (count != null && count > 0) {
+            meterRegistry.counter("ai.chat.tokens", "model", model, "type", type).increment(count);
+        }
     }
 }
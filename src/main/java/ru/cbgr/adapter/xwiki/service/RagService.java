@@ -0,0 +1,113 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import ru.cbgr.adapter.xwiki.configuration.RagProperties;
+import ru.cbgr.adapter.xwiki.dto.ai.RagResponse;
+import ru.cbgr.adapter.xwiki.dto.ai.RagSource;
+import ru.cbgr.adapter.xwiki.dto.search.SearchResult;
+
+/**
+ * Генерация ответа с опорой на содержимое XWiki (retrieval-augmented generation):
+ * ищет фрагменты страниц, близкие к вопросу, собирает из них контекст в пределах
+ * бюджета токенов и передаёт модели вместе с вопросом.
+ */
+@Service
+public class RagService {
+
+    private static final String PROMPT_TEMPLATE = """
+            Ответь на вопрос пользователя, опираясь только на фрагменты базы знаний ниже.
+            Если в фрагментах нет ответа, так и скажи.
+
+            Фрагменты базы знаний:
+            %s
+            Вопрос: %s
+            """;
+
+    private final SemanticSearchService semanticSearchService;
+    private final LlamaAiService llamaAiService;
+    private final RagProperties properties;
+    private final Timer retrievalTimer;
+    private final Timer generationTimer;
+
+    public RagService(SemanticSearchService semanticSearchService, LlamaAiService llamaAiService,
+                      RagProperties properties, MeterRegistry meterRegistry) {
+        this.semanticSearchService = semanticSearchService;
+        this.llamaAiService = llamaAiService;
+        this.properties = properties;
+        this.retrievalTimer = Timer.builder("ai.rag.retrieval")
+                .description("Время поиска фрагментов и сборки запроса к модели")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.generationTimer = Timer.builder("ai.rag.generation")
+                .description("Время ответа модели на запрос с контекстом")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param question вопрос пользователя
+     * @return ответ качественной модели и страницы, на которые он опирается
+     */
+    public RagResponse generate(String question) {
+        return generate(question, ChatProfile.QUALITY);
+    }
+
+    /**
+     * @param question вопрос пользователя
+     * @param profile профиль модели чата
+     * @return ответ модели и страницы, на которые он опирается
+     */
+    public RagResponse generate(String question, ChatProfile profile) {
+        long startedAt = System.nanoTime();
+        Map<String, RagSource> sources = new LinkedHashMap<>();
+        String prompt = buildPrompt(question, sources);
+        long retrievalNanos = System.nanoTime() - startedAt;
+        retrievalTimer.record(retrievalNanos, TimeUnit.NANOSECONDS);
+
+        long generationStartedAt = System.nanoTime();
+        ChatResponse response = llamaAiService.generateResult(prompt, profile);
+        long generationNanos = System.nanoTime() - generationStartedAt;
+        generationTimer.record(generationNanos, TimeUnit.NANOSECONDS);
+
+        return RagResponse.builder()
+                .answer(response.getResult().getOutput().getContent())
+                .sources(List.copyOf(sources.values()))
+                .retrievalMs(TimeUnit.NANOSECONDS.toMillis(retrievalNanos))
+                .generationMs(TimeUnit.NANOSECONDS.toMillis(generationNanos))
+                .build();
+    }
+
+    /**
+     * Собирает запрос к модели из самых близких фрагментов, пока они помещаются в бюджет контекста.
+     *
+     * @param sources сюда добавляются страницы фрагментов, вошедших в контекст
+     */
+    public String buildPrompt(String question, Map<String, RagSource> sources) {
+        List<SearchResult> results = semanticSearchService.search(question, properties.getTopK());
+        int budgetChars = (int) (properties.getMaxContextTokens() * properties.getCharsPerToken());
+        StringBuilder context = new StringBuilder();
+        for (SearchResult result : results) {
+            String block = "[" + result.pageId() + "]\n" + result.content() + "\n\n";
+            if (context.length() + block.length() > budgetChars) {
+                if (context.isEmpty()) {
+                    context.append(block, 0, budgetChars);
+                    sources.putIfAbsent(result.pageId(), new RagSource(result.pageId(), result.pageUrl(), result.score()));
+                }
+                break;
+            }
+            context.append(block);
+            sources.putIfAbsent(result.pageId(), new RagSource(result.pageId(), result.pageUrl(), result.score()));
+        }
+        return PROMPT_TEMPLATE.formatted(context, question);
+    }
+}
@@ -0,0 +1,54 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.time.Instant;
+
+import ru.cbgr.adapter.xwiki.dto.job.CrawlJobState;
+import ru.cbgr.adapter.xwiki.dto.job.ReconcileJobStatus;
+import ru.cbgr.adapter.xwiki.dto.job.ReconcileResult;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Задача сверки индекса с XWiki, выполняемая в фоне
+ */
+@Getter
+@RequiredArgsConstructor
+public class ReconcileJob {
+
+    private final String id;
+    private final Instant submittedAt = Instant.now();
+    private volatile CrawlJobState state = CrawlJobState.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile ReconcileResult result;
+    private volatile String error;
+
+    void markRunning() {
+        startedAt = Instant.now();
+        state = CrawlJobState.RUNNING;
+    }
+
+    void markFinished(ReconcileResult result, Throwable failure) {
+        this.result = result;
+        finishedAt = Instant.now();
+        if (failure != null) {
+            error = failure.toString();
+            state = CrawlJobState.FAILED;
+        } else {
+            state = CrawlJobState.COMPLETED;
+        }
+    }
+
+    public ReconcileJobStatus toStatus() {
+        return ReconcileJobStatus.builder()
+                .id(id)
+                .state(state)
+                .submittedAt(submittedAt)
+                .startedAt(startedAt)
+                .finishedAt(finishedAt)
+                .result(result)
+                .error(error)
+                .build();
+    }
+}
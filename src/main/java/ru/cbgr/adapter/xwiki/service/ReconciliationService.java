@@ -0,0 +1,326 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import ru.cbgr.adapter.xwiki.client.XWikiClient;
+import ru.cbgr.adapter.xwiki.configuration.CrawlProperties;
+import ru.cbgr.adapter.xwiki.dto.job.ReconcileResult;
+import ru.cbgr.adapter.xwiki.dto.xwiki.SpacesResponse;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.LinkRelation;
+import ru.cbgr.adapter.xwiki.dto.xwiki.page.PageSummary;
+import ru.cbgr.adapter.xwiki.dto.xwiki.space.Space;
+import ru.cbgr.adapter.xwiki.repository.PageEmbeddingRepository;
+import ru.cbgr.adapter.xwiki.repository.SpaceFingerprintRepository;
+import ru.cbgr.adapter.xwiki.util.Hashing;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Сверка индекса с XWiki: находит удалённые и переименованные страницы и пространства,
+ * которых не видно в истории изменений, без полного обхода.
+ * Для каждого пространства по списку страниц считается отпечаток – SHA-256 по id и версиям страниц.
+ * Если отпечаток совпал с сохранённым при прошлой сверке, пространство пропускается; иначе список
+ * сравнивается с версиями в индексе: новые и изменённые страницы индексируются, отсутствующие в XWiki
+ * исключаются из индекса. Содержимое (PageDetails) запрашивается только для новых и изменённых страниц,
+ * поэтому сверка неизменившейся вики стоит по одному запросу списка страниц на пространство.
+ * Сверка выполняется в фоне как задача ({@link ReconcileJob}); одновременно идёт не больше одной,
+ * а при нескольких экземплярах – только на владельце роли {@link LeaderElectionService#RECONCILER}.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ReconciliationService {
+
+    private final XWikiClient xWikiClient;
+    private final WikiDirectory wikiDirectory;
+    private final CrawlProperties crawlProperties;
+    private final EmbeddingsProcessorService embeddingsProcessorService;
+    private final PageEmbeddingRepository pageEmbeddingRepository;
+    private final SpaceFingerprintRepository spaceFingerprintRepository;
+    private final LeaderElectionService leaderElectionService;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Последняя задача сверки
+     */
+    private volatile ReconcileJob lastJob;
+
+    /**
+     * Запускает сверку в фоне.
+     *
+     * @return новая задача или уже выполняющаяся задача сверки
+     */
+    public synchronized ReconcileJob submit() {
+        ReconcileJob current = lastJob;
+        if (current != null && !current.getState().isFinished()) {
+            log.info("Сверка уже выполняется, возвращаем задачу {}", current.getId());
+            return current;
+        }
+        ReconcileJob job = new ReconcileJob(UUID.randomUUID().toString());
+        lastJob = job;
+        Thread.ofVirtual().name("reconcile-job").start(() -> run(job));
+        return job;
+    }
+
+    public Optional<ReconcileJob> find(String jobId) {
+        ReconcileJob job = lastJob;
+        return job != null && job.getId().equals(jobId) ? Optional.of(job) : Optional.empty();
+    }
+
+    private void run(ReconcileJob job) {
+        if (!leaderElectionService.tryAcquire(LeaderElectionService.RECONCILER)) {
+            log.info("Сверку выполняет другой экземпляр, задача {} не запущена", job.getId());
+            job.markFinished(null, new IllegalStateException("Сверку выполняет другой экземпляр"));
+            return;
+        }
+        job.markRunning();
+        log.info("Задача сверки {} запущена", job.getId());
+        try {
+            job.markFinished(reconcile(), null);
+        } catch (RuntimeException e) {
+            log.error("Задача сверки {} завершилась ошибкой", job.getId(), e);
+            job.markFinished(null, e);
+        } finally {
+            leaderElectionService.release(LeaderElectionService.RECONCILER);
+        }
+    }
+
+    /**
+     * Сверяет все вики фермы. Ошибка одной вики не прерывает сверку остальных.
+     */
+    private ReconcileResult reconcile() {
+        Tally tally = new Tally();
+        Timer.Sample sample = Timer.start(meterRegistry);
+        for (String wiki : wikiDirectory.getWikiIds()) {
+            renewRole();
+            try {
+                reconcileWiki(wiki, tally);
+            } catch (RuntimeException e) {
+                log.warn("Не удалось сверить вики {}: {}", wiki, e.toString());
+                tally.failed.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Сверка прервана на вики {}", wiki);
+                break;
+            }
+        }
+        sample.stop(meterRegistry.timer("reconcile.duration"));
+        ReconcileResult result = tally.toResult();
+        log.info("Сверка завершена: {}", result);
+        return result;
+    }
+
+    private void reconcileWiki(String wiki, Tally tally) throws InterruptedException {
+        SpacesResponse response = xWikiClient.getSpaces(wiki);
+        if (response == null || response.getSpaces() == null) {
+            // Без списка пространств нельзя отличить удалённое пространство от недоступного
+            throw new IllegalStateException("XWiki не вернула список пространств");
+        }
+        List<Space> spaces = new ArrayList<>();
+        flatten(response.getSpaces(), spaces);
+        Map<String, String> fingerprints = spaceFingerprintRepository.findAll(wiki);
+        Map<String, Map<String, String>> indexed = groupBySpace(pageEmbeddingRepository.findVersions(wiki));
+
+        Semaphore permits = new Semaphore(crawlProperties.getMaxConcurrencyPerWiki());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Space space : spaces) {
+                permits.acquire();
+                renewRole();
+                executor.submit(() -> {
+                    try {
+                        reconcileSpace(wiki, space, fingerprints.get(space.getId()),
+                                indexed.getOrDefault(space.getId(), Map.of()), tally);
+                    } catch (RuntimeException e) {
+                        log.warn("Не удалось сверить пространство {}: {}", space.getId(), e.toString());
+                        tally.failed.incrementAndGet();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+
+        Set<String> removed = new HashSet<>(indexed.keySet());
+        removed.addAll(fingerprints.keySet());
+        spaces.forEach(space -> removed.remove(space.getId()));
+        for (String spaceId : removed) {
+            log.info("Пространства {} больше нет в XWiki", spaceId);
+            indexed.getOrDefault(spaceId, Map.of()).keySet().forEach(pageId -> removePage(pageId, tally));
+            spaceFingerprintRepository.delete(wiki, spaceId);
+            tally.spacesRemoved.incrementAndGet();
+            countSpace("removed");
+        }
+    }
+
+    /**
+     * Продлевает роль сверки; если она перешла к другому экземпляру, сверка прекращается,
+     * не дойдя до удаления страниц из индекса
+     */
+    private void renewRole() {
+        if (!leaderElectionService.tryAcquire(LeaderElectionService.RECONCILER)) {
+            throw new IllegalStateException("Роль сверки перешла к другому экземпляру");
+        }
+    }
+
+    private void reconcileSpace(String wiki, Space space, String storedFingerprint,
+                                Map<String, String> indexedVersions, Tally tally) {
+        String pagesUrl = space.getLinks() == null ? null : space.getLinks().href(LinkRelation.PAGES);
+        if (pagesUrl == null) {
+            log.warn("Нет ссылки на страницы для пространства: {}", space.getId());
+            return;
+        }
+        Map<String, PageSummary> pages = listPages(pagesUrl);
+        tally.spacesChecked.incrementAndGet();
+        Map<String, String> versions = new HashMap<>();
+        pages.forEach((pageId, page) -> versions.put(pageId, page.getVersion()));
+        String fingerprint = fingerprint(versions);
+        if (fingerprint.equals(storedFingerprint)) {
+            countSpace("unchanged");
+            return;
+        }
+        log.info("Отпечаток пространства {} изменился, сверяем страницы", space.getId());
+        tally.spacesChanged.incrementAndGet();
+        countSpace("changed");
+
+        int failures = 0;
+        for (PageSummary page : pages.values()) {
+            if (Objects.equals(page.getVersion(), indexedVersions.get(page.getId()))) {
+                continue;
+            }
+            String detailUrl = page.getLinks() == null ? null : page.getLinks().href(LinkRelation.PAGE);
+            try {
+                if (detailUrl == null) {
+                    throw new IllegalStateException("нет ссылки на страницу");
+                }
+                embeddingsProcessorService.indexPage(page.getId(), detailUrl, page.getVersion());
+                tally.pagesIndexed.incrementAndGet();
+            } catch (RuntimeException e) {
+                log.warn("Не удалось переиндексировать страницу {}: {}", page.getId(), e.toString());
+                failures++;
+            }
+        }
+        for (String pageId : indexedVersions.keySet()) {
+            if (!pages.containsKey(pageId)) {
+                removePage(pageId, tally);
+            }
+        }
+        if (failures == 0) {
+            spaceFingerprintRepository.save(wiki, space.getId(), fingerprint, pages.size());
+        } else {
+            // Отпечаток не сохраняется: следующая сверка повторит страницы с ошибками
+            tally.failed.addAndGet(failures);
+        }
+    }
+
+    /**
+     * Список страниц пространства порциями по xwiki.crawl.pageListSize
+     */
+    private Map<String, PageSummary> listPages(String pagesUrl) {
+        Map<String, PageSummary> pages = new HashMap<>();
+        int pageSize = crawlProperties.getPageListSize();
+        for (int start = 0; ; start += pageSize) {
+            int count = xWikiClient.streamPages(pagesUrl, start, pageSize, page -> pages.put(page.getId(), page));
+            if (count < pageSize) {
+                return pages;
+            }
+        }
+    }
+
+    private void removePage(String pageId, Tally tally) {
+        embeddingsProcessorService.removePage(pageId);
+        tally.pagesRemoved.incrementAndGet();
+    }
+
+    private void countSpace(String result) {
+        meterRegistry.counter("reconcile.spaces", "result", result).increment();
+    }
+
+    private static void flatten(List<Space> spaces, List<Space> result) {
+        for (Space space : spaces) {
+            result.add(space);
+            if (space.getSpaces() != null) {
+                flatten(space.getSpaces(), result);
+            }
+        }
+    }
+
+    private static Map<String, Map<String, String>> groupBySpace(Map<String, String> versions) {
+        Map<String, Map<String, String>> result = new HashMap<>();
+        versions.forEach((pageId, version) -> {
+            String spaceId = spaceOf(pageId);
+            if (spaceId != null) {
+                result.computeIfAbsent(spaceId, id -> new HashMap<>()).put(pageId, version);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Отпечаток списка страниц: SHA-256 по парам id и версия, упорядоченным по id
+     */
+    static String fingerprint(Map<String, String> versions) {
+        MessageDigest digest = Hashing.sha256();
+        new TreeMap<>(versions).forEach((pageId, version) -> {
+            digest.update(pageId.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\t');
+            digest.update(String.valueOf(version).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        });
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Пространство страницы по её id: всё до последней неэкранированной точки.
+     * Например, xwiki:A.B.WebHome → xwiki:A.B; точка в имени страницы экранируется как \.
+     *
+     * @return id пространства или null, если в id страницы нет пространства
+     */
+    static String spaceOf(String pageId) {
+        int separator = -1;
+        for (int i = 0; i < pageId.length(); i++) {
+            char c = pageId.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '.') {
+                separator = i;
+            }
+        }
+        return separator < 0 ? null : pageId.substring(0, separator);
+    }
+
+    private static class Tally {
+        private final AtomicInteger spacesChecked = new AtomicInteger();
+        private final AtomicInteger spacesChanged = new AtomicInteger();
+        private final AtomicInteger spacesRemoved = new AtomicInteger();
+        private final AtomicInteger pagesIndexed = new AtomicInteger();
+        private final AtomicInteger pagesRemoved = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        ReconcileResult toResult() {
+            return new ReconcileResult(spacesChecked.get(), spacesChanged.get(), spacesRemoved.get(),
+                    pagesIndexed.get(), pagesRemoved.get(), failed.get());
+        }
+    }
+}
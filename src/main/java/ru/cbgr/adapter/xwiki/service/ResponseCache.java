@@ -0,0 +1,287 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import ru.cbgr.adapter.xwiki.configuration.ResponseCacheProperties;
+import ru.cbgr.adapter.xwiki.dto.ai.RagResponse;
+import ru.cbgr.adapter.xwiki.dto.ai.RagSource;
+import ru.cbgr.adapter.xwiki.dto.embedding.PageChunkEmbedding;
+import ru.cbgr.adapter.xwiki.events.PageIndexedEvent;
+import ru.cbgr.adapter.xwiki.events.PageRemovedEvent;
+import ru.cbgr.adapter.xwiki.util.Hashing;
+import ru.cbgr.adapter.xwiki.util.Vectors;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Кеш ответов модели: повторный вопрос отдаётся без обращения к модели.
+ * Запрос ищется сначала по SHA-256 нормализованного текста, затем – по косинусной близости
+ * его embedding`а к закешированным запросам той же области (не ниже similarityThreshold).
+ * Ответ, построенный по фрагментам XWiki, удаляется из кеша, когда меняется или удаляется
+ * страница-источник, а также когда проиндексирована страница, фрагмент которой попал бы
+ * в контекст ответа (близость к запросу не ниже, чем у источников ответа).
+ * Ответ не кешируется, если за время его генерации проиндексирована или удалена страница,
+ * которая сделала бы его устаревшим по тем же правилам.
+ * Размер и время жизни ограничены (Caffeine), ответы без опоры на XWiki живут до истечения TTL.
+ */
+@Component
+@Slf4j
+public class ResponseCache {
+
+    private final ResponseCacheProperties properties;
+    private final EmbeddingBatcher embeddingBatcher;
+    private final Cache<String, Entry> entries;
+    private final Counter exactHits;
+    private final Counter semanticHits;
+    private final Counter misses;
+    private final Counter invalidated;
+    /**
+     * Генерируемые сейчас ответы: изменения индекса за время генерации проверяются перед записью в кеш
+     */
+    private final Set<Generation> generations = ConcurrentHashMap.newKeySet();
+
+    public ResponseCache(ResponseCacheProperties properties, EmbeddingBatcher embeddingBatcher,
+                         MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.embeddingBatcher = embeddingBatcher;
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxEntries())
+                .expireAfterWrite(Duration.ofMillis(properties.getTtlMs()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, "ai.response.cache");
+        this.exactHits = requests(meterRegistry, "exact");
+        this.semanticHits = requests(meterRegistry, "semantic");
+        this.misses = requests(meterRegistry, "miss");
+        this.invalidated = Counter.builder("ai.response.cache.invalidated")
+                .description("Ответы, удалённые из кеша из-за изменения страниц XWiki")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Возвращает закешированный ответ на такой же или близкий по смыслу запрос либо генерирует новый.
+     *
+     * @param scope область кеша: ответы разных областей (RAG или нет, профиль модели) не смешиваются
+     * @param prompt запрос пользователя
+     * @param generator генерация ответа при промахе
+     * @param dependencies страницы XWiki, от которых зависит ответ
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String scope, String prompt, Supplier<T> generator, Function<? super T, Dependencies> dependencies) {
+        if (!properties.isEnabled()) {
+            return generator.get();
+        }
+        String text = EmbeddingCache.normalize(prompt);
+        String key = scope + '\n' + Hashing.sha256Hex(text);
+        Entry cached = entries.getIfPresent(key);
+        if (cached != null) {
+            exactHits.increment();
+            return (T) hit(cached.value());
+        }
+        float[] embedding = properties.getSimilarityThreshold() <= 1 ? embed(text) : null;
+        if (embedding != null) {
+            Entry similar = findSimilar(scope, embedding);
+            if (similar != null) {
+                semanticHits.increment();
+                return (T) hit(similar.value());
+            }
+        }
+        misses.increment();
+
+        Generation generation = new Generation();
+        generations.add(generation);
+        try {
+            T value = generator.get();
+            Entry entry = new Entry(scope, embedding, value, dependencies.apply(value));
+            if (!entry.dependencies().dependsOnWiki() || !generation.invalidates(entry)) {
+                entries.put(key, entry);
+            }
+            generations.remove(generation);
+            // Изменение между проверкой и записью могло не застать запись в кеше
+            if (entry.dependencies().dependsOnWiki() && generation.invalidates(entry)) {
+                entries.asMap().remove(key, entry);
+            }
+            return value;
+        } finally {
+            generations.remove(generation);
+        }
+    }
+
+    @EventListener
+    public void onPageIndexed(PageIndexedEvent event) {
+        if (entries.estimatedSize() == 0 && generations.isEmpty()) {
+            return;
+        }
+        List<float[]> chunks = new ArrayList<>(event.chunks().size());
+        for (PageChunkEmbedding chunk : event.chunks()) {
+            chunks.add(Vectors.normalize(chunk.embedding()));
+        }
+        onIndexChange(new IndexChange(event.pageId(), chunks));
+    }
+
+    @EventListener
+    public void onPageRemoved(PageRemovedEvent event) {
+        if (entries.estimatedSize() == 0 && generations.isEmpty()) {
+            return;
+        }
+        onIndexChange(new IndexChange(event.pageId(), List.of()));
+    }
+
+    private void onIndexChange(IndexChange change) {
+        generations.forEach(generation -> generation.changes().add(change));
+        if (entries.estimatedSize() > 0) {
+            invalidate(change::makesStale);
+        }
+    }
+
+    /**
+     * Ответ из кеша: у ответа RAG время поиска и генерации обнуляется, так как в этом запросе их не было
+     */
+    private static Object hit(Object value) {
+        if (value instanceof RagResponse response) {
+            return response.toBuilder()
+                    .retrievalMs(0)
+                    .generationMs(0)
+                    .cached(true)
+                    .build();
+        }
+        return value;
+    }
+
+    private void invalidate(Predicate<Entry> stale) {
+        int removed = 0;
+        for (var iterator = entries.asMap().values().iterator(); iterator.hasNext(); ) {
+            Entry entry = iterator.next();
+            if (entry.dependencies().dependsOnWiki() && stale.test(entry)) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            invalidated.increment(removed);
+            log.debug("Из кеша ответов удалено записей: {}", removed);
+        }
+    }
+
+    private Entry findSimilar(String scope, float[] embedding) {
+        Entry best = null;
+        float bestSimilarity = (float) properties.getSimilarityThreshold();
+        for (Entry entry : entries.asMap().values()) {
+            if (entry.embedding() == null || !entry.scope().equals(scope)) {
+                continue;
+            }
+            float similarity = Vectors.dot(entry.embedding(), embedding);
+            if (similarity >= bestSimilarity) {
+                best = entry;
+                bestSimilarity = similarity;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return нормированный embedding запроса или null, если модель embedding`ов недоступна
+     */
+    private float[] embed(String text) {
+        try {
+            return Vectors.normalize(Vectors.toFloatArray(embeddingBatcher.embed(text).join().getOutput()));
+        } catch (RuntimeException e) {
+            log.warn("Не удалось получить embedding запроса для кеша ответов: {}", e.toString());
+            return null;
+        }
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("ai.response.cache.requests")
+                .description("Запросы к кешу ответов: точное совпадение, близкий запрос или промах")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Страницы XWiki, от которых зависит ответ
+     *
+     * @param pageIds страницы-источники ответа
+     * @param minScore наименьшая близость источника к запросу; NaN – ответ не зависит от XWiki
+     */
+    public record Dependencies(Set<String> pageIds, float minScore) {
+
+        public static final Dependencies NONE = new Dependencies(Set.of(), Float.NaN);
+
+        /**
+         * Зависимости ответа RAG; ответ без источников устаревает при индексации любой страницы
+         */
+        public static Dependencies of(List<RagSource> sources) {
+            float minScore = (float) sources.stream().mapToDouble(RagSource::score).min().orElse(-1);
+            return new Dependencies(sources.stream().map(RagSource::pageId).collect(Collectors.toUnmodifiableSet()),
+                    minScore);
+        }
+
+        boolean dependsOnWiki() {
+            return !Float.isNaN(minScore);
+        }
+    }
+
+    /**
+     * Проиндексированная (chunks – нормированные векторы её фрагментов) или удалённая страница
+     */
+    private record IndexChange(String pageId, List<float[]> chunks) {
+
+        boolean makesStale(Entry entry) {
+            return entry.dependencies().pageIds().contains(pageId) || !chunks.isEmpty() && entry.couldRetrieve(chunks);
+        }
+    }
+
+    /**
+     * Изменения индекса, произошедшие за время генерации одного ответа.
+     * Класс, а не record: в множестве генераций нужно равенство по ссылке
+     */
+    private static final class Generation {
+
+        private final List<IndexChange> changes = new CopyOnWriteArrayList<>();
+
+        List<IndexChange> changes() {
+            return changes;
+        }
+
+        boolean invalidates(Entry entry) {
+            return changes.stream().anyMatch(change -> change.makesStale(entry));
+        }
+    }
+
+    private record Entry(String scope, float[] embedding, Object value, Dependencies dependencies) {
+
+        /**
+         * Попал бы хоть один из фрагментов в контекст ответа, если бы был проиндексирован до запроса
+         */
+        boolean couldRetrieve(List<float[]> chunks) {
+            if (embedding == null) {
+                return true;
+            }
+            for (float[] chunk : chunks) {
+                if (Vectors.dot(embedding, chunk) >= dependencies.minScore()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
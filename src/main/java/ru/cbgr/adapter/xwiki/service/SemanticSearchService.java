@@ -0,0 +1,236 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import ru.cbgr.adapter.xwiki.configuration.AiModelProperties;
+import ru.cbgr.adapter.xwiki.configuration.SearchProperties;
+import ru.cbgr.adapter.xwiki.dto.embedding.PageChunkEmbedding;
+import ru.cbgr.adapter.xwiki.dto.embedding.StoredChunk;
+import ru.cbgr.adapter.xwiki.dto.search.SearchResult;
+import ru.cbgr.adapter.xwiki.events.PageIndexedEvent;
+import ru.cbgr.adapter.xwiki.events.PageRemovedEvent;
+import ru.cbgr.adapter.xwiki.index.HnswIndex;
+import ru.cbgr.adapter.xwiki.repository.PageEmbeddingRepository;
+import ru.cbgr.adapter.xwiki.util.Vectors;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Семантический поиск по фрагментам страниц.
+ * Индекс HNSW строится в памяти из сохранённых embedding`ов при старте и обновляется
+ * по событиям индексации и удаления страниц. Если удалённых узлов в графе становится больше,
+ * чем живых, индекс перестраивается в фоне.
+ * В индекс попадают только векторы настроенной модели embedding`ов: после смены модели поиск
+ * видит страницы по мере их переиндексации, а полный обход переиндексирует остальные.
+ */
+@Service
+@Slf4j
+public class SemanticSearchService {
+
+    private final EmbeddingBatcher embeddingBatcher;
+    private final PageEmbeddingRepository pageEmbeddingRepository;
+    private final AiModelProperties modelProperties;
+    private final SearchProperties properties;
+    private final Timer lookupTimer;
+
+    /**
+     * Количество фрагментов каждой проиндексированной страницы – чтобы удалять из индекса лишние фрагменты
+     */
+    private final Map<String, Integer> chunkCountByPage = new ConcurrentHashMap<>();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private volatile HnswIndex index;
+    /**
+     * Индекс, который строится в фоне; пока он не готов, изменения применяются к обоим.
+     * Защищён buildLock вместе с changedDuringBuild
+     */
+    private HnswIndex building;
+    /**
+     * Ключи фрагментов, изменённые событиями во время построения: прочитанные из БД строки
+     * по ним устарели и в строящийся индекс не записываются
+     */
+    private final Set<String> changedDuringBuild = new HashSet<>();
+    private final Object buildLock = new Object();
+
+    public SemanticSearchService(EmbeddingBatcher embeddingBatcher, PageEmbeddingRepository pageEmbeddingRepository,
+                                 AiModelProperties modelProperties, SearchProperties properties,
+                                 MeterRegistry meterRegistry) {
+        this.embeddingBatcher = embeddingBatcher;
+        this.pageEmbeddingRepository = pageEmbeddingRepository;
+        this.modelProperties = modelProperties;
+        this.properties = properties;
+        this.index = newIndex();
+        this.lookupTimer = Timer.builder("wiki.search.lookup")
+                .description("Время поиска ближайших фрагментов в индексе")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("wiki.search.index.size", this, service -> service.index.size())
+                .description("Количество фрагментов в индексе поиска")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuildInBackground();
+    }
+
+    /**
+     * Ищет фрагменты, ближайшие по смыслу к запросу.
+     *
+     * @param query текст запроса
+     * @param limit количество результатов
+     * @return фрагменты от самого близкого
+     */
+    public List<SearchResult> search(String query, int limit) {
+        float[] queryVector = Vectors.toFloatArray(embeddingBatcher.embed(query).join().getOutput());
+        return search(queryVector, limit);
+    }
+
+    /**
+     * Ищет фрагменты, ближайшие к уже посчитанному вектору запроса.
+     */
+    public List<SearchResult> search(float[] queryVector, int limit) {
+        List<HnswIndex.Hit> hits = lookupTimer.record(
+                () -> index.search(queryVector, limit, Math.max(properties.getEfSearch(), limit)));
+        List<String> pageIds = new ArrayList<>(hits.size());
+        List<Integer> chunkIndexes = new ArrayList<>(hits.size());
+        for (HnswIndex.Hit hit : hits) {
+            int separator = hit.key().lastIndexOf('#');
+            pageIds.add(hit.key().substring(0, separator));
+            chunkIndexes.add(Integer.parseInt(hit.key().substring(separator + 1)));
+        }
+        Map<String, StoredChunk> chunks = new HashMap<>();
+        for (StoredChunk chunk : pageEmbeddingRepository.findChunks(pageIds, chunkIndexes)) {
+            chunks.put(key(chunk.pageId(), chunk.chunkIndex()), chunk);
+        }
+        List<SearchResult> results = new ArrayList<>(hits.size());
+        for (HnswIndex.Hit hit : hits) {
+            StoredChunk chunk = chunks.get(hit.key());
+            if (chunk != null) {
+                results.add(new SearchResult(chunk.pageId(), chunk.chunkIndex(), chunk.pageUrl(), hit.score(),
+                        chunk.content()));
+            }
+        }
+        return results;
+    }
+
+    @EventListener
+    public void onPageIndexed(PageIndexedEvent event) {
+        for (PageChunkEmbedding chunk : event.chunks()) {
+            put(key(event.pageId(), chunk.chunkIndex()), chunk.embedding());
+        }
+        Integer previousCount = chunkCountByPage.put(event.pageId(), event.chunks().size());
+        if (previousCount != null && previousCount > event.chunks().size()) {
+            for (int i = event.chunks().size(); i < previousCount; i++) {
+                remove(key(event.pageId(), i));
+            }
+        }
+        rebuildIfFragmented();
+    }
+
+    @EventListener
+    public void onPageRemoved(PageRemovedEvent event) {
+        Integer count = chunkCountByPage.remove(event.pageId());
+        if (count != null) {
+            for (int i = 0; i < count; i++) {
+                remove(key(event.pageId(), i));
+            }
+        }
+        rebuildIfFragmented();
+    }
+
+    private void put(String key, float[] vector) {
+        index.put(key, vector);
+        synchronized (buildLock) {
+            if (building != null) {
+                changedDuringBuild.add(key);
+                building.put(key, vector);
+            }
+        }
+    }
+
+    private void remove(String key) {
+        index.remove(key);
+        synchronized (buildLock) {
+            if (building != null) {
+                changedDuringBuild.add(key);
+                building.remove(key);
+            }
+        }
+    }
+
+    private void rebuildIfFragmented() {
+        HnswIndex current = index;
+        if (current.deletedCount() > Math.max(current.size(), 1000)) {
+            rebuildInBackground();
+        }
+    }
+
+    private void rebuildInBackground() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        Thread.ofVirtual().name("search-index-rebuild").start(() -> {
+            try {
+                long startedAt = System.nanoTime();
+                HnswIndex fresh = newIndex();
+                synchronized (buildLock) {
+                    building = fresh;
+                }
+                Map<String, Integer> counts = new HashMap<>();
+                String model = modelProperties.getEmbedding();
+                pageEmbeddingRepository.forEachEmbedding(model, chunk -> {
+                    String key = key(chunk.pageId(), chunk.chunkIndex());
+                    // Событие могло применить к строящемуся индексу более новое состояние фрагмента,
+                    // чем прочитанная строка
+                    synchronized (buildLock) {
+                        if (changedDuringBuild.contains(key)) {
+                            return;
+                        }
+                        fresh.put(key, chunk.embedding());
+                    }
+                    counts.merge(chunk.pageId(), chunk.chunkIndex() + 1, Math::max);
+                });
+                counts.forEach(chunkCountByPage::putIfAbsent);
+                index = fresh;
+                log.info("Индекс поиска построен: фрагментов {} за {} мс",
+                        fresh.size(), (System.nanoTime() - startedAt) / 1_000_000);
+                long otherModels = pageEmbeddingRepository.countOtherModels(model);
+                if (otherModels > 0) {
+                    log.warn("В БД фрагментов другой модели embedding`ов: {}. Они не участвуют в поиске, "
+                            + "пока полный обход не переиндексирует их моделью {}", otherModels, model);
+                }
+            } catch (RuntimeException e) {
+                log.error("Не удалось построить индекс поиска", e);
+            } finally {
+                synchronized (buildLock) {
+                    building = null;
+                    changedDuringBuild.clear();
+                }
+                rebuilding.set(false);
+            }
+        });
+    }
+
+    private HnswIndex newIndex() {
+        return new HnswIndex(properties.getMaxConnections(), properties.getEfConstruction());
+    }
+
+    private static String key(String pageId, int chunkIndex) {
+        return pageId + '#' + chunkIndex;
+    }
+}
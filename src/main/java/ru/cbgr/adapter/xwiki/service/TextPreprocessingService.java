@@ -0,0 +1,480 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.stereotype.Service;
+
+import ru.cbgr.adapter.xwiki.configuration.ChunkingProperties;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Подготовка содержимого страниц XWiki (синтаксис xwiki/2.x) к получению embedding`ов.
+ * За один проход по тексту убирает разметку (форматирование, ссылки, параметры, служебные макросы)
+ * и сразу режет результат на фрагменты ограниченной длины с перекрытием.
+ * Фрагменты не пересекают заголовки: каждый начинается с заголовка своего раздела.
+ */
+@Service
+@RequiredArgsConstructor
+public class TextPreprocessingService {
+
+    /**
+     * Макросы, содержимое которых не является текстом страницы
+     */
+    private static final Set<String> SKIPPED_MACROS = Set.of(
+            "toc", "velocity", "groovy", "python", "html", "include", "display", "children",
+            "documenttree", "template", "css", "jsx", "ssx", "gallery", "attachments");
+
+    /**
+     * Версия разбора и нарезки; увеличивается при изменении алгоритма, чтобы страницы переиндексировались
+     */
+    private static final int VERSION = 1;
+
+    private final ChunkingProperties properties;
+
+    /**
+     * Версия алгоритма и параметры нарезки: при их изменении меняются фрагменты, а значит и embedding`и страницы
+     */
+    public String getChunkingSignature() {
+        return "v" + VERSION + ':' + properties.getMaxChunkTokens() + ':' + properties.getOverlapTokens()
+                + ':' + properties.getCharsPerToken();
+    }
+
+    /**
+     * @param content содержимое страницы в синтаксисе XWiki
+     * @return фрагменты нормализованного текста в порядке следования на странице
+     */
+    public List<String> preprocess(CharSequence content) {
+        int maxChars = (int) (properties.getMaxChunkTokens() * properties.getCharsPerToken());
+        int overlapChars = (int) (properties.getOverlapTokens() * properties.getCharsPerToken());
+        ChunkCollector collector = new ChunkCollector(maxChars, overlapChars);
+        new Normalizer(content, collector).run();
+        return collector.finish();
+    }
+
+    /**
+     * Однопроходный разбор разметки XWiki, передающий текст в {@link ChunkCollector}
+     */
+    private static final class Normalizer {
+        private final CharSequence in;
+        private final int length;
+        private final ChunkCollector out;
+        private int pos;
+        private boolean lineStart = true;
+        private int headingLevel;
+
+        Normalizer(CharSequence in, ChunkCollector out) {
+            this.in = in;
+            this.length = in.length();
+            this.out = out;
+        }
+
+        void run() {
+            while (pos < length) {
+                if (lineStart) {
+                    lineStart = false;
+                    if (readLineStart()) {
+                        continue;
+                    }
+                }
+                char c = in.charAt(pos);
+                switch (c) {
+                    case '\r' -> pos++;
+                    case '\n' -> newLine();
+                    case '~' -> {
+                        if (pos + 1 < length) {
+                            out.append(in.charAt(pos + 1));
+                        }
+                        pos += 2;
+                    }
+                    case '[' -> {
+                        if (startsWith("[[")) {
+                            link();
+                        } else {
+                            out.append(c);
+                            pos++;
+                        }
+                    }
+                    case '{' -> {
+                        if (startsWith("{{{")) {
+                            verbatim();
+                        } else if (startsWith("{{")) {
+                            macro();
+                        } else {
+                            out.append(c);
+                            pos++;
+                        }
+                    }
+                    case '(' -> {
+                        if (startsWith("(%")) {
+                            skipPast("%)");
+                        } else {
+                            out.append(c);
+                            pos++;
+                        }
+                    }
+                    case '\\' -> {
+                        if (startsWith("\\\\")) {
+                            out.append(' ');
+                            pos += 2;
+                        } else {
+                            out.append(c);
+                            pos++;
+                        }
+                    }
+                    case '|' -> {
+                        out.append(' ');
+                        pos += startsWith("|=") ? 2 : 1;
+                    }
+                    case '*', '_', '#', '^', ',', '-' -> {
+                        if (pos + 1 < length && in.charAt(pos + 1) == c) {
+                            pos += 2;
+                        } else {
+                            out.append(c);
+                            pos++;
+                        }
+                    }
+                    case '/' -> {
+                        // "//" – курсив, но не в "http://"
+                        if (pos + 1 < length && in.charAt(pos + 1) == '/' && (pos == 0 || in.charAt(pos - 1) != ':')) {
+                            pos += 2;
+                        } else {
+                            out.append(c);
+                            pos++;
+                        }
+                    }
+                    case '=' -> {
+                        // Закрывающие "=" заголовка
+                        if (headingLevel > 0) {
+                            pos++;
+                        } else {
+                            out.append(c);
+                            pos++;
+                        }
+                    }
+                    default -> {
+                        out.append(c);
+                        pos++;
+                    }
+                }
+            }
+            endLine();
+            out.endParagraph();
+        }
+
+        /**
+         * Разбирает разметку начала строки: заголовки, списки, горизонтальную черту, пустую строку.
+         *
+         * @return true, если строка целиком обработана
+         */
+        private boolean readLineStart() {
+            int start = pos;
+            while (pos < length && (in.charAt(pos) == ' ' || in.charAt(pos) == '\t')) {
+                pos++;
+            }
+            if (pos >= length) {
+                return true;
+            }
+            char c = in.charAt(pos);
+            if (c == '\n' || c == '\r') {
+                // Пустая строка – граница абзаца
+                out.endParagraph();
+                return false;
+            }
+            if (c == '=') {
+                int level = 0;
+                while (pos < length && in.charAt(pos) == '=') {
+                    level++;
+                    pos++;
+                }
+                out.endParagraph();
+                headingLevel = level;
+                skipSpaces();
+                return true;
+            }
+            if (startsWith("----")) {
+                while (pos < length && in.charAt(pos) == '-') {
+                    pos++;
+                }
+                out.endParagraph();
+                return true;
+            }
+            if (c == '*' || c == ';' || c == ':') {
+                int markers = pos;
+                while (markers < length && in.charAt(markers) == c) {
+                    markers++;
+                }
+                if (markers < length && in.charAt(markers) == ' ' || c != '*') {
+                    pos = markers;
+                    out.lineBreak();
+                    skipSpaces();
+                    return true;
+                }
+            }
+            if (Character.isDigit(c)) {
+                int digits = pos;
+                while (digits < length && Character.isDigit(in.charAt(digits))) {
+                    digits++;
+                }
+                if (startsWith(digits, ". ")) {
+                    pos = digits + 2;
+                    out.lineBreak();
+                    return true;
+                }
+            }
+            if (c == '|') {
+                out.lineBreak();
+            }
+            return pos != start;
+        }
+
+        private void newLine() {
+            pos++;
+            endLine();
+            lineStart = true;
+        }
+
+        private void endLine() {
+            if (headingLevel > 0) {
+                out.heading();
+                headingLevel = 0;
+            } else {
+                out.append(' ');
+            }
+        }
+
+        /**
+         * [[метка>>ссылка]] → метка, [[ссылка]] → ссылка, изображения пропускаются
+         */
+        private void link() {
+            int end = indexOf("]]", pos + 2);
+            if (end < 0) {
+                pos = length;
+                return;
+            }
+            int labelEnd = indexOf(">>", pos + 2);
+            if (startsWith(pos + 2, "image:")) {
+                pos = end + 2;
+                return;
+            }
+            int textEnd = labelEnd >= 0 && labelEnd < end ? labelEnd : end;
+            for (int i = pos + 2; i < textEnd; i++) {
+                out.append(in.charAt(i));
+            }
+            pos = end + 2;
+        }
+
+        private void verbatim() {
+            int end = indexOf("}}}", pos + 3);
+            int textEnd = end < 0 ? length : end;
+            for (int i = pos + 3; i < textEnd; i++) {
+                out.append(in.charAt(i));
+            }
+            pos = end < 0 ? length : end + 3;
+        }
+
+        /**
+         * Маркеры макросов убираются, содержимое обычных макросов (info, box, code…) остаётся текстом,
+         * служебные макросы пропускаются целиком.
+         */
+        private void macro() {
+            int end = indexOf("}}", pos + 2);
+            if (end < 0) {
+                pos = length;
+                return;
+            }
+            int nameStart = pos + 2;
+            boolean closing = nameStart < end && in.charAt(nameStart) == '/';
+            if (closing) {
+                nameStart++;
+            }
+            int nameEnd = nameStart;
+            while (nameEnd < end && !Character.isWhitespace(in.charAt(nameEnd)) && in.charAt(nameEnd) != '/') {
+                nameEnd++;
+            }
+            boolean selfClosing = in.charAt(end - 1) == '/';
+            String name = in.subSequence(nameStart, nameEnd).toString();
+            pos = end + 2;
+            out.append(' ');
+            if (!closing && !selfClosing && SKIPPED_MACROS.contains(name)) {
+                int close = indexOf("{{/" + name + "}}", pos);
+                pos = close < 0 ? length : close + name.length() + 5;
+            }
+        }
+
+        private void skipPast(String marker) {
+            int end = indexOf(marker, pos + marker.length());
+            pos = end < 0 ? length : end + marker.length();
+        }
+
+        private void skipSpaces() {
+            while (pos < length && in.charAt(pos) == ' ') {
+                pos++;
+            }
+        }
+
+        private boolean startsWith(String prefix) {
+            return startsWith(pos, prefix);
+        }
+
+        private boolean startsWith(int from, String prefix) {
+            if (from + prefix.length() > length) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (in.charAt(from + i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int indexOf(String marker, int from) {
+            for (int i = from; i + marker.length() <= length; i++) {
+                if (startsWith(i, marker)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Собирает нормализованный текст в абзацы, а абзацы – во фрагменты не длиннее maxChars.
+     * Новый фрагмент начинается с заголовка раздела и с хвоста предыдущего фрагмента (перекрытие),
+     * если предыдущий фрагмент из того же раздела.
+     */
+    private static final class ChunkCollector {
+        private final int maxChars;
+        private final int overlapChars;
+        private final List<String> chunks = new ArrayList<>();
+        private final StringBuilder chunk = new StringBuilder();
+        private final StringBuilder paragraph = new StringBuilder();
+        private String heading = "";
+        private int bodyStart;
+        private boolean hasNewText;
+
+        ChunkCollector(int maxChars, int overlapChars) {
+            this.maxChars = Math.max(maxChars, 16);
+            this.overlapChars = Math.min(overlapChars, this.maxChars / 2);
+        }
+
+        void append(char c) {
+            if (Character.isWhitespace(c)) {
+                int last = paragraph.length() - 1;
+                if (last >= 0 && paragraph.charAt(last) != ' ' && paragraph.charAt(last) != '\n') {
+                    paragraph.append(' ');
+                }
+            } else {
+                paragraph.append(c);
+            }
+        }
+
+        void lineBreak() {
+            trimParagraphEnd();
+            if (!paragraph.isEmpty()) {
+                paragraph.append('\n');
+            }
+        }
+
+        void heading() {
+            trimParagraphEnd();
+            String text = paragraph.toString();
+            paragraph.setLength(0);
+            flushChunk(false);
+            heading = text;
+            startChunk("");
+        }
+
+        void endParagraph() {
+            trimParagraphEnd();
+            if (paragraph.isEmpty()) {
+                return;
+            }
+            int offset = 0;
+            int textLength = paragraph.length();
+            while (offset < textLength) {
+                int room = maxChars - chunk.length() - 2;
+                int remaining = textLength - offset;
+                if (remaining <= room) {
+                    appendBody(offset, textLength);
+                    break;
+                }
+                if (hasNewText && room < remaining && room < maxChars / 4) {
+                    flushChunk(true);
+                    continue;
+                }
+                int cut = offset + Math.max(room, 1);
+                int space = paragraph.lastIndexOf(" ", cut);
+                if (space > offset) {
+                    cut = space;
+                }
+                appendBody(offset, cut);
+                flushChunk(true);
+                offset = cut;
+                while (offset < textLength && paragraph.charAt(offset) == ' ') {
+                    offset++;
+                }
+            }
+            paragraph.setLength(0);
+        }
+
+        List<String> finish() {
+            endParagraph();
+            flushChunk(false);
+            return chunks;
+        }
+
+        private void appendBody(int from, int to) {
+            if (chunk.length() > bodyStart) {
+                chunk.append("\n\n");
+            }
+            chunk.append(paragraph, from, to);
+            hasNewText = true;
+        }
+
+        private void flushChunk(boolean overlap) {
+            if (!hasNewText) {
+                return;
+            }
+            chunks.add(chunk.toString());
+            String tail = overlap ? overlapTail() : "";
+            startChunk(tail);
+        }
+
+        private void startChunk(String tail) {
+            chunk.setLength(0);
+            if (!heading.isEmpty()) {
+                chunk.append(heading).append('\n');
+            }
+            bodyStart = chunk.length();
+            chunk.append(tail);
+            hasNewText = false;
+        }
+
+        /**
+         * Хвост текущего фрагмента длиной не больше overlapChars, начинающийся с целого слова
+         */
+        private String overlapTail() {
+            if (overlapChars <= 0) {
+                return "";
+            }
+            int from = Math.max(bodyStart, chunk.length() - overlapChars);
+            if (from > bodyStart) {
+                int space = chunk.indexOf(" ", from);
+                from = space < 0 ? chunk.length() : space + 1;
+            }
+            return chunk.substring(from);
+        }
+
+        private void trimParagraphEnd() {
+            int end = paragraph.length();
+            while (end > 0 && Character.isWhitespace(paragraph.charAt(end - 1))) {
+                end--;
+            }
+            paragraph.setLength(end);
+        }
+    }
+}
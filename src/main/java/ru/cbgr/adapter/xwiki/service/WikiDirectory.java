@@ -0,0 +1,51 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.List;
+import java.util.Objects;
+
+import org.springframework.stereotype.Service;
+
+import ru.cbgr.adapter.xwiki.client.XWikiClient;
+import ru.cbgr.adapter.xwiki.configuration.XWikiProperties;
+import ru.cbgr.adapter.xwiki.dto.xwiki.WikisResponse;
+import ru.cbgr.adapter.xwiki.dto.xwiki.wiki.Wiki;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Список вики фермы для обхода и опроса изменений.
+ * Если вики не заданы в xwiki.wikis, они запрашиваются из /rest/wikis при каждом обращении,
+ * поэтому новые подвики подхватываются без перезапуска.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class WikiDirectory {
+
+    public static final String MAIN_WIKI = "xwiki";
+
+    private final XWikiClient xWikiClient;
+    private final XWikiProperties xWikiProperties;
+
+    /**
+     * @return идентификаторы вики; если список получить не удалось – только главная вики
+     */
+    public List<String> getWikiIds() {
+        if (!xWikiProperties.getWikis().isEmpty()) {
+            return xWikiProperties.getWikis();
+        }
+        try {
+            WikisResponse response = xWikiClient.getWikis();
+            if (response != null && response.getWikis() != null && !response.getWikis().isEmpty()) {
+                return response.getWikis().stream()
+                        .map(Wiki::getId)
+                        .filter(Objects::nonNull)
+                        .toList();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Не удалось получить список вики, используем {}: {}", MAIN_WIKI, e.toString());
+        }
+        return List.of(MAIN_WIKI);
+    }
+}
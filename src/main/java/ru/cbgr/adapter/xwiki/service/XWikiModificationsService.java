@@ -15,7 +15,7 @@ public class XWikiModificationsService { // todo Добавить мапперы
 
     private final XWikiClient xWikiClient;
 
-    public ModificationsResponse getModifications() {
-        return xWikiClient.getModifications();
+    public ModificationsResponse getModifications(String wiki) {
+        return xWikiClient.getModifications(wiki);
     }
 }
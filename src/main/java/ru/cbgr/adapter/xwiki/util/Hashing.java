@@ -0,0 +1,30 @@
+package ru.cbgr.adapter.xwiki.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Хеширование текстов для сравнения содержимого без хранения самого содержимого
+ */
+public final class Hashing {
+
+    private Hashing() {
+    }
+
+    /**
+     * @return SHA-256 текста в UTF-8 в виде 64 шестнадцатеричных символов
+     */
+    public static String sha256Hex(String text) {
+        return HexFormat.of().formatHex(sha256().digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ru.cbgr.adapter.xwiki.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Преобразования векторов embedding`ов между представлениями Spring AI, float[] и pgvector
+ */
+public final class Vectors {
+
+    private Vectors() {
+    }
+
+    public static float[] toFloatArray(List<Double> vector) {
+        float[] result = new float[vector.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = vector.get(i).floatValue();
+        }
+        return result;
+    }
+
+    public static List<Double> toDoubleList(float[] vector) {
+        Double[] result = new Double[vector.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (double) vector[i];
+        }
+        return Arrays.asList(result);
+    }
+
+    /**
+     * @return вектор единичной длины того же направления (нулевой вектор – как есть)
+     */
+    public static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] result = new float[vector.length];
+        if (norm == 0) {
+            return result;
+        }
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = (float) (vector[i] / norm);
+        }
+        return result;
+    }
+
+    /**
+     * Скалярное произведение; для нормированных векторов – косинусная близость.
+     * Векторы разной размерности (разные модели embedding`ов) считаются непохожими.
+     */
+    public static float dot(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        float dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+
+    /**
+     * @return текстовое представление вектора pgvector: [x1,x2,...]
+     */
+    public static String toPgVector(float[] vector) {
+        StringBuilder sb = new StringBuilder(vector.length * 10).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(vector[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    public static float[] fromPgVector(String value) {
+        String body = value.substring(1, value.length() - 1);
+        if (body.isEmpty()) {
+            return new float[0];
+        }
+        String[] parts = body.split(",");
+        float[] result = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Float.parseFloat(parts[i]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,91 @@
+CREATE TABLE IF NOT EXISTS modification_cursor (
+    wiki       VARCHAR(255) PRIMARY KEY,
+    modified   BIGINT       NOT NULL,
+    page_id    TEXT,
+    version    VARCHAR(64),
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+CREATE EXTENSION IF NOT EXISTS vector;
+
+CREATE TABLE IF NOT EXISTS page_embedding (
+    page_id      TEXT         NOT NULL,
+    chunk_index  INT          NOT NULL,
+    version      VARCHAR(64),
+    page_url     TEXT,
+    content_hash CHAR(64)     NOT NULL,
+    content      TEXT         NOT NULL,
+    embedding    vector       NOT NULL,
+    updated_at   TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (page_id, chunk_index)
+);
+
+-- Модель embedding`ов фрагмента: индекс поиска строится только из векторов настроенной модели
+ALTER TABLE page_embedding ADD COLUMN IF NOT EXISTS model VARCHAR(128);
+
+-- Версии страниц вики для сверки: поиск по префиксу "wiki:" без чтения строк с векторами
+CREATE INDEX IF NOT EXISTS page_embedding_wiki_versions ON page_embedding (page_id text_pattern_ops)
+    INCLUDE (version) WHERE chunk_index = 0;
+
+CREATE TABLE IF NOT EXISTS crawl_checkpoint (
+    job_id     VARCHAR(64)  PRIMARY KEY,
+    started_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+-- Завершённые пространства (kind = 'S') и страницы (kind = 'P') незавершённого обхода
+CREATE TABLE IF NOT EXISTS crawl_checkpoint_item (
+    job_id  VARCHAR(64) NOT NULL REFERENCES crawl_checkpoint (job_id) ON DELETE CASCADE,
+    kind    CHAR(1)     NOT NULL,
+    item_id TEXT        NOT NULL,
+    PRIMARY KEY (job_id, kind, item_id)
+);
+
+-- Постоянный уровень кеша embedding`ов: модель + SHA-256 нормализованного текста
+CREATE TABLE IF NOT EXISTS embedding_cache (
+    model      VARCHAR(128) NOT NULL,
+    text_hash  CHAR(64)     NOT NULL,
+    embedding  vector       NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (model, text_hash)
+);
+
+-- Общая очередь распределённого обхода: state Q – в очереди, L – арендован экземпляром, D – обработан, F – ошибка
+CREATE TABLE IF NOT EXISTS crawl_work_item (
+    id          BIGSERIAL    PRIMARY KEY,
+    crawl_id    VARCHAR(64)  NOT NULL,
+    kind        CHAR(1)      NOT NULL,
+    item_key    TEXT         NOT NULL,
+    url         TEXT,
+    version     VARCHAR(64),
+    state       CHAR(1)      NOT NULL DEFAULT 'Q',
+    attempts    INT          NOT NULL DEFAULT 0,
+    lease_owner VARCHAR(128),
+    lease_until TIMESTAMP WITH TIME ZONE,
+    UNIQUE (crawl_id, kind, item_key)
+);
+
+CREATE INDEX IF NOT EXISTS crawl_work_item_pending ON crawl_work_item (id) WHERE state IN ('Q', 'L');
+
+-- Отменённые обходы: их элементы не берутся в работу и не добавляются в очередь
+CREATE TABLE IF NOT EXISTS crawl_cancelled (
+    crawl_id     VARCHAR(64) PRIMARY KEY,
+    cancelled_at TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+-- Роли, которые в каждый момент выполняет один экземпляр
+CREATE TABLE IF NOT EXISTS leader_lease (
+    name        VARCHAR(64)  PRIMARY KEY,
+    owner       VARCHAR(128) NOT NULL,
+    lease_until TIMESTAMP WITH TIME ZONE NOT NULL
+);
+
+-- Отпечаток списка страниц пространства (SHA-256 по id и версиям) на момент последней сверки
+CREATE TABLE IF NOT EXISTS space_fingerprint (
+    wiki        VARCHAR(255) NOT NULL,
+    space_id    TEXT         NOT NULL,
+    fingerprint CHAR(64)     NOT NULL,
+    page_count  INT          NOT NULL,
+    updated_at  TIMESTAMP WITH TIME ZONE NOT NULL,
+    PRIMARY KEY (wiki, space_id)
+);
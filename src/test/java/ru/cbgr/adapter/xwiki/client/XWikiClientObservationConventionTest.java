@@ -0,0 +1,19 @@
+package ru.cbgr.adapter.xwiki.client;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class XWikiClientObservationConventionTest {
+
+    @Test
+    void testReplacesNamesInRestPath() {
+        assertEquals("/xwiki/rest/wikis/{name}/spaces/{name}/spaces/{name}/pages/{name}",
+                XWikiClientObservationConvention.template(
+                        "http://wiki.local:8080/xwiki/rest/wikis/xwiki/spaces/Отдел продаж/spaces/CRM/pages/WebHome?media=json"));
+        assertEquals("/rest/wikis/{name}/modifications",
+                XWikiClientObservationConvention.template("https://wiki.local/rest/wikis/xwiki/modifications?start=0&number=50"));
+        assertEquals("/rest/wikis/{name}/spaces/{name}/pages",
+                XWikiClientObservationConvention.template("https://wiki.local/rest/wikis/xwiki/spaces/Main/pages?start=500&number=500"));
+    }
+}
@@ -0,0 +1,123 @@
+package ru.cbgr.adapter.xwiki.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import ru.cbgr.adapter.xwiki.configuration.CrawlProperties;
+import ru.cbgr.adapter.xwiki.configuration.PageCacheProperties;
+import ru.cbgr.adapter.xwiki.configuration.ResilienceProperties;
+import ru.cbgr.adapter.xwiki.configuration.XWikiProperties;
+import ru.cbgr.adapter.xwiki.deserializer.SummaryStreamReader;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.HistorySummary;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.LinkRelation;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Links;
+import ru.cbgr.adapter.xwiki.dto.xwiki.page.PageDetails;
+import ru.cbgr.adapter.xwiki.resilience.ResilientExecutor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Проверка URL страниц из истории изменений на локальной заглушке XWiki
+ */
+public class XWikiClientTest {
+
+    private final List<String> requestedPaths = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private String baseUrl;
+    private XWikiClient client;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 16);
+        server.createContext("/", exchange -> {
+            requestedPaths.add(exchange.getRequestURI().getPath());
+            byte[] body = "{\"id\":\"xwiki:Page\",\"version\":\"2.1\",\"content\":\"text\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        XWikiProperties properties = new XWikiProperties();
+        properties.setBaseUrl(baseUrl);
+        ObjectMapper objectMapper = new ObjectMapper();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ResilienceProperties.Backend backend = new ResilienceProperties.Backend();
+        backend.setRatePerSecond(0);
+        client = new XWikiClient(properties, new RestTemplate(new SimpleClientHttpRequestFactory()),
+                new HostConcurrencyLimiter(new CrawlProperties(), registry),
+                new PageDetailsCache(new PageCacheProperties(), objectMapper, registry),
+                new SummaryStreamReader(objectMapper),
+                new ResilientExecutor("xwiki", backend, registry));
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void testBuildsEncodedUrlForCyrillicSpaceWithSpaces() {
+        String pageUrl = client.getPageUrl("xwiki", "Системная аналитика.Отчёты\\.2024", "Главная страница");
+
+        assertEquals(baseUrl + "/rest/wikis/xwiki"
+                + "/spaces/%D0%A1%D0%B8%D1%81%D1%82%D0%B5%D0%BC%D0%BD%D0%B0%D1%8F%20%D0%B0%D0%BD%D0%B0%D0%BB%D0%B8%D1%82%D0%B8%D0%BA%D0%B0"
+                + "/spaces/%D0%9E%D1%82%D1%87%D1%91%D1%82%D1%8B.2024"
+                + "/pages/%D0%93%D0%BB%D0%B0%D0%B2%D0%BD%D0%B0%D1%8F%20%D1%81%D1%82%D1%80%D0%B0%D0%BD%D0%B8%D1%86%D0%B0",
+                pageUrl);
+
+        PageDetails page = client.getPageDetails(pageUrl, "2.1");
+
+        assertEquals("text", page.getContent());
+        assertEquals(List.of("/rest/wikis/xwiki/spaces/Системная аналитика/spaces/Отчёты.2024/pages/Главная страница"),
+                requestedPaths);
+    }
+
+    @Test
+    void testPrefersPageLinkOfModification() {
+        HistorySummary modification = modification();
+        String href = baseUrl + "/rest/wikis/xwiki/spaces/%D0%9E%D1%82%D0%B4%D0%B5%D0%BB%20%D0%BF%D1%80%D0%BE%D0%B4%D0%B0%D0%B6/pages/WebHome";
+        modification.setLinks(Links.builder().add(href, LinkRelation.PAGE.getUri(), null, null).build());
+
+        assertEquals(href, client.getPageUrl(modification));
+    }
+
+    @Test
+    void testSharesPageCacheWithCrawlUrls() {
+        HistorySummary modification = modification();
+        // Так ссылку page отдаёт XWiki при обходе списка страниц
+        String crawlHref = baseUrl + "/rest/wikis/xwiki/spaces/%D0%9E%D1%82%D0%B4%D0%B5%D0%BB%20%D0%BF%D1%80%D0%BE%D0%B4%D0%B0%D0%B6/pages/WebHome";
+
+        client.getPageDetails(crawlHref, "2.1");
+        client.getPageDetails(client.getPageUrl(modification), "2.1");
+
+        assertEquals(1, requestedPaths.size());
+    }
+
+    private static HistorySummary modification() {
+        HistorySummary modification = new HistorySummary();
+        modification.setPageId("xwiki:Отдел продаж.WebHome");
+        modification.setWiki("xwiki");
+        modification.setSpace("Отдел продаж");
+        modification.setName("WebHome");
+        modification.setVersion("2.1");
+        return modification;
+    }
+}
@@ -0,0 +1,122 @@
+package ru.cbgr.adapter.xwiki.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import ru.cbgr.adapter.xwiki.configuration.XWikiTransportProperties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Транспорты на локальной заглушке XWiki: ответы в gzip с задержкой 2 мс,
+ * 16 одновременных запросов, как при обходе одного хоста. Каждый транспорт должен
+ * отдавать распакованное тело на всех запросах; производительность сравнивается в профиле benchmark.
+ */
+public class XWikiRequestFactoriesTest {
+
+    private static final int CONCURRENCY = 16;
+    private static final int REQUESTS = 200;
+
+    private final String body = "{\"pageSummaries\":[" + "{\"id\":\"xwiki:Main.WebHome\"},".repeat(200) + "{}]}";
+    private HttpServer server;
+    private String url;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        byte[] gzipped = gzip(body.getBytes(StandardCharsets.UTF_8));
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 256);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/rest/wikis/xwiki/spaces", exchange -> {
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            boolean gzip = String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Encoding")).contains("gzip");
+            byte[] response = gzip ? gzipped : body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            if (gzip) {
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/rest/wikis/xwiki/spaces";
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void testSimple() throws Exception {
+        run(XWikiTransportProperties.Type.SIMPLE);
+    }
+
+    @Test
+    void testPooled() throws Exception {
+        SimpleMeterRegistry registry = run(XWikiTransportProperties.Type.POOLED);
+        assertNotNull(registry.find("httpcomponents.httpclient.pool.total.max").tag("httpclient", "xwiki").gauge());
+    }
+
+    @Test
+    void testHttp2() throws Exception {
+        run(XWikiTransportProperties.Type.HTTP2);
+    }
+
+    private SimpleMeterRegistry run(XWikiTransportProperties.Type type) throws Exception {
+        XWikiTransportProperties properties = new XWikiTransportProperties();
+        properties.setType(type);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ClientHttpRequestFactory factory = XWikiRequestFactories.create(properties, registry);
+        RestTemplate restTemplate = new RestTemplate(factory);
+        if (type != XWikiTransportProperties.Type.POOLED) {
+            restTemplate.getInterceptors().add(new GzipResponseInterceptor());
+        }
+        try (ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < REQUESTS; i++) {
+                futures.add(executor.submit(() -> assertEquals(body, restTemplate.getForObject(url, String.class))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        if (factory instanceof DisposableBean disposable) {
+            disposable.destroy();
+        }
+        return registry;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,43 @@
+package ru.cbgr.adapter.xwiki.configuration;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ClusterPropertiesTest {
+
+    @Test
+    void testGeneratedInstanceIdIsSameForAllThreads() throws InterruptedException {
+        for (int round = 0; round < 20; round++) {
+            ClusterProperties properties = new ClusterProperties();
+            Set<String> ids = ConcurrentHashMap.newKeySet();
+            CountDownLatch start = new CountDownLatch(1);
+            try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+                for (int i = 0; i < 16; i++) {
+                    executor.submit(() -> {
+                        start.await();
+                        return ids.add(properties.getInstanceId());
+                    });
+                }
+                start.countDown();
+            }
+            assertEquals(1, ids.size(), "Экземпляр получил идентификаторы " + ids);
+            assertEquals(ids.iterator().next(), properties.getInstanceId());
+        }
+    }
+
+    @Test
+    void testConfiguredInstanceIdIsKept() {
+        ClusterProperties properties = new ClusterProperties();
+        properties.setInstanceId("adapter-1");
+        properties.resolveInstanceId();
+
+        assertEquals("adapter-1", properties.getInstanceId());
+    }
+}
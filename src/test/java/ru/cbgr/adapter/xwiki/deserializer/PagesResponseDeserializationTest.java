@@ -1,18 +1,27 @@
 package ru.cbgr.adapter.xwiki.deserializer;
 
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Field;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.junit.jupiter.api.Test;
 
 import ru.cbgr.adapter.xwiki.dto.xwiki.PagesResponse;
 import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Link;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.LinkRelation;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Links;
 import ru.cbgr.adapter.xwiki.dto.xwiki.page.PageSummary;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 public class PagesResponseDeserializationTest {
 
@@ -78,6 +87,105 @@ public class PagesResponseDeserializationTest {
         assertEquals("http://www.xwiki.org/rel/space", link.getRel());
     }
 
+    @Test
+    void testStreamingDeserialization() throws Exception {
+        SummaryStreamReader reader = new SummaryStreamReader(objectMapper);
+        List<PageSummary> summaries = new ArrayList<>();
+
+        int count = reader.readPageSummaries(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+                summaries::add);
+
+        assertEquals(1, count);
+        assertEquals(objectMapper.readValue(json, PagesResponse.class).getPageSummaries(), summaries);
+    }
+
+    /**
+     * Потоковый разбор списка из 20 000 страниц отдаёт те же страницы, что и разбор целиком.
+     * Выделение памяти сравнивает SummaryStreamReaderBenchmark с -prof gc (профиль benchmark).
+     */
+    @Test
+    void testStreamsLargeList() throws Exception {
+        String summary = json.substring(json.indexOf('{', json.indexOf("pageSummaries")), json.lastIndexOf(']')).trim();
+        int pages = 20_000;
+        StringBuilder large = new StringBuilder("{\"links\": [], \"pageSummaries\": [");
+        for (int i = 0; i < pages; i++) {
+            large.append(i == 0 ? "" : ",").append(summary.replace("WebHome", "Page" + i));
+        }
+        byte[] body = large.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+        SummaryStreamReader reader = new SummaryStreamReader(objectMapper);
+
+        PagesResponse response = objectMapper.readValue(body, PagesResponse.class);
+        List<PageSummary> streamed = new ArrayList<>(pages);
+        int count = reader.readPageSummaries(new ByteArrayInputStream(body), streamed::add);
+
+        assertEquals(pages, count);
+        assertEquals(response.getPageSummaries(), streamed);
+        assertEquals("xwiki:Системная аналитика.Page19999", streamed.get(pages - 1).getId());
+    }
+
+    /**
+     * Ссылки известных отношений хранятся компактно: только href в массиве, без объектов {@link Link};
+     * для кода это по-прежнему тот же список ссылок. Память сравнивает SummaryStreamReaderBenchmark с -prof gc.
+     */
+    @Test
+    void testLinksCompactRepresentation() throws Exception {
+        String[] relations = {"space", "parent", "history", "children", "tags", "page"};
+        StringBuilder body = new StringBuilder("[{\"id\":\"xwiki:Space.Page\",\"links\":[");
+        for (int j = 0; j < relations.length; j++) {
+            body.append(j == 0 ? "" : ",")
+                    .append("{\"href\":\"http://localhost:8080/rest/wikis/xwiki/spaces/Space/pages/Page/")
+                    .append(relations[j])
+                    .append("\",\"rel\":\"http://www.xwiki.org/rel/").append(relations[j])
+                    .append("\",\"type\":null,\"hrefLang\":null}");
+        }
+        body.append("]}]");
+
+        List<LegacySummary> legacy = objectMapper.readValue(body.toString(), new TypeReference<>() { });
+        List<PageSummary> compact = objectMapper.readValue(body.toString(), new TypeReference<>() { });
+
+        Links links = compact.get(0).getLinks();
+        assertEquals(relations.length, links.size());
+        assertEquals("http://localhost:8080/rest/wikis/xwiki/spaces/Space/pages/Page/page", links.href(LinkRelation.PAGE));
+        assertNull(links.href(LinkRelation.PAGES));
+        // Порядок ссылок в Links – по LinkRelation, поэтому сравниваем как множества
+        assertEquals(new HashSet<>(legacy.get(0).links), new HashSet<>(links));
+        assertEquals(relations.length, ((String[]) field(links, "hrefs")).length);
+        assertNull(field(links, "others"), "Ссылки известных отношений сохранены объектами Link");
+    }
+
+    @Test
+    void testLinksKeepTypeAndHrefLang() {
+        Links links = Links.builder()
+                .add("pages-json", LinkRelation.PAGES.getUri(), "application/json", null)
+                .add("pages-xml", LinkRelation.PAGES.getUri(), null, null)
+                .add("page-ru", LinkRelation.PAGE.getUri(), null, "ru")
+                .add("space", LinkRelation.SPACE.getUri(), null, null)
+                .build();
+
+        assertEquals("pages-json", links.href(LinkRelation.PAGES));
+        assertEquals("page-ru", links.href(LinkRelation.PAGE));
+        assertEquals("space", links.href(LinkRelation.SPACE));
+        assertEquals(4, links.size());
+        Link json = links.stream().filter(link -> "pages-json".equals(link.getHref())).findFirst().orElseThrow();
+        assertEquals("application/json", json.getType());
+        Link translated = links.stream().filter(link -> "page-ru".equals(link.getHref())).findFirst().orElseThrow();
+        assertEquals("ru", translated.getHrefLang());
+    }
+
+    /**
+     * Прежнее представление ссылок: каждая ссылка – отдельный объект Link с четырьмя строками
+     */
+    public static class LegacySummary {
+        public String id;
+        public List<Link> links;
+    }
+
+    private static Object field(Object target, String name) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(target);
+    }
+
     @Test
     void testDecode() {
         // Пример закодированной строки: "Системная аналитика", закодированный через UTF-8
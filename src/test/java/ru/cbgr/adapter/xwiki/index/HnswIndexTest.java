@@ -0,0 +1,106 @@
+package ru.cbgr.adapter.xwiki.index;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HnswIndexTest {
+
+    private static final int DIMENSION = 32;
+
+    @Test
+    void testRecallAgainstBruteForce() {
+        Random random = new Random(7);
+        float[][] vectors = clusteredVectors(random, 5000);
+        HnswIndex index = new HnswIndex(16, 100);
+        for (int i = 0; i < vectors.length; i++) {
+            index.put("v" + i, vectors[i]);
+        }
+
+        int queries = 100;
+        double recall = 0;
+        for (int q = 0; q < queries; q++) {
+            float[] query = clusteredVectors(random, 1)[0];
+            List<HnswIndex.Hit> hits = index.search(query, 10, 100);
+
+            Set<String> expected = new HashSet<>();
+            IntStream.range(0, vectors.length).boxed()
+                    .sorted(Comparator.comparingDouble(i -> -cosine(vectors[i], query)))
+                    .limit(10)
+                    .forEach(i -> expected.add("v" + i));
+            recall += hits.stream().filter(hit -> expected.contains(hit.key())).count() / 10.0;
+        }
+        recall /= queries;
+        assertTrue(recall > 0.9, "recall@10 = " + recall);
+    }
+
+    @Test
+    void testUpdateAndRemove() {
+        HnswIndex index = new HnswIndex(8, 50);
+        index.put("a", new float[] {1, 0});
+        index.put("b", new float[] {0, 1});
+        index.put("a", new float[] {0, 1});
+
+        assertEquals(2, index.size());
+        assertEquals(1, index.deletedCount());
+
+        index.remove("b");
+        List<HnswIndex.Hit> hits = index.search(new float[] {1, 0}, 10, 10);
+        assertEquals(1, hits.size());
+        assertEquals("a", hits.get(0).key());
+        assertFalse(hits.stream().anyMatch(hit -> hit.key().equals("b")));
+    }
+
+    @Test
+    void testRejectsVectorsOfOtherDimension() {
+        HnswIndex index = new HnswIndex(8, 50);
+        index.put("a", new float[] {1, 0});
+
+        assertThrows(IllegalArgumentException.class, () -> index.put("b", new float[] {1, 0, 0}));
+        assertThrows(IllegalArgumentException.class, () -> index.search(new float[] {1, 0, 0}, 1, 10));
+        assertEquals(1, index.size());
+    }
+
+    /**
+     * Векторы вокруг нескольких центров – ближе к реальным embedding`ам, чем равномерный шум
+     */
+    private static float[][] clusteredVectors(Random random, int count) {
+        Random centers = new Random(1);
+        float[][] centroids = new float[20][DIMENSION];
+        for (float[] centroid : centroids) {
+            for (int d = 0; d < DIMENSION; d++) {
+                centroid[d] = (float) centers.nextGaussian();
+            }
+        }
+        float[][] result = new float[count][DIMENSION];
+        for (int i = 0; i < count; i++) {
+            float[] centroid = centroids[random.nextInt(centroids.length)];
+            for (int d = 0; d < DIMENSION; d++) {
+                result[i][d] = centroid[d] + (float) random.nextGaussian() * 0.5f;
+            }
+        }
+        return result;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}
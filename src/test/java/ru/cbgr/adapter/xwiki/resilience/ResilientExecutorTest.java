@@ -0,0 +1,234 @@
+package ru.cbgr.adapter.xwiki.resilience;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import ru.cbgr.adapter.xwiki.configuration.ResilienceProperties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Проверка на локальной заглушке, которая по команде отвечает ошибками или с задержкой
+ */
+public class ResilientExecutorTest {
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private volatile int failureStatus = 503;
+    private volatile long delayMs;
+    private final RestTemplate restTemplate = new RestTemplate(new SimpleClientHttpRequestFactory());
+    private HttpServer server;
+    private String url;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            boolean fail = failuresLeft.getAndUpdate(left -> left > 0 ? left - 1 : left) > 0;
+            byte[] body = (fail ? "fail" : "ok").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(fail ? failureStatus : 200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void testRetriesTransientErrors() {
+        ResilientExecutor executor = executor(backend());
+        failuresLeft.set(2);
+
+        assertEquals("ok", executor.call(() -> restTemplate.getForObject(url, String.class)));
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void testDoesNotRetryClientErrors() {
+        ResilientExecutor executor = executor(backend());
+        failureStatus = 404;
+        failuresLeft.set(1);
+
+        assertThrows(HttpClientErrorException.NotFound.class,
+                () -> executor.call(() -> restTemplate.getForObject(url, String.class)));
+        assertEquals(1, requests.get());
+        assertEquals(CircuitBreaker.State.CLOSED, executor.getCircuitState());
+    }
+
+    @Test
+    void testDoesNotRetryNonHttpErrors() {
+        ResilientExecutor executor = executor(backend());
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(RuntimeException.class, () -> executor.call(() -> {
+            calls.incrementAndGet();
+            throw new RuntimeException("model \"nomic-embed-text\" not found");
+        }));
+        assertEquals(1, calls.get());
+        assertEquals(CircuitBreaker.State.CLOSED, executor.getCircuitState());
+    }
+
+    @Test
+    void testRetriesOllamaServerErrors() {
+        ResilientExecutor executor = executor(backend());
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals("ok", executor.call(() -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new RuntimeException("[500] Internal Server Error - {\"error\":\"llama runner process has terminated\"}");
+            }
+            return "ok";
+        }));
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void testNonTransientErrorsDoNotResetFailures() {
+        ResilienceProperties.Backend backend = backend();
+        backend.setMaxAttempts(1);
+        backend.setFailureThreshold(2);
+        ResilientExecutor executor = executor(backend);
+
+        assertThrows(RuntimeException.class, () -> executor.call(() -> {
+            throw new RuntimeException("[503] Service Unavailable - {}");
+        }));
+        assertThrows(RuntimeException.class, () -> executor.call(() -> {
+            throw new RuntimeException("[404] Not Found - {\"error\":\"model not found\"}");
+        }));
+        assertEquals(CircuitBreaker.State.CLOSED, executor.getCircuitState());
+        assertThrows(RuntimeException.class, () -> executor.call(() -> {
+            throw new RuntimeException("[500] Internal Server Error - {}");
+        }));
+        assertEquals(CircuitBreaker.State.OPEN, executor.getCircuitState());
+    }
+
+    @Test
+    void testCancelledStreamDoesNotCloseCircuit() throws InterruptedException {
+        ResilienceProperties.Backend backend = backend();
+        backend.setFailureThreshold(1);
+        backend.setOpenMs(50);
+        ResilientExecutor executor = executor(backend);
+        executor.acquireCircuit();
+        executor.onFailure(new RuntimeException("[500] Internal Server Error - {}"));
+        Thread.sleep(80);
+
+        executor.acquireCircuit();
+        executor.onCancel();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, executor.getCircuitState());
+        // Разрешение освобождено: следующий запрос снова пробный
+        executor.acquireCircuit();
+        executor.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, executor.getCircuitState());
+    }
+
+    @Test
+    void testDoesNotRetryAfterPartialDelivery() {
+        ResilientExecutor executor = executor(backend());
+        failuresLeft.set(1);
+
+        assertThrows(HttpServerErrorException.class,
+                () -> executor.call(() -> restTemplate.getForObject(url, String.class), () -> false));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void testCircuitOpensAndRecovers() throws Exception {
+        ResilienceProperties.Backend backend = backend();
+        backend.setMaxAttempts(1);
+        backend.setFailureThreshold(2);
+        backend.setOpenMs(200);
+        ResilientExecutor executor = executor(backend);
+        failureStatus = 500;
+        failuresLeft.set(Integer.MAX_VALUE);
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(HttpServerErrorException.class,
+                    () -> executor.call(() -> restTemplate.getForObject(url, String.class)));
+        }
+        assertThrows(CircuitOpenException.class, () -> executor.call(() -> restTemplate.getForObject(url, String.class)));
+        assertEquals(2, requests.get());
+        assertEquals(CircuitBreaker.State.OPEN, executor.getCircuitState());
+
+        Thread.sleep(250);
+        failuresLeft.set(0);
+        assertEquals("ok", executor.call(() -> restTemplate.getForObject(url, String.class)));
+        assertEquals(CircuitBreaker.State.CLOSED, executor.getCircuitState());
+    }
+
+    @Test
+    void testConcurrencyShrinksOnSlowResponses() throws Exception {
+        ResilienceProperties.Backend backend = backend();
+        backend.setLatencyThresholdMs(20);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ResilientExecutor executor = new ResilientExecutor("stub", backend, registry);
+        delayMs = 60;
+
+        try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 64; i++) {
+                threads.submit(() -> executor.call(() -> restTemplate.getForObject(url, String.class)));
+            }
+        }
+        double limit = registry.get("resilience.concurrency.limit").gauge().value();
+        assertTrue(limit < backend.getMaxConcurrency());
+        // Медленные ответы – не сбой сервиса
+        assertEquals(CircuitBreaker.State.CLOSED, executor.getCircuitState());
+    }
+
+    @Test
+    void testRateLimit() {
+        ResilienceProperties.Backend backend = backend();
+        backend.setRatePerSecond(100);
+        backend.setBurst(1);
+        ResilientExecutor executor = executor(backend);
+
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < 21; i++) {
+            executor.call(() -> restTemplate.getForObject(url, String.class));
+        }
+        long elapsedMs = (System.nanoTime() - startedAt) / 1_000_000;
+        assertTrue(elapsedMs >= 180, "Запросы выполнены за " + elapsedMs + " мс");
+    }
+
+    private static ResilienceProperties.Backend backend() {
+        ResilienceProperties.Backend backend = new ResilienceProperties.Backend();
+        backend.setRatePerSecond(0);
+        backend.setRetryBaseDelayMs(10);
+        backend.setRetryMaxDelayMs(50);
+        return backend;
+    }
+
+    private static ResilientExecutor executor(ResilienceProperties.Backend backend) {
+        return new ResilientExecutor("stub", backend, new SimpleMeterRegistry());
+    }
+}
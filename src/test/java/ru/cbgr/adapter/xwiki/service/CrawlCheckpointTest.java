@@ -0,0 +1,120 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import ru.cbgr.adapter.xwiki.repository.CrawlCheckpointRepository;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class CrawlCheckpointTest {
+
+    private final CrawlCheckpointRepository repository = mock(CrawlCheckpointRepository.class);
+
+    @Test
+    void testFlushesAfterEveryPages() {
+        CrawlCheckpoint checkpoint = checkpoint(3, 60_000);
+
+        checkpoint.pageDone("page-1");
+        checkpoint.pageDone("page-2");
+        verify(repository, never()).saveCompleted(anyString(), anyList(), anyList());
+
+        checkpoint.pageDone("page-3");
+        verify(repository).saveCompleted("crawl", List.of(), List.of("page-1", "page-2", "page-3"));
+    }
+
+    @Test
+    void testFlushesAfterInterval() throws InterruptedException {
+        CrawlCheckpoint checkpoint = checkpoint(1000, 50);
+
+        checkpoint.pageDone("page-1");
+        verify(repository, never()).saveCompleted(anyString(), anyList(), anyList());
+
+        Thread.sleep(80);
+        checkpoint.pageDone("page-2");
+        verify(repository).saveCompleted("crawl", List.of(), List.of("page-1", "page-2"));
+    }
+
+    @Test
+    void testFailedWriteDoesNotStopCrawl() {
+        doThrow(new IllegalStateException("БД недоступна"))
+                .when(repository).saveCompleted(anyString(), anyList(), anyList());
+        CrawlCheckpoint checkpoint = checkpoint(1, 60_000);
+
+        assertDoesNotThrow(() -> checkpoint.pageDone("page-1"));
+        assertDoesNotThrow(() -> checkpoint.spaceDone("Space"));
+        assertDoesNotThrow(checkpoint::flush);
+        verify(repository, times(2)).saveCompleted(eq("crawl"), any(), any());
+    }
+
+    /**
+     * Пространства обходятся параллельно; в каком бы пакете ни записалось пространство,
+     * все его страницы записаны в том же пакете или раньше
+     */
+    @Test
+    void testSpaceIsNotPersistedBeforeItsPages() throws InterruptedException {
+        List<List<String>> spaceBatches = new CopyOnWriteArrayList<>();
+        List<List<String>> pageBatches = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            synchronized (spaceBatches) {
+                spaceBatches.add(List.copyOf(invocation.getArgument(1)));
+                pageBatches.add(List.copyOf(invocation.getArgument(2)));
+            }
+            return null;
+        }).when(repository).saveCompleted(anyString(), anyList(), anyList());
+        CrawlCheckpoint checkpoint = checkpoint(7, 60_000);
+        int spaces = 50;
+        int pagesPerSpace = 20;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int s = 0; s < spaces; s++) {
+                String spaceId = "space-" + s;
+                executor.submit(() -> {
+                    for (int p = 0; p < pagesPerSpace; p++) {
+                        checkpoint.pageDone(spaceId + "/page-" + p);
+                    }
+                    checkpoint.spaceDone(spaceId);
+                });
+            }
+        }
+        checkpoint.flush();
+
+        Set<String> persistedPages = new HashSet<>();
+        List<String> persistedSpaces = new ArrayList<>();
+        for (int i = 0; i < spaceBatches.size(); i++) {
+            persistedPages.addAll(pageBatches.get(i));
+            for (String spaceId : spaceBatches.get(i)) {
+                for (int p = 0; p < pagesPerSpace; p++) {
+                    assertTrue(persistedPages.contains(spaceId + "/page-" + p),
+                            "Пространство " + spaceId + " записано раньше страницы " + p);
+                }
+                persistedSpaces.add(spaceId);
+            }
+        }
+        assertEquals(spaces, persistedSpaces.size());
+        assertEquals(spaces * pagesPerSpace, persistedPages.size());
+    }
+
+    private CrawlCheckpoint checkpoint(int everyPages, long intervalMs) {
+        return new CrawlCheckpoint("crawl", repository, Set.of(), Set.of(), everyPages, intervalMs);
+    }
+}
@@ -0,0 +1,127 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import ru.cbgr.adapter.xwiki.client.XWikiClient;
+import ru.cbgr.adapter.xwiki.configuration.ClusterProperties;
+import ru.cbgr.adapter.xwiki.configuration.CrawlProperties;
+import ru.cbgr.adapter.xwiki.dto.job.WorkItem;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.LinkRelation;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Links;
+import ru.cbgr.adapter.xwiki.dto.xwiki.page.PageSummary;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CrawlWorkerTest {
+
+    private static final int PAGES = 200;
+
+    /**
+     * Ускорение от нескольких экземпляров измеряет CrawlWorkerScalingBenchmark (профиль benchmark)
+     */
+    @Test
+    void testInstancesShareQueueWithoutDuplicates() throws InterruptedException {
+        Map<String, AtomicInteger> indexed = new ConcurrentHashMap<>();
+        crawl(4, indexed);
+
+        assertEquals(PAGES, indexed.size());
+        assertTrue(indexed.values().stream().allMatch(count -> count.get() == 1), "Страница обработана дважды");
+    }
+
+    @Test
+    void testSkipsItemsOfCancelledCrawl() {
+        InMemoryWorkQueue queue = new InMemoryWorkQueue();
+        EmbeddingsProcessorService processor = mock(EmbeddingsProcessorService.class);
+        CrawlWorker worker = new CrawlWorker(queue, new ClusterProperties(), new CrawlProperties(), null, processor,
+                new SimpleMeterRegistry());
+        queue.cancel("crawl");
+
+        worker.process(new WorkItem(7, "crawl", WorkItem.PAGE, "page-1", "url-1", "1.1"));
+
+        verify(processor, never()).indexPage(anyString(), any(), any());
+        assertEquals(List.of(7L), queue.getRemoved());
+        assertEquals(0, queue.getDone());
+    }
+
+    @Test
+    void testStopsExpandingSpaceAfterCancel() {
+        InMemoryWorkQueue queue = new InMemoryWorkQueue();
+        CrawlProperties crawlProperties = new CrawlProperties();
+        crawlProperties.setPageListSize(2);
+        XWikiClient xWikiClient = mock(XWikiClient.class);
+        AtomicInteger portions = new AtomicInteger();
+        when(xWikiClient.streamPages(anyString(), anyInt(), anyInt(), any())).thenAnswer(invocation -> {
+            Consumer<PageSummary> consumer = invocation.getArgument(3);
+            int start = invocation.getArgument(1);
+            for (int i = start; i < start + 2; i++) {
+                consumer.accept(page("page-" + i));
+            }
+            portions.incrementAndGet();
+            // Отмена приходит, пока пространство разворачивается
+            queue.cancel("crawl");
+            return 2;
+        });
+        CrawlWorker worker = new CrawlWorker(queue, new ClusterProperties(), crawlProperties, xWikiClient,
+                mock(EmbeddingsProcessorService.class), new SimpleMeterRegistry());
+
+        worker.process(new WorkItem(1, "crawl", WorkItem.SPACE, "Space", "pages-url", null));
+
+        assertEquals(1, portions.get());
+        assertTrue(queue.getQueued().isEmpty(), "Страницы отменённого обхода поставлены в очередь");
+    }
+
+    private static PageSummary page(String id) {
+        PageSummary page = new PageSummary();
+        page.setId(id);
+        page.setLinks(Links.builder().add("url-" + id, LinkRelation.PAGE.getUri(), null, null).build());
+        return page;
+    }
+
+    private static void crawl(int instances, Map<String, AtomicInteger> indexed) throws InterruptedException {
+        InMemoryWorkQueue queue = new InMemoryWorkQueue();
+        List<WorkItem> pages = new ArrayList<>();
+        for (int i = 0; i < PAGES; i++) {
+            pages.add(WorkItem.of("crawl", WorkItem.PAGE, "page-" + i, "url-" + i, "1.1"));
+        }
+        queue.enqueue(pages);
+
+        EmbeddingsProcessorService processor = mock(EmbeddingsProcessorService.class);
+        doAnswer(invocation -> {
+            Thread.sleep(2);
+            indexed.computeIfAbsent(invocation.getArgument(0), key -> new AtomicInteger()).incrementAndGet();
+            return true;
+        }).when(processor).indexPage(anyString(), any(), any());
+
+        List<CrawlWorker> workers = new ArrayList<>();
+        for (int i = 0; i < instances; i++) {
+            ClusterProperties properties = new ClusterProperties();
+            properties.setInstanceId("instance-" + i);
+            properties.setWorkerConcurrency(4);
+            properties.setPollIntervalMs(5);
+            CrawlWorker worker = new CrawlWorker(queue, properties, new CrawlProperties(), null, processor,
+                    new SimpleMeterRegistry());
+            worker.start();
+            workers.add(worker);
+        }
+        queue.awaitDone(PAGES);
+        workers.forEach(CrawlWorker::stop);
+    }
+}
@@ -0,0 +1,75 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import ru.cbgr.adapter.xwiki.configuration.EmbeddingCacheProperties;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class EmbeddingCacheTest {
+
+    @Test
+    void testSendsEachNormalizedTextToModelOnce() {
+        EmbeddingCache cache = new EmbeddingCache(new EmbeddingCacheProperties(), null, new SimpleMeterRegistry());
+        List<String> sent = new ArrayList<>();
+
+        List<float[]> first = cache.getAll("model", List.of("Заголовок  раздела", "Текст", "Заголовок раздела\n"),
+                texts -> embed(texts, sent));
+        List<float[]> second = cache.getAll("model", List.of("Текст", "Новый текст"), texts -> embed(texts, sent));
+
+        assertEquals(List.of("Заголовок раздела", "Текст", "Новый текст"), sent);
+        assertArrayEquals(first.get(0), first.get(2));
+        assertArrayEquals(first.get(1), second.get(0));
+        assertEquals(3, second.get(1)[0]);
+    }
+
+    @Test
+    void testSendsSameTextsWhenDisabled() {
+        EmbeddingCacheProperties properties = new EmbeddingCacheProperties();
+        properties.setEnabled(false);
+        EmbeddingCache cache = new EmbeddingCache(properties, null, new SimpleMeterRegistry());
+        List<String> sent = new ArrayList<>();
+
+        cache.getAll("model", List.of("Заголовок  раздела", "Заголовок раздела\n"), texts -> embed(texts, sent));
+
+        assertEquals(List.of("Заголовок раздела", "Заголовок раздела"), sent);
+    }
+
+    @Test
+    void testInt8StorageKeepsVectorDirection() {
+        EmbeddingCacheProperties properties = new EmbeddingCacheProperties();
+        properties.setStorage(EmbeddingCacheProperties.Storage.INT8);
+        EmbeddingCache cache = new EmbeddingCache(properties, null, new SimpleMeterRegistry());
+        float[] vector = {0.12f, -0.5f, 0.33f, 0.01f, -0.27f};
+
+        cache.getAll("model", List.of("текст"), texts -> List.of(vector));
+        float[] cached = cache.getAll("model", List.of("текст"), texts -> {
+            throw new AssertionError("Текст уже в кеше");
+        }).get(0);
+
+        double dot = 0;
+        double norm = 0;
+        double cachedNorm = 0;
+        for (int i = 0; i < vector.length; i++) {
+            dot += vector[i] * cached[i];
+            norm += vector[i] * vector[i];
+            cachedNorm += cached[i] * cached[i];
+        }
+        assertEquals(1.0, dot / Math.sqrt(norm * cachedNorm), 1e-3);
+    }
+
+    private static List<float[]> embed(List<String> texts, List<String> sent) {
+        List<float[]> result = new ArrayList<>();
+        for (String text : texts) {
+            sent.add(text);
+            result.add(new float[]{sent.size(), text.length()});
+        }
+        return result;
+    }
+}
@@ -0,0 +1,97 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ru.cbgr.adapter.xwiki.dto.job.WorkItem;
+import ru.cbgr.adapter.xwiki.repository.WorkQueueRepository;
+
+/**
+ * Очередь в памяти с той же семантикой аренды и отмены, что у очереди в PostgreSQL
+ */
+class InMemoryWorkQueue extends WorkQueueRepository {
+
+    private final List<WorkItem> queued = new ArrayList<>();
+    private final Set<String> cancelled = ConcurrentHashMap.newKeySet();
+    private final List<Long> removed = new CopyOnWriteArrayList<>();
+    private final AtomicInteger done = new AtomicInteger();
+    private long nextId = 1;
+
+    InMemoryWorkQueue() {
+        super(null);
+    }
+
+    @Override
+    public synchronized void enqueue(List<WorkItem> items) {
+        for (WorkItem item : items) {
+            if (!cancelled.contains(item.crawlId())) {
+                queued.add(new WorkItem(nextId++, item.crawlId(), item.kind(), item.key(), item.url(), item.version()));
+            }
+        }
+    }
+
+    @Override
+    public synchronized List<WorkItem> claim(String owner, int limit, long leaseMs, int maxAttempts) {
+        List<WorkItem> claimed = new ArrayList<>(queued.subList(0, Math.min(limit, queued.size())));
+        queued.subList(0, claimed.size()).clear();
+        return claimed;
+    }
+
+    @Override
+    public int extendLeases(String owner, long leaseMs) {
+        return 0;
+    }
+
+    @Override
+    public void complete(long id) {
+        done.incrementAndGet();
+    }
+
+    @Override
+    public void fail(long id, int maxAttempts) {
+        throw new AssertionError("Элемент " + id + " не обработан");
+    }
+
+    @Override
+    public synchronized int cancel(String crawlId) {
+        cancelled.add(crawlId);
+        int before = queued.size();
+        queued.removeIf(item -> item.crawlId().equals(crawlId));
+        return before - queued.size();
+    }
+
+    @Override
+    public boolean isCancelled(String crawlId) {
+        return cancelled.contains(crawlId);
+    }
+
+    @Override
+    public void remove(long id) {
+        removed.add(id);
+    }
+
+    synchronized List<WorkItem> getQueued() {
+        return List.copyOf(queued);
+    }
+
+    List<Long> getRemoved() {
+        return removed;
+    }
+
+    int getDone() {
+        return done.get();
+    }
+
+    /**
+     * Ждёт, пока будет обработано count элементов
+     */
+    void awaitDone(int count) throws InterruptedException {
+        while (done.get() < count) {
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import ru.cbgr.adapter.xwiki.client.XWikiClient;
+import ru.cbgr.adapter.xwiki.configuration.CrawlProperties;
+import ru.cbgr.adapter.xwiki.dto.job.CrawlJobState;
+import ru.cbgr.adapter.xwiki.dto.job.ReconcileResult;
+import ru.cbgr.adapter.xwiki.dto.xwiki.SpacesResponse;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.LinkRelation;
+import ru.cbgr.adapter.xwiki.dto.xwiki.modifications.Links;
+import ru.cbgr.adapter.xwiki.dto.xwiki.page.PageSummary;
+import ru.cbgr.adapter.xwiki.dto.xwiki.space.Space;
+import ru.cbgr.adapter.xwiki.repository.PageEmbeddingRepository;
+import ru.cbgr.adapter.xwiki.repository.SpaceFingerprintRepository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReconciliationServiceTest {
+
+    private final XWikiClient xWikiClient = mock(XWikiClient.class);
+    private final WikiDirectory wikiDirectory = mock(WikiDirectory.class);
+    private final EmbeddingsProcessorService processor = mock(EmbeddingsProcessorService.class);
+    private final PageEmbeddingRepository pageEmbeddingRepository = mock(PageEmbeddingRepository.class);
+    private final SpaceFingerprintRepository fingerprintRepository = mock(SpaceFingerprintRepository.class);
+    private final LeaderElectionService leaderElectionService = mock(LeaderElectionService.class);
+    private final ReconciliationService service = new ReconciliationService(xWikiClient, wikiDirectory,
+            new CrawlProperties(), processor, pageEmbeddingRepository, fingerprintRepository, leaderElectionService,
+            new SimpleMeterRegistry());
+
+    /**
+     * Индексируются только новые и изменённые страницы, исключаются страницы, которых нет в XWiki,
+     * и страницы удалённого пространства
+     */
+    @Test
+    void testReconcilesChangedSpace() throws InterruptedException {
+        stubWiki(Map.of("xwiki:Main.Same", "1.1", "xwiki:Main.Changed", "2.0", "xwiki:Main.New", "1.1"));
+        when(pageEmbeddingRepository.findVersions("xwiki")).thenReturn(Map.of(
+                "xwiki:Main.Same", "1.1",
+                "xwiki:Main.Changed", "1.0",
+                "xwiki:Main.Deleted", "1.1",
+                "xwiki:Old.Page", "1.1"));
+        when(fingerprintRepository.findAll("xwiki")).thenReturn(Map.of("xwiki:Main", "прежний", "xwiki:Old", "прежний"));
+
+        ReconcileResult result = reconcile();
+
+        verify(processor).indexPage("xwiki:Main.Changed", "url-xwiki:Main.Changed", "2.0");
+        verify(processor).indexPage("xwiki:Main.New", "url-xwiki:Main.New", "1.1");
+        verify(processor, never()).indexPage(eq("xwiki:Main.Same"), any(), any());
+        verify(processor).removePage("xwiki:Main.Deleted");
+        verify(processor).removePage("xwiki:Old.Page");
+        verify(processor, never()).removePage("xwiki:Main.Same");
+        verify(fingerprintRepository).save(eq("xwiki"), eq("xwiki:Main"), anyString(), eq(3));
+        verify(fingerprintRepository).delete("xwiki", "xwiki:Old");
+        assertEquals(new ReconcileResult(1, 1, 1, 2, 2, 0), result);
+    }
+
+    @Test
+    void testSkipsSpaceWithSameFingerprint() throws InterruptedException {
+        Map<String, String> pages = Map.of("xwiki:Main.A", "1.1", "xwiki:Main.B", "1.2");
+        stubWiki(pages);
+        when(pageEmbeddingRepository.findVersions("xwiki")).thenReturn(Map.of("xwiki:Main.A", "1.0"));
+        when(fingerprintRepository.findAll("xwiki"))
+                .thenReturn(Map.of("xwiki:Main", ReconciliationService.fingerprint(pages)));
+
+        ReconcileResult result = reconcile();
+
+        verify(processor, never()).indexPage(anyString(), any(), any());
+        verify(processor, never()).removePage(anyString());
+        verify(fingerprintRepository, never()).save(anyString(), anyString(), anyString(), anyInt());
+        assertEquals(new ReconcileResult(1, 0, 0, 0, 0, 0), result);
+    }
+
+    @Test
+    void testKeepsFingerprintWhenPageFails() throws InterruptedException {
+        stubWiki(Map.of("xwiki:Main.A", "1.1"));
+        when(pageEmbeddingRepository.findVersions("xwiki")).thenReturn(Map.of());
+        when(fingerprintRepository.findAll("xwiki")).thenReturn(Map.of());
+        when(processor.indexPage(anyString(), any(), any())).thenThrow(new IllegalStateException("XWiki недоступна"));
+
+        ReconcileResult result = reconcile();
+
+        verify(fingerprintRepository, never()).save(anyString(), anyString(), anyString(), anyInt());
+        assertEquals(1, result.failed());
+    }
+
+    @Test
+    void testSpaceOfPageId() {
+        assertEquals("xwiki:Системная аналитика", ReconciliationService.spaceOf("xwiki:Системная аналитика.WebHome"));
+        assertEquals("xwiki:A.B", ReconciliationService.spaceOf("xwiki:A.B.WebHome"));
+        assertEquals("xwiki:A", ReconciliationService.spaceOf("xwiki:A.Версия 1\\.2"));
+        assertEquals("xwiki:A\\.B", ReconciliationService.spaceOf("xwiki:A\\.B.Page"));
+        assertNull(ReconciliationService.spaceOf("xwiki:Page"));
+    }
+
+    @Test
+    void testFingerprintDependsOnPagesAndVersionsOnly() {
+        Map<String, String> pages = new LinkedHashMap<>();
+        pages.put("xwiki:A.One", "1.1");
+        pages.put("xwiki:A.Two", "2.3");
+        Map<String, String> reordered = new LinkedHashMap<>();
+        reordered.put("xwiki:A.Two", "2.3");
+        reordered.put("xwiki:A.One", "1.1");
+        String fingerprint = ReconciliationService.fingerprint(pages);
+
+        assertEquals(fingerprint, ReconciliationService.fingerprint(reordered));
+        assertNotEquals(fingerprint, ReconciliationService.fingerprint(Map.of("xwiki:A.One", "1.1", "xwiki:A.Two", "2.4")));
+        assertNotEquals(fingerprint, ReconciliationService.fingerprint(Map.of("xwiki:A.One", "1.1")));
+        assertNotEquals(fingerprint, ReconciliationService.fingerprint(Map.of("xwiki:A.One", "1.1", "xwiki:A.Three", "2.3")));
+    }
+
+    private void stubWiki(Map<String, String> versions) {
+        when(wikiDirectory.getWikiIds()).thenReturn(List.of("xwiki"));
+        when(leaderElectionService.tryAcquire(LeaderElectionService.RECONCILER)).thenReturn(true);
+        Space space = new Space();
+        space.setId("xwiki:Main");
+        space.setLinks(Links.builder().add("pages-url", LinkRelation.PAGES.getUri(), null, null).build());
+        SpacesResponse spaces = new SpacesResponse();
+        spaces.setSpaces(List.of(space));
+        when(xWikiClient.getSpaces("xwiki")).thenReturn(spaces);
+        doAnswer(invocation -> {
+            Consumer<PageSummary> consumer = invocation.getArgument(3);
+            versions.forEach((id, version) -> consumer.accept(page(id, version)));
+            return versions.size();
+        }).when(xWikiClient).streamPages(eq("pages-url"), eq(0), anyInt(), any());
+    }
+
+    private ReconcileResult reconcile() throws InterruptedException {
+        ReconcileJob job = service.submit();
+        for (int i = 0; i < 500 && !job.getState().isFinished(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(CrawlJobState.COMPLETED, job.getState(), job.getError());
+        assertNotNull(job.getResult());
+        return job.getResult();
+    }
+
+    private static PageSummary page(String id, String version) {
+        PageSummary page = new PageSummary();
+        page.setId(id);
+        page.setVersion(version);
+        page.setLinks(Links.builder().add("url-" + id, LinkRelation.PAGE.getUri(), null, null).build());
+        return page;
+    }
+}
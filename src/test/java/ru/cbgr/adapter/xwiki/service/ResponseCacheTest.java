@@ -0,0 +1,131 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.Embedding;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import ru.cbgr.adapter.xwiki.configuration.ResponseCacheProperties;
+import ru.cbgr.adapter.xwiki.dto.ai.RagResponse;
+import ru.cbgr.adapter.xwiki.dto.ai.RagSource;
+import ru.cbgr.adapter.xwiki.dto.embedding.PageChunkEmbedding;
+import ru.cbgr.adapter.xwiki.events.PageIndexedEvent;
+import ru.cbgr.adapter.xwiki.events.PageRemovedEvent;
+import ru.cbgr.adapter.xwiki.util.Vectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ResponseCacheTest {
+
+    private static final Map<String, float[]> VECTORS = Map.of(
+            "Как настроить интеграцию с CRM?", new float[]{1, 0, 0},
+            "как настроить интеграцию с crm", new float[]{0.99f, 0.1f, 0},
+            "Где лежит регламент отпусков?", new float[]{0, 1, 0});
+
+    private final AtomicInteger generated = new AtomicInteger();
+    private final ResponseCache cache = new ResponseCache(new ResponseCacheProperties(), embeddingBatcher(),
+            new SimpleMeterRegistry());
+
+    @Test
+    void testReturnsCachedAnswerForSameAndSimilarQuestions() {
+        String first = ask("Как настроить интеграцию с CRM?");
+
+        assertEquals(first, ask("Как  настроить интеграцию с CRM? "));
+        assertEquals(first, ask("как настроить интеграцию с crm"));
+        assertEquals(1, generated.get());
+
+        ask("Где лежит регламент отпусков?");
+        assertEquals(2, generated.get());
+    }
+
+    @Test
+    void testInvalidatesAnswersOfChangedPages() {
+        ask("Как настроить интеграцию с CRM?");
+        ask("Где лежит регламент отпусков?");
+
+        cache.onPageRemoved(new PageRemovedEvent("xwiki:Main.Другая"));
+        cache.onPageIndexed(new PageIndexedEvent("xwiki:Main.Новая",
+                List.of(new PageChunkEmbedding(0, "текст", new float[]{0, 0, 1}))));
+        ask("Как настроить интеграцию с CRM?");
+        assertEquals(2, generated.get());
+
+        cache.onPageRemoved(new PageRemovedEvent("xwiki:Main.Как настроить интеграцию с CRM?"));
+        ask("Как настроить интеграцию с CRM?");
+        assertEquals(3, generated.get());
+
+        // Новая страница близка к вопросу сильнее, чем его источник, – ответ устарел
+        cache.onPageIndexed(new PageIndexedEvent("xwiki:Main.Отпуска",
+                List.of(new PageChunkEmbedding(0, "текст", new float[]{0, 1, 0.1f}))));
+        ask("Где лежит регламент отпусков?");
+        assertEquals(4, generated.get());
+    }
+
+    @Test
+    void testSkipsAnswersMadeStaleDuringGeneration() {
+        String question = "Как настроить интеграцию с CRM?";
+        // Индексация несвязанной страницы во время генерации не мешает закешировать ответ
+        askWhileIndexing(question, "xwiki:Main.Новая", new float[]{0, 0, 1});
+        ask(question);
+        assertEquals(1, generated.get());
+
+        cache.onPageRemoved(new PageRemovedEvent("xwiki:Main." + question));
+        askWhileIndexing(question, "xwiki:Main." + question, new float[]{1, 0, 0});
+        ask(question);
+        assertEquals(3, generated.get());
+    }
+
+    @Test
+    void testResetsTimingsOfCachedRagResponses() {
+        RagResponse generatedResponse = RagResponse.builder()
+                .answer("ответ")
+                .sources(List.of(new RagSource("xwiki:Main.CRM", "url", 0.8f)))
+                .retrievalMs(120)
+                .generationMs(3400)
+                .build();
+        askRag(generatedResponse);
+
+        RagResponse cached = askRag(generatedResponse);
+
+        assertEquals("ответ", cached.getAnswer());
+        assertEquals(0, cached.getRetrievalMs());
+        assertEquals(0, cached.getGenerationMs());
+        assertTrue(cached.isCached());
+        assertEquals(3400, generatedResponse.getGenerationMs());
+    }
+
+    private RagResponse askRag(RagResponse response) {
+        return cache.get("rag:QUALITY", "Как настроить интеграцию с CRM?", () -> response,
+                answer -> ResponseCache.Dependencies.of(answer.getSources()));
+    }
+
+    private void askWhileIndexing(String question, String pageId, float[] chunk) {
+        cache.get("rag:QUALITY", question, () -> {
+            cache.onPageIndexed(new PageIndexedEvent(pageId, List.of(new PageChunkEmbedding(0, "текст", chunk))));
+            return "ответ " + generated.incrementAndGet();
+        }, answer -> ResponseCache.Dependencies.of(List.of(new RagSource("xwiki:Main." + question, "url", 0.8f))));
+    }
+
+    private String ask(String question) {
+        return cache.get("rag:QUALITY", question, () -> "ответ " + generated.incrementAndGet(),
+                answer -> ResponseCache.Dependencies.of(
+                        List.of(new RagSource("xwiki:Main." + question.strip(), "url", 0.8f))));
+    }
+
+    private static EmbeddingBatcher embeddingBatcher() {
+        EmbeddingBatcher batcher = mock(EmbeddingBatcher.class);
+        when(batcher.embed(anyString())).thenAnswer(invocation -> {
+            float[] vector = VECTORS.getOrDefault(invocation.getArgument(0), new float[]{0, 0, 1});
+            return CompletableFuture.completedFuture(new Embedding(Vectors.toDoubleList(vector), 0));
+        });
+        return batcher;
+    }
+}
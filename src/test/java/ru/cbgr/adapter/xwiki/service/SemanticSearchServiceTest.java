@@ -0,0 +1,78 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import ru.cbgr.adapter.xwiki.configuration.AiModelProperties;
+import ru.cbgr.adapter.xwiki.configuration.SearchProperties;
+import ru.cbgr.adapter.xwiki.dto.embedding.PageChunkEmbedding;
+import ru.cbgr.adapter.xwiki.dto.embedding.StoredChunk;
+import ru.cbgr.adapter.xwiki.dto.search.SearchResult;
+import ru.cbgr.adapter.xwiki.events.PageIndexedEvent;
+import ru.cbgr.adapter.xwiki.events.PageRemovedEvent;
+import ru.cbgr.adapter.xwiki.repository.PageEmbeddingRepository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SemanticSearchServiceTest {
+
+    private final PageEmbeddingRepository repository = mock(PageEmbeddingRepository.class);
+    private final SemanticSearchService service = new SemanticSearchService(mock(EmbeddingBatcher.class), repository,
+            new AiModelProperties(), new SearchProperties(), new SimpleMeterRegistry());
+
+    /**
+     * Строки, прочитанные из БД до индексации и удаления страниц, но полученные построением
+     * индекса после событий, не возвращают старое состояние
+     */
+    @Test
+    void testRebuildKeepsChangesMadeDuringStreaming() throws InterruptedException {
+        CountDownLatch built = new CountDownLatch(1);
+        service.onPageIndexed(new PageIndexedEvent("xwiki:Main.Removed", List.of(chunk(new float[]{0, 0, 1}))));
+        doAnswer(invocation -> {
+            Consumer<StoredChunk> consumer = invocation.getArgument(1);
+            service.onPageIndexed(new PageIndexedEvent("xwiki:Main.Changed", List.of(chunk(new float[]{0, 1, 0}))));
+            service.onPageRemoved(new PageRemovedEvent("xwiki:Main.Removed"));
+            consumer.accept(new StoredChunk("xwiki:Main.Changed", 0, "url", null, new float[]{1, 0, 0}));
+            consumer.accept(new StoredChunk("xwiki:Main.Removed", 0, "url", null, new float[]{0, 0, 1}));
+            return null;
+        }).when(repository).forEachEmbedding(anyString(), any());
+        when(repository.countOtherModels(anyString())).thenAnswer(invocation -> {
+            built.countDown();
+            return 0L;
+        });
+        when(repository.findChunks(anyList(), anyList())).thenAnswer(invocation -> {
+            List<String> pageIds = invocation.getArgument(0);
+            List<Integer> chunkIndexes = invocation.getArgument(1);
+            List<StoredChunk> chunks = new ArrayList<>();
+            for (int i = 0; i < pageIds.size(); i++) {
+                chunks.add(new StoredChunk(pageIds.get(i), chunkIndexes.get(i), "url", "текст", null));
+            }
+            return chunks;
+        });
+
+        service.buildOnStartup();
+        assertTrue(built.await(5, TimeUnit.SECONDS));
+
+        List<SearchResult> results = service.search(new float[]{0, 1, 0}, 5);
+        assertEquals(List.of("xwiki:Main.Changed"), results.stream().map(SearchResult::pageId).toList());
+        assertEquals(1.0, results.get(0).score(), 1e-3);
+    }
+
+    private static PageChunkEmbedding chunk(float[] vector) {
+        return new PageChunkEmbedding(0, "текст", vector);
+    }
+}
@@ -0,0 +1,90 @@
+package ru.cbgr.adapter.xwiki.service;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import ru.cbgr.adapter.xwiki.configuration.ChunkingProperties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TextPreprocessingServiceTest {
+
+    private final String page = """
+            = Интеграции =
+
+            {{toc/}}
+
+            Раздел описывает **интеграцию** с //внешними// системами.
+            Подробности в [[регламенте>>Main.Регламент]] и на [[https://example.org]].
+
+            {{velocity}}
+            #set($x = 1)
+            {{/velocity}}
+
+            == Таблица ==
+
+            |=Система|=Протокол
+            |CRM|REST
+            * первый пункт
+            * второй пункт
+
+            {{info}}Важное замечание{{/info}}
+            (% class="box" %)Текст с параметрами ~**
+            [[image:schema.png]]
+            """;
+
+    @Test
+    void testStripsMarkupAndSplitsByHeadings() {
+        List<String> chunks = service(256, 32).preprocess(page);
+
+        assertEquals(2, chunks.size());
+        assertEquals("Интеграции\nРаздел описывает интеграцию с внешними системами. "
+                + "Подробности в регламенте и на https://example.org.", chunks.get(0));
+
+        String table = chunks.get(1);
+        assertTrue(table.startsWith("Таблица\n"), table);
+        assertTrue(table.contains("Система Протокол"), table);
+        assertTrue(table.contains("CRM REST"), table);
+        assertTrue(table.contains("первый пункт\nвторой пункт"), table);
+        assertTrue(table.contains("Важное замечание"), table);
+        assertTrue(table.contains("Текст с параметрами **"), table);
+        for (String chunk : chunks) {
+            assertFalse(chunk.contains("set($x"), chunk);
+            assertFalse(chunk.contains("schema.png"), chunk);
+            assertFalse(chunk.contains("class="), chunk);
+            assertFalse(chunk.contains("{{"), chunk);
+        }
+    }
+
+    @Test
+    void testChunksAreBoundedAndOverlap() {
+        StringBuilder text = new StringBuilder("= Раздел =\n");
+        for (int i = 0; i < 200; i++) {
+            text.append("слово").append(i).append(' ');
+        }
+        List<String> chunks = service(64, 8).preprocess(text);
+
+        assertTrue(chunks.size() > 1);
+        for (int i = 0; i < chunks.size(); i++) {
+            String chunk = chunks.get(i);
+            assertTrue(chunk.length() <= 64 * 4, "Длина фрагмента " + chunk.length());
+            assertTrue(chunk.startsWith("Раздел\n"), chunk);
+            if (i > 0) {
+                String previous = chunks.get(i - 1);
+                String firstWord = chunk.substring("Раздел\n".length()).split(" ")[0];
+                assertTrue(previous.contains(firstWord), "Нет перекрытия с предыдущим фрагментом: " + firstWord);
+            }
+        }
+        assertTrue(chunks.get(chunks.size() - 1).endsWith("слово199"));
+    }
+
+    private static TextPreprocessingService service(int maxChunkTokens, int overlapTokens) {
+        ChunkingProperties properties = new ChunkingProperties();
+        properties.setMaxChunkTokens(maxChunkTokens);
+        properties.setOverlapTokens(overlapTokens);
+        return new TextPreprocessingService(properties);
+    }
+}